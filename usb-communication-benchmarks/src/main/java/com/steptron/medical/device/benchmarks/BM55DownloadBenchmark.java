@@ -0,0 +1,81 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import javax.usb.UsbException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.steptron.medical.device.emulator.VirtualUsbDevice;
+import com.steptron.medical.device.services.BM55USBService;
+
+/**
+ * Benchmarks a full memory download (120 readings) from the emulated BM55 for the given per-IRP latency and pipeline depth.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BM55DownloadBenchmark {
+
+	@Param({"0", "1000"})
+	public long latencyMicros;
+
+	@Param({"1", "4", "16"})
+	public int pipelineDepth;
+
+	private BM55USBService usbService;
+
+	/**
+	 * Sets the latency of the emulated device and the pipeline depth of the driver.
+	 *
+	 * @throws UsbException the USB exception
+	 */
+	@Setup
+	public void setUp() throws UsbException {
+		usbService = new BM55USBService();
+		usbService.setPipelineDepth(pipelineDepth);
+		((VirtualUsbDevice) usbService.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID)).getEmulator().setLatency(latencyMicros, 0);
+	}
+
+	/**
+	 * Downloads the readings of user A, which walks the whole memory.
+	 *
+	 * @return the measurements
+	 * @throws Exception the exception
+	 */
+	@Benchmark
+	public Collection<?> download() throws Exception {
+		return usbService.getMeasurements("A");
+	}
+}
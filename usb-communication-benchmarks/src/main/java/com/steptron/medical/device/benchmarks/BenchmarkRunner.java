@@ -0,0 +1,52 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. It accepts the standard JMH command line options and
+ * adds the GC profiler when no profiler is given, so the allocation rate is always reported next to the throughput.
+ */
+public class BenchmarkRunner {
+
+	private BenchmarkRunner() {
+	}
+
+	/**
+	 * Runs the benchmarks selected by the command line options.
+	 *
+	 * @param args the JMH command line options
+	 * @throws CommandLineOptionException the command line option exception
+	 * @throws RunnerException the runner exception
+	 */
+	public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+		final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		final OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLineOptions);
+		if(commandLineOptions.getProfilers().isEmpty()) {
+			options.addProfiler(GCProfiler.class);
+		}
+		new Runner(options.build()).run();
+	}
+}
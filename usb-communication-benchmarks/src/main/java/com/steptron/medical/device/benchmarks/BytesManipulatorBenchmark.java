@@ -0,0 +1,102 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.steptron.medical.device.emulator.BF480Emulator;
+import com.steptron.medical.device.services.BF480USBService;
+import com.steptron.medical.device.services.BM55USBService;
+import com.steptron.medical.device.services.USBService;
+import com.steptron.medical.device.util.BytesManipulator;
+
+/**
+ * Benchmarks the byte manipulation done on every download: the conversion of the 64 BF480 rows to integers,
+ * the transpose of the 64 x 64 BF480 matrix and the padding of the 8 byte commands.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BytesManipulatorBenchmark {
+
+	private byte[][] rawReadings;
+	private int[][] readings;
+	private byte[] command;
+	private USBService usbService;
+
+	/**
+	 * Prepares a full BF480 memory dump (64 readings for each of the 10 users).
+	 */
+	@Setup
+	public void setUp() {
+		rawReadings = new BF480Emulator(BF480Emulator.generateMeasurements(BF480USBService.MAX_NUMBER_OF_READINGS)).getRows();
+		readings = new int[rawReadings.length][];
+		for(int readingsCounter = 0; readingsCounter < rawReadings.length; readingsCounter++) {
+			readings[readingsCounter] = BytesManipulator.convertBytesToIntegers(rawReadings[readingsCounter]);
+		}
+		command = new byte[] {(byte) 0xA3, (byte) 42};
+		usbService = new BM55USBService();
+	}
+
+	/**
+	 * Converts all the 64 rows of 128 bytes of a dump.
+	 *
+	 * @param blackhole the blackhole
+	 */
+	@Benchmark
+	public void convertBytesToIntegers(final Blackhole blackhole) {
+		for(final byte[] rawReading : rawReadings) {
+			blackhole.consume(BytesManipulator.convertBytesToIntegers(rawReading));
+		}
+	}
+
+	/**
+	 * Transposes the 64 x 64 matrix of a dump.
+	 *
+	 * @return the transposed matrix
+	 */
+	@Benchmark
+	public int[][] transpose() {
+		return BytesManipulator.transpose(readings);
+	}
+
+	/**
+	 * Pads the BM55 read reading command.
+	 *
+	 * @return the padded command
+	 */
+	@Benchmark
+	public byte[] getPaddedByteArray() {
+		return usbService.getPaddedByteArray(command, USBService.DEFAULT_BYTE_ARRAY_LENGTH_8, USBService.PADDING_BYTE_0xF4);
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.usb.UsbException;
+import javax.usb.UsbHostManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.steptron.medical.device.domain.BM55Measurement;
+import com.steptron.medical.device.emulator.BM55Emulator;
+import com.steptron.medical.device.emulator.VirtualUsbDevice;
+import com.steptron.medical.device.emulator.VirtualUsbServices;
+import com.steptron.medical.device.services.BM55USBService;
+import com.steptron.medical.device.services.DeviceDownload;
+import com.steptron.medical.device.services.DownloadExecutors;
+
+/**
+ * Benchmarks the download from a fleet of emulated BM55 devices (120 readings each, 1 ms per IRP), all the downloads in flight at once.
+ * A fixed pool runs 8 downloads at a time, the thread per download executor (virtual threads on Java 21 or later) runs them all at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class FleetDownloadBenchmark {
+
+	private static final int FIXED_POOL_SIZE = 8;
+	private static final int NUMBER_OF_READINGS = 120;
+	private static final long LATENCY_MICROS = 1000;
+
+	@Param({"10", "100", "300"})
+	public int numberOfDevices;
+
+	@Param({"fixed-pool", "thread-per-download"})
+	public String executorType;
+
+	private final List<VirtualUsbDevice> attachedDevices = new ArrayList<VirtualUsbDevice>();
+
+	private BM55USBService usbService;
+	private ExecutorService executor;
+
+	/**
+	 * Attaches the emulated devices of the fleet next to the configured BM55 and creates the executor.
+	 *
+	 * @throws UsbException the USB exception
+	 */
+	@Setup
+	public void setUp() throws UsbException {
+		usbService = new BM55USBService();
+		((VirtualUsbDevice) usbService.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID)).getEmulator().setLatency(LATENCY_MICROS, 0);
+		final VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		for(int i = 1; i < numberOfDevices; i++) {
+			final BM55Emulator emulator = new BM55Emulator(BM55Emulator.generateMeasurements(NUMBER_OF_READINGS));
+			emulator.setLatency(LATENCY_MICROS, 0);
+			attachedDevices.add(services.attach(emulator));
+		}
+		executor = "fixed-pool".equals(executorType) ? Executors.newFixedThreadPool(FIXED_POOL_SIZE) : DownloadExecutors.newThreadPerDownloadExecutor();
+	}
+
+	/**
+	 * Detaches the emulated devices of the fleet and shuts the executor down.
+	 *
+	 * @throws UsbException the USB exception
+	 */
+	@TearDown
+	public void tearDown() throws UsbException {
+		executor.shutdownNow();
+		final VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		for(final VirtualUsbDevice device : attachedDevices) {
+			services.detach(device);
+		}
+		attachedDevices.clear();
+	}
+
+	/**
+	 * Downloads the readings of user A from every device of the fleet.
+	 *
+	 * @return the downloads
+	 * @throws Exception the exception
+	 */
+	@Benchmark
+	public List<DeviceDownload<List<BM55Measurement>>> downloadFleet() throws Exception {
+		final List<DeviceDownload<List<BM55Measurement>>> downloads = usbService.getMeasurementsFromAllDevices("A", executor).get();
+		for(final DeviceDownload<List<BM55Measurement>> download : downloads) {
+			if(!download.isSuccessful()) {
+				throw new IllegalStateException("The download from a device failed", download.getFailure());
+			}
+		}
+		return downloads;
+	}
+}
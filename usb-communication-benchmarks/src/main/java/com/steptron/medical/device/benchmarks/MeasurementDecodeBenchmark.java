@@ -0,0 +1,221 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.steptron.medical.device.domain.BF480Measurement;
+import com.steptron.medical.device.domain.BF480MeasurementView;
+import com.steptron.medical.device.domain.BM55Measurement;
+import com.steptron.medical.device.domain.BM55MeasurementView;
+import com.steptron.medical.device.domain.BM55User;
+import com.steptron.medical.device.domain.MeasurementBatchDecoder;
+import com.steptron.medical.device.emulator.BF480Emulator;
+import com.steptron.medical.device.emulator.BM55Emulator;
+import com.steptron.medical.device.services.BF480MemoryDecoder;
+import com.steptron.medical.device.services.BF480USBService;
+import com.steptron.medical.device.util.BytesManipulator;
+
+/**
+ * Benchmarks the decoding of the readings to {@link BM55Measurement} and {@link BF480Measurement} objects,
+ * and the scan of the same readings through the flyweight views.
+ * The scores are per decoded reading.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeasurementDecodeBenchmark {
+
+	/** The Constant BM55_READINGS is the size of a full BM55 memory (60 readings for each of the users A and B). */
+	private static final int BM55_READINGS = 120;
+
+	/** The Constant BF480_READINGS is the size of a full BF480 memory (64 readings for each of the 10 users). */
+	private static final int BF480_READINGS = BF480USBService.MAX_NUMBER_OF_READINGS * BF480Emulator.NUMBER_OF_USERS;
+
+	private byte[][] bm55Readings;
+	private byte[][] bf480RawReadings;
+	private int[][] bf480UserReadings;
+	private ByteBuffer bm55Dump;
+	private ByteBuffer bf480Dump;
+	private final BM55MeasurementView bm55View = new BM55MeasurementView();
+	private final BF480MeasurementView bf480View = new BF480MeasurementView();
+	private final MeasurementBatchDecoder batchDecoder = new MeasurementBatchDecoder();
+
+	/**
+	 * Prepares a full BM55 memory for both users, including the edge case dates, and a full transposed BF480 memory.
+	 */
+	@Setup
+	public void setUp() {
+		final List<BM55Measurement> measurements = new ArrayList<BM55Measurement>(BM55Emulator.generateMeasurements(BM55_READINGS - 6));
+		for(final BM55User user : BM55User.values()) {
+			measurements.add(new BM55Measurement(120, 80, user, 60, false, false, LocalDateTime.of(2000, 1, 1, 0, 0).toInstant(ZoneOffset.UTC)));
+			measurements.add(new BM55Measurement(255, 200, user, 255, true, true, LocalDateTime.of(2016, 2, 29, 23, 59).toInstant(ZoneOffset.UTC)));
+			measurements.add(new BM55Measurement(90, 50, user, 40, true, false, LocalDateTime.of(2127, 12, 31, 23, 59).toInstant(ZoneOffset.UTC)));
+		}
+		bm55Readings = new byte[measurements.size()][];
+		for(int readingsCounter = 0; readingsCounter < measurements.size(); readingsCounter++) {
+			bm55Readings[readingsCounter] = BM55Emulator.encode(measurements.get(readingsCounter));
+		}
+
+		bf480RawReadings = new BF480Emulator(BF480Emulator.generateMeasurements(BF480USBService.MAX_NUMBER_OF_READINGS)).getRows();
+		bf480UserReadings = transpose(bf480RawReadings);
+
+		bm55Dump = ByteBuffer.allocate(bm55Readings.length * BM55MeasurementView.READING_LENGTH);
+		for(final byte[] reading : bm55Readings) {
+			bm55Dump.put(reading);
+		}
+		bm55Dump.flip();
+		bf480Dump = ByteBuffer.allocate(BF480MeasurementView.MEMORY_LENGTH);
+		for(final byte[] row : bf480RawReadings) {
+			bf480Dump.put(row);
+		}
+		bf480Dump.flip();
+	}
+
+	/**
+	 * Decodes a full BM55 memory.
+	 *
+	 * @param blackhole the blackhole
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BM55_READINGS)
+	public void decodeBM55(final Blackhole blackhole) {
+		for(final byte[] reading : bm55Readings) {
+			blackhole.consume(new BM55Measurement(reading));
+		}
+	}
+
+	/**
+	 * Decodes a full BF480 memory, all the 64 rows for all the 10 users.
+	 *
+	 * @param blackhole the blackhole
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BF480_READINGS)
+	public void decodeBF480(final Blackhole blackhole) {
+		for(final int[] userReading : bf480UserReadings) {
+			for(int readingStartByteNumber = 0; readingStartByteNumber < BF480Emulator.NUMBER_OF_USERS * BF480Emulator.NUMBER_OF_FIELDS; readingStartByteNumber += BF480Emulator.NUMBER_OF_FIELDS) {
+				blackhole.consume(new BF480Measurement(userReading, readingStartByteNumber));
+			}
+		}
+	}
+
+	/**
+	 * Decodes a full BM55 memory dump with the batch decoder, which validates the date of each reading.
+	 *
+	 * @param blackhole the blackhole
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BM55_READINGS)
+	public void decodeBM55Batch(final Blackhole blackhole) {
+		batchDecoder.decodeBM55(bm55Dump, blackhole::consume);
+	}
+
+	/**
+	 * Decodes the 64 readings of one user from a raw BF480 dump by converting and transposing the whole dump.
+	 *
+	 * @param blackhole the blackhole
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BF480USBService.MAX_NUMBER_OF_READINGS)
+	public void decodeBF480UserByTranspose(final Blackhole blackhole) {
+		for(final int[] userReading : transpose(bf480RawReadings)) {
+			blackhole.consume(new BF480Measurement(userReading, 0));
+		}
+	}
+
+	/**
+	 * Decodes the 64 readings of one user from a raw BF480 dump by reading the 6 rows of the user only.
+	 *
+	 * @param blackhole the blackhole
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BF480USBService.MAX_NUMBER_OF_READINGS)
+	public void decodeBF480UserByProjection(final Blackhole blackhole) {
+		BF480MemoryDecoder.decodeUser(bf480RawReadings, 0, blackhole::consume);
+	}
+
+	/**
+	 * Scans a full BM55 memory dump through the view, reading every value of each reading.
+	 *
+	 * @param blackhole the blackhole
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BM55_READINGS)
+	public void scanBM55ByView(final Blackhole blackhole) {
+		for(int offset = 0; offset < bm55Dump.limit(); offset += BM55MeasurementView.READING_LENGTH) {
+			bm55View.wrap(bm55Dump, offset);
+			blackhole.consume(bm55View.getSystolicPressure());
+			blackhole.consume(bm55View.getDiastolicPressure());
+			blackhole.consume(bm55View.getPulseRate());
+			blackhole.consume(bm55View.getUser());
+			blackhole.consume(bm55View.isRestingIndicator());
+			blackhole.consume(bm55View.isArrhythmia());
+			blackhole.consume(bm55View.getMeasuredTime());
+		}
+	}
+
+	/**
+	 * Scans a full BF480 memory dump through the view, reading every value of each reading of the 10 users.
+	 *
+	 * @param blackhole the blackhole
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BF480_READINGS)
+	public void scanBF480ByView(final Blackhole blackhole) {
+		for(int userNumber = 1; userNumber <= BF480Emulator.NUMBER_OF_USERS; userNumber++) {
+			for(int readingNumber = 0; readingNumber < BF480USBService.MAX_NUMBER_OF_READINGS; readingNumber++) {
+				bf480View.wrap(bf480Dump, BF480MeasurementView.getOffset(userNumber, readingNumber));
+				blackhole.consume(bf480View.getWeight());
+				blackhole.consume(bf480View.getBodyFat());
+				blackhole.consume(bf480View.getWater());
+				blackhole.consume(bf480View.getMuscles());
+				blackhole.consume(bf480View.getMeasuredTime());
+			}
+		}
+	}
+
+	private static int[][] transpose(final byte[][] rawReadings) {
+		final int[][] readings = new int[rawReadings.length][];
+		for(int readingsCounter = 0; readingsCounter < rawReadings.length; readingsCounter++) {
+			readings[readingsCounter] = BytesManipulator.convertBytesToIntegers(rawReadings[readingsCounter]);
+		}
+		return BytesManipulator.transpose(readings);
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.steptron.medical.device.domain.BM55Measurement;
+import com.steptron.medical.device.domain.BM55MeasurementStore;
+import com.steptron.medical.device.domain.BM55User;
+import com.steptron.medical.device.emulator.BM55Emulator;
+
+/**
+ * Benchmarks a scan of an archive of BM55 readings, the mean systolic pressure of user A over the readings after a given time,
+ * from a list of measurements and from the columnar store. The list is shuffled, so it is not in the order the measurements
+ * were allocated in, as it is after an archive was assembled from many downloads. The scores are per reading scanned.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeasurementStoreBenchmark {
+
+	private static final int NUMBER_OF_READINGS = 1 << 20;
+
+	private List<BM55Measurement> measurements;
+	private BM55MeasurementStore store;
+	private long measuredAfter;
+
+	/**
+	 * Fills the list and the store with the same readings in the same order.
+	 */
+	@Setup
+	public void setUp() {
+		final List<BM55Measurement> generatedMeasurements = BM55Emulator.generateMeasurements(100);
+		measurements = new ArrayList<BM55Measurement>(NUMBER_OF_READINGS);
+		for(int readingsCounter = 0; readingsCounter < NUMBER_OF_READINGS; readingsCounter++) {
+			measurements.add(new BM55Measurement(BM55Emulator.encode(generatedMeasurements.get(readingsCounter % generatedMeasurements.size()))));
+		}
+		//The list is no longer in the order the measurements were allocated in
+		Collections.shuffle(measurements);
+
+		store = new BM55MeasurementStore(NUMBER_OF_READINGS);
+		store.appendAll(measurements);
+		measuredAfter = generatedMeasurements.get(generatedMeasurements.size() / 2).getMeasuredTime().getEpochSecond();
+	}
+
+	/**
+	 * Scans the list of measurements.
+	 *
+	 * @return the mean systolic pressure
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NUMBER_OF_READINGS)
+	public double scanList() {
+		long sum = 0;
+		int count = 0;
+		for(final BM55Measurement measurement : measurements) {
+			if(measurement.getUser() == BM55User.A && measurement.getMeasuredTime().getEpochSecond() > measuredAfter) {
+				sum += measurement.getSystolicPressure();
+				count++;
+			}
+		}
+		return (double) sum / count;
+	}
+
+	/**
+	 * Scans the columnar store.
+	 *
+	 * @return the mean systolic pressure
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NUMBER_OF_READINGS)
+	public double scanStore() {
+		long sum = 0;
+		int count = 0;
+		for(int index = 0; index < store.size(); index++) {
+			if(store.getUser(index) == BM55User.A && store.getMeasuredTime(index) > measuredAfter) {
+				sum += store.getSystolicPressure(index);
+				count++;
+			}
+		}
+		return (double) sum / count;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.steptron.medical.device.domain.BF480Measurement;
+import com.steptron.medical.device.domain.BF480MeasurementView;
+import com.steptron.medical.device.domain.MeasurementTimeline;
+
+/**
+ * The Class BF480Archive archives the readings of one BF480 user in the order they were measured, each as the 12 bytes of its 6
+ * big-endian 16-bit fields (weight, body fat, water, muscles, date and time) the way the scale stores them.
+ * The readings are decoded lazily through a {@link BF480MeasurementView} positioned on the mapped segment.
+ */
+public class BF480Archive extends RecordArchive {
+
+	/** The Constant DEFAULT_SEGMENT_CAPACITY is the number of readings of a segment file, 20 MB per segment. */
+	public static final int DEFAULT_SEGMENT_CAPACITY = 1 << 20;
+
+	private final BF480MeasurementView appendView = new BF480MeasurementView();
+
+	/**
+	 * Opens the archive of the BF480 user in the directory, or creates it.
+	 *
+	 * @param directory the directory of the segment files
+	 * @param name the name of the archive, e.g. the patient of the user slot
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public BF480Archive(final Path directory, final String name) throws IOException {
+		this(directory, name, DEFAULT_SEGMENT_CAPACITY);
+	}
+
+	/**
+	 * Opens the archive of the BF480 user in the directory, or creates it with the given number of readings per segment file.
+	 *
+	 * @param directory the directory of the segment files
+	 * @param name the name of the archive, e.g. the patient of the user slot
+	 * @param segmentCapacity the number of readings of a segment file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public BF480Archive(final Path directory, final String name, final int segmentCapacity) throws IOException {
+		super(directory, name, BF480MeasurementView.RECORD_LENGTH, segmentCapacity);
+	}
+
+	/**
+	 * Appends the 12 bytes of a reading. The reading must not be measured before the last reading of the archive.
+	 *
+	 * @param reading the reading bytes
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void append(final byte[] reading) throws IOException {
+		append(appendView.wrap(ByteBuffer.wrap(reading), 0, 2).getMeasuredTime(), reading, 0);
+	}
+
+	/**
+	 * Checks if the 12 bytes of the reading are archived.
+	 *
+	 * @param reading the reading bytes
+	 * @return true, if the reading is archived
+	 * @throws IOException Signals that an I/O exception has occurred while mapping the segments.
+	 */
+	public synchronized boolean contains(final byte[] reading) throws IOException {
+		return contains(appendView.wrap(ByteBuffer.wrap(reading), 0, 2).getMeasuredTime(), reading, 0);
+	}
+
+	/**
+	 * Positions the view on the reading, which is decoded from the mapped segment without copying.
+	 *
+	 * @param index the index of the reading
+	 * @param view the view to be positioned
+	 * @return the view
+	 * @throws IOException Signals that an I/O exception has occurred while mapping the segment.
+	 */
+	public BF480MeasurementView getReading(final long index, final BF480MeasurementView view) throws IOException {
+		return view.wrap(getBuffer(index), getRecordOffset(index), 2);
+	}
+
+	/**
+	 * Loads the readings measured at or after the time into a timeline. The archive is in the order of the measured times,
+	 * so the readings are not sorted again.
+	 *
+	 * @param from the first time included in epoch seconds, Long.MIN_VALUE for all the readings
+	 * @return the timeline of the readings
+	 * @throws IOException Signals that an I/O exception has occurred while mapping a segment.
+	 */
+	public MeasurementTimeline<BF480Measurement> loadTimeline(final long from) throws IOException {
+		final long size = size();
+		final long first = from == Long.MIN_VALUE ? 0 : indexOfFirstAfter(from - 1);
+		final List<BF480Measurement> measurements = new ArrayList<BF480Measurement>((int) (size - first));
+		final BF480MeasurementView view = new BF480MeasurementView();
+		for(long index = first; index < size; index++) {
+			measurements.add(getReading(index, view).toMeasurement());
+		}
+		return MeasurementTimeline.ofBF480(measurements);
+	}
+
+}
@@ -0,0 +1,325 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Class RecordArchive is an append-only archive of fixed-length raw device records, each stored with its measured time in epoch seconds.
+ * The records are kept in segment files of a fixed number of records, which are memory-mapped, so the records are read in place without copying.
+ * Opening an archive lists its segments and maps the last one only, the other segments are mapped on their first read,
+ * so opening a large archive does not read it.
+ * <p>
+ * The records are appended in the order of their measured times, which is the timestamp index of the archive:
+ * the segments and the records within a segment are binary searched by measured time. A segment file holds a header of
+ * {@value #HEADER_LENGTH} bytes (the magic number, the version, the record length, the capacity and the number of records)
+ * followed by the records, each the 8-byte measured time followed by the record bytes. The number of records is updated
+ * after the record is written, so a record is never seen half-written.
+ * <p>
+ * The appends are serialised, the reads can run concurrently with an append.
+ */
+public class RecordArchive implements Closeable {
+
+	/** The Constant HEADER_LENGTH is the number of bytes of the header of a segment file. */
+	public static final int HEADER_LENGTH = 32;
+
+	private static final int MAGIC = 0x4d444152;
+	private static final int VERSION = 1;
+	private static final int COUNT_OFFSET = 16;
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	private final Path directory;
+	private final String name;
+	private final int recordLength;
+	private final int segmentCapacity;
+	private final int slotLength;
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private final List<Path> segmentFiles = new ArrayList<Path>();
+
+	private volatile long size;
+	private volatile long lastMeasuredTime = Long.MIN_VALUE;
+
+	/**
+	 * Opens the archive in the directory, or creates it if it has no segment yet.
+	 *
+	 * @param directory the directory of the segment files
+	 * @param name the name of the archive, the prefix of its segment files
+	 * @param recordLength the number of bytes of a record
+	 * @param segmentCapacity the number of records of a segment file
+	 * @throws IOException Signals that an I/O exception has occurred, or a segment was written with another record length or capacity.
+	 */
+	public RecordArchive(final Path directory, final String name, final int recordLength, final int segmentCapacity) throws IOException {
+		if(recordLength < 1 || segmentCapacity < 1) {
+			throw new IllegalArgumentException("The record length and the segment capacity must be at least 1");
+		}
+		this.directory = directory;
+		this.name = name;
+		this.recordLength = recordLength;
+		this.segmentCapacity = segmentCapacity;
+		this.slotLength = 8 + recordLength;
+		if((long) slotLength * segmentCapacity > Integer.MAX_VALUE - HEADER_LENGTH) {
+			throw new IllegalArgumentException("A segment cannot be larger than 2 GB");
+		}
+
+		Files.createDirectories(directory);
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, name + "-*" + SEGMENT_SUFFIX)) {
+			for(final Path file : files) {
+				segmentFiles.add(file);
+			}
+		}
+		//The segment numbers are zero padded, so the names sort in the order of the segments
+		Collections.sort(segmentFiles);
+		for(int segmentCounter = 0; segmentCounter < segmentFiles.size(); segmentCounter++) {
+			segments.add(null);
+		}
+		if(segmentFiles.isEmpty()) {
+			addSegment();
+		} else {
+			final MappedByteBuffer lastSegment = getSegment(segmentFiles.size() - 1);
+			final int count = lastSegment.getInt(COUNT_OFFSET);
+			size = (long) (segmentFiles.size() - 1) * segmentCapacity + count;
+			if(size > 0) {
+				lastMeasuredTime = getMeasuredTime(size - 1);
+			}
+		}
+	}
+
+	/**
+	 * Appends a record. The measured time must not be before the measured time of the last record.
+	 *
+	 * @param measuredTime the measured time of the record in epoch seconds
+	 * @param record the array holding the record
+	 * @param offset the offset of the record in the array
+	 * @throws IOException Signals that an I/O exception has occurred while creating a new segment.
+	 */
+	public synchronized void append(final long measuredTime, final byte[] record, final int offset) throws IOException {
+		if(measuredTime < lastMeasuredTime) {
+			throw new IllegalArgumentException("The record measured at " + measuredTime + " is older than the last record of the archive, measured at " + lastMeasuredTime);
+		}
+		int count = (int) (size % segmentCapacity);
+		if(count == 0 && size > 0) {
+			addSegment();
+		}
+		final MappedByteBuffer segment = segments.get(segments.size() - 1);
+		final int slotOffset = HEADER_LENGTH + count * slotLength;
+		segment.putLong(slotOffset, measuredTime);
+		for(int byteCounter = 0; byteCounter < recordLength; byteCounter++) {
+			segment.put(slotOffset + 8 + byteCounter, record[offset + byteCounter]);
+		}
+		segment.putInt(COUNT_OFFSET, count + 1);
+		lastMeasuredTime = measuredTime;
+		size++;
+	}
+
+	/**
+	 * Gets the number of records.
+	 *
+	 * @return the number of records
+	 */
+	public long size() {
+		return this.size;
+	}
+
+	/**
+	 * Gets the measured time of the last record.
+	 *
+	 * @return the measured time in epoch seconds, Long.MIN_VALUE if the archive is empty
+	 */
+	public long getLastMeasuredTime() {
+		return this.lastMeasuredTime;
+	}
+
+	/**
+	 * Gets the number of bytes of a record.
+	 *
+	 * @return the record length
+	 */
+	public int getRecordLength() {
+		return this.recordLength;
+	}
+
+	/**
+	 * Gets the measured time of the record.
+	 *
+	 * @param index the index of the record
+	 * @return the measured time in epoch seconds
+	 * @throws IOException Signals that an I/O exception has occurred while mapping the segment.
+	 */
+	public long getMeasuredTime(final long index) throws IOException {
+		checkIndex(index);
+		return getSegment((int) (index / segmentCapacity)).getLong(getSlotOffset(index));
+	}
+
+	/**
+	 * Gets the mapped buffer holding the record, to be read at {@link #getRecordOffset(long)} with absolute gets.
+	 * The buffer is shared, its position and limit must not be changed.
+	 *
+	 * @param index the index of the record
+	 * @return the buffer of the segment of the record
+	 * @throws IOException Signals that an I/O exception has occurred while mapping the segment.
+	 */
+	public ByteBuffer getBuffer(final long index) throws IOException {
+		checkIndex(index);
+		return getSegment((int) (index / segmentCapacity));
+	}
+
+	/**
+	 * Gets the offset of the record in the buffer returned by {@link #getBuffer(long)}.
+	 *
+	 * @param index the index of the record
+	 * @return the offset of the first byte of the record
+	 */
+	public int getRecordOffset(final long index) {
+		checkIndex(index);
+		return getSlotOffset(index) + 8;
+	}
+
+	/**
+	 * Finds the first record measured after the given time, with a binary search of the segments and then of the records of the segment.
+	 *
+	 * @param measuredTime the time in epoch seconds
+	 * @return the index of the first record measured after the time, the size of the archive if there is none
+	 * @throws IOException Signals that an I/O exception has occurred while mapping the segments.
+	 */
+	public long indexOfFirstAfter(final long measuredTime) throws IOException {
+		//Find the segment first so that only the segments on the path of the search are mapped
+		int lowSegment = 0;
+		int highSegment = (int) ((size + segmentCapacity - 1) / segmentCapacity);
+		while(lowSegment + 1 < highSegment) {
+			final int middleSegment = (lowSegment + highSegment) >>> 1;
+			if(getMeasuredTime((long) middleSegment * segmentCapacity) > measuredTime) {
+				highSegment = middleSegment;
+			} else {
+				lowSegment = middleSegment;
+			}
+		}
+		long low = (long) lowSegment * segmentCapacity;
+		long high = Math.min(size, (long) highSegment * segmentCapacity);
+		while(low < high) {
+			final long middle = (low + high) >>> 1;
+			if(getMeasuredTime(middle) > measuredTime) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Checks if a record with the same bytes and measured time is archived.
+	 *
+	 * @param measuredTime the measured time of the record in epoch seconds
+	 * @param record the array holding the record
+	 * @param offset the offset of the record in the array
+	 * @return true, if the record is archived
+	 * @throws IOException Signals that an I/O exception has occurred while mapping the segments.
+	 */
+	public boolean contains(final long measuredTime, final byte[] record, final int offset) throws IOException {
+		for(long index = indexOfFirstAfter(measuredTime - 1); index < size && getMeasuredTime(index) == measuredTime; index++) {
+			final ByteBuffer buffer = getBuffer(index);
+			final int recordOffset = getRecordOffset(index);
+			int byteCounter = 0;
+			while(byteCounter < recordLength && buffer.get(recordOffset + byteCounter) == record[offset + byteCounter]) {
+				byteCounter++;
+			}
+			if(byteCounter == recordLength) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the appended records to the disk. Only the last segment is written, the full segments are written when the archive
+	 * rolls over to a new segment.
+	 */
+	public synchronized void force() {
+		segments.get(segments.size() - 1).force();
+	}
+
+	/**
+	 * Writes the appended records to the disk. The mapped segments are released once they are no longer referenced.
+	 */
+	@Override
+	public synchronized void close() {
+		force();
+	}
+
+	private MappedByteBuffer getSegment(final int segmentNumber) throws IOException {
+		synchronized(segments) {
+			MappedByteBuffer segment = segments.get(segmentNumber);
+			if(segment == null) {
+				segment = map(segmentFiles.get(segmentNumber), false);
+				segments.set(segmentNumber, segment);
+			}
+			return segment;
+		}
+	}
+
+	private void addSegment() throws IOException {
+		if(!segments.isEmpty()) {
+			//The full segment is no longer the last one, so it is written now or never by force()
+			getSegment(segments.size() - 1).force();
+		}
+		final Path file = directory.resolve(String.format("%s-%06d%s", name, segmentFiles.size(), SEGMENT_SUFFIX));
+		final MappedByteBuffer segment = map(file, true);
+		segment.putInt(0, MAGIC);
+		segment.putInt(4, VERSION);
+		segment.putInt(8, recordLength);
+		segment.putInt(12, segmentCapacity);
+		segment.putInt(COUNT_OFFSET, 0);
+		synchronized(segments) {
+			segmentFiles.add(file);
+			segments.add(segment);
+		}
+	}
+
+	private MappedByteBuffer map(final Path file, final boolean create) throws IOException {
+		final long length = HEADER_LENGTH + (long) slotLength * segmentCapacity;
+		try(FileChannel channel = create ? FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE) : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			//The mapping stays valid after the channel is closed
+			final MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+			if(!create && (segment.getInt(0) != MAGIC || segment.getInt(8) != recordLength || segment.getInt(12) != segmentCapacity)) {
+				throw new IOException("The segment " + file + " is not a segment of records of " + recordLength + " bytes and " + segmentCapacity + " records");
+			}
+			return segment;
+		}
+	}
+
+	private int getSlotOffset(final long index) {
+		return HEADER_LENGTH + (int) (index % segmentCapacity) * slotLength;
+	}
+
+	private void checkIndex(final long index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
@@ -19,9 +19,9 @@ package com.steptron.medical.device.domain;
 
 import java.text.ParseException;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.time.ZoneOffset;
+
+import com.steptron.medical.device.util.EpochTime;
 
 /**
  * The Class BF480Measurement converts the integer data array received from
@@ -62,6 +62,21 @@ public class BF480Measurement implements Comparable<BF480Measurement> {
      * belongs to user 2 and so on
      */
 	public BF480Measurement(final int[] reading, final int readingStartByteNumber) {
+		this(reading, readingStartByteNumber, ZoneOffset.UTC);
+	}
+
+    /**
+     * Instantiates a new BF480 measurement object, measured by a device whose clock is at the offset from UTC.
+     * The measured time is null if the date or time of the reading does not exist.
+     *
+     * @param reading the reading integers which will be converted to meaningful
+     * values after decoding them
+     * @param readingStartByteNumber the byte number from where the users
+     * reading will start. First 0 to 5 integers belongs to user 1, 6 to 11
+     * belongs to user 2 and so on
+     * @param zoneOffset the offset of the clock of the device, the same offset for all the readings of the device
+     */
+	public BF480Measurement(final int[] reading, final int readingStartByteNumber, final ZoneOffset zoneOffset) {
 
 		//Representation of transposed row passed to this constructor
 		//startingbyte=0 |startingbyte=6 |        |startingbyte=54
@@ -87,13 +102,9 @@ public class BF480Measurement implements Comparable<BF480Measurement> {
 		//Calculate the minute by time & 0xff
 		final int minute = time & 0xff;
 
-		//Convert the yyyy-mm-dd HH:mm to ZonedDateTime or you can convert this to simple java.util.Date or java.sql.Timestamp
-		try {
-			ZonedDateTime zdt = LocalDateTime.of(year, month, day, hour, minute).atZone(ZoneId.of("Z"));
-			this.measuredTime = zdt.toInstant();
-		} catch(final Exception e) {
-			e.printStackTrace();
-		}
+		//Convert the yyyy-mm-dd HH:mm to the epoch second arithmetically, the time zone rules are not looked up for every reading
+		final long epochSecond = EpochTime.toValidEpochSecond(year, month, day, hour, minute, zoneOffset.getTotalSeconds());
+		this.measuredTime = epochSecond == EpochTime.INVALID ? null : Instant.ofEpochSecond(epochSecond);
 
 		//Measurement timestamp conversion :END
 
@@ -0,0 +1,230 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.domain;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * The Class BF480MeasurementStore keeps the BF480 readings column by column in primitive arrays instead of a list of measurements:
+ * the user numbers as bytes, the weights, body fats, waters and muscles in tenths as shorts, the way the scale stores them,
+ * and the measured times as epoch seconds. A reading takes 17 bytes instead of the 76 bytes of a measurement with its measured time
+ * and list slot, and a scan of one column reads consecutive memory. The readings are kept in the order they are appended and are read by index.
+ */
+public class BF480MeasurementStore {
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private int size;
+	private byte[] userNumbers;
+	private short[] weights;
+	private short[] bodyFats;
+	private short[] waters;
+	private short[] muscles;
+	private long[] measuredTimes;
+
+	/**
+	 * Instantiates a new empty BF480 measurement store.
+	 */
+	public BF480MeasurementStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Instantiates a new empty BF480 measurement store with room for the given number of readings.
+	 *
+	 * @param initialCapacity the number of readings stored before the columns grow
+	 */
+	public BF480MeasurementStore(final int initialCapacity) {
+		userNumbers = new byte[initialCapacity];
+		weights = new short[initialCapacity];
+		bodyFats = new short[initialCapacity];
+		waters = new short[initialCapacity];
+		muscles = new short[initialCapacity];
+		measuredTimes = new long[initialCapacity];
+	}
+
+	/**
+	 * Appends the reading the view is positioned on.
+	 *
+	 * @param userNumber the user number (1 to 10)
+	 * @param reading the view of the reading
+	 */
+	public void append(final int userNumber, final BF480MeasurementView reading) {
+		append(userNumber, reading.getWeightTenths(), reading.getBodyFatTenths(), reading.getWaterTenths(), reading.getMusclesTenths(), reading.getMeasuredTime());
+	}
+
+	/**
+	 * Appends the measurement.
+	 *
+	 * @param userNumber the user number (1 to 10)
+	 * @param measurement the measurement
+	 */
+	public void append(final int userNumber, final BF480Measurement measurement) {
+		append(userNumber, toTenths(measurement.getWeight()), toTenths(measurement.getBodyFat()), toTenths(measurement.getWater()), toTenths(measurement.getMuscles()), measurement.getMeasuredTime().getEpochSecond());
+	}
+
+	/**
+	 * Appends a reading.
+	 *
+	 * @param userNumber the user number (1 to 10)
+	 * @param weightTenths the weight in tenths
+	 * @param bodyFatTenths the body fat in tenths
+	 * @param waterTenths the water in tenths
+	 * @param musclesTenths the muscles in tenths
+	 * @param measuredTime the measured time in epoch seconds
+	 */
+	public void append(final int userNumber, final int weightTenths, final int bodyFatTenths, final int waterTenths, final int musclesTenths, final long measuredTime) {
+		ensureCapacity(size + 1);
+		userNumbers[size] = (byte) userNumber;
+		weights[size] = (short) weightTenths;
+		bodyFats[size] = (short) bodyFatTenths;
+		waters[size] = (short) waterTenths;
+		muscles[size] = (short) musclesTenths;
+		measuredTimes[size] = measuredTime;
+		size++;
+	}
+
+	/**
+	 * Gets the number of readings stored.
+	 *
+	 * @return the number of readings
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Checks if no reading is stored.
+	 *
+	 * @return true, if the store is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the user number of the reading.
+	 *
+	 * @param index the index of the reading
+	 * @return the user number
+	 */
+	public int getUserNumber(final int index) {
+		return userNumbers[checkIndex(index)];
+	}
+
+	/**
+	 * Gets the weight of the reading.
+	 *
+	 * @param index the index of the reading
+	 * @return the weight
+	 */
+	public double getWeight(final int index) {
+		return (weights[checkIndex(index)] & 0xffff) / 10.0;
+	}
+
+	/**
+	 * Gets the body fat of the reading.
+	 *
+	 * @param index the index of the reading
+	 * @return the body fat
+	 */
+	public double getBodyFat(final int index) {
+		return (bodyFats[checkIndex(index)] & 0xffff) / 10.0;
+	}
+
+	/**
+	 * Gets the water of the reading.
+	 *
+	 * @param index the index of the reading
+	 * @return the water
+	 */
+	public double getWater(final int index) {
+		return (waters[checkIndex(index)] & 0xffff) / 10.0;
+	}
+
+	/**
+	 * Gets the muscles of the reading.
+	 *
+	 * @param index the index of the reading
+	 * @return the muscles
+	 */
+	public double getMuscles(final int index) {
+		return (muscles[checkIndex(index)] & 0xffff) / 10.0;
+	}
+
+	/**
+	 * Gets the measured time of the reading in seconds since the epoch.
+	 *
+	 * @param index the index of the reading
+	 * @return the measured time in epoch seconds
+	 */
+	public long getMeasuredTime(final int index) {
+		return measuredTimes[checkIndex(index)];
+	}
+
+	/**
+	 * Creates the measurement of the reading.
+	 *
+	 * @param index the index of the reading
+	 * @return the measurement
+	 */
+	public BF480Measurement getMeasurement(final int index) {
+		return new BF480Measurement(getWeight(index), getBodyFat(index), getWater(index), getMuscles(index), Instant.ofEpochSecond(getMeasuredTime(index)));
+	}
+
+	/**
+	 * Removes all the readings, the columns keep their capacity.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Shrinks the columns to the number of readings stored.
+	 */
+	public void trimToSize() {
+		resize(size);
+	}
+
+	private void ensureCapacity(final int capacity) {
+		if(capacity > measuredTimes.length) {
+			resize(Math.max(capacity, measuredTimes.length + (measuredTimes.length >> 1) + 1));
+		}
+	}
+
+	private void resize(final int capacity) {
+		userNumbers = Arrays.copyOf(userNumbers, capacity);
+		weights = Arrays.copyOf(weights, capacity);
+		bodyFats = Arrays.copyOf(bodyFats, capacity);
+		waters = Arrays.copyOf(waters, capacity);
+		muscles = Arrays.copyOf(muscles, capacity);
+		measuredTimes = Arrays.copyOf(measuredTimes, capacity);
+	}
+
+	private int checkIndex(final int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return index;
+	}
+
+	private static int toTenths(final double value) {
+		return (int) Math.round(value * 10);
+	}
+}
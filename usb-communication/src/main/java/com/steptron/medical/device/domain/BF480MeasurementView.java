@@ -0,0 +1,249 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.domain;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import com.steptron.medical.device.util.EpochTime;
+
+/**
+ * The Class BF480MeasurementView reads the values of a BF480 reading straight from a dump of the device memory held in a buffer,
+ * with the same decoding as {@link BF480Measurement#BF480Measurement(int[], int)}. The memory is stored as rows of 128 bytes,
+ * the 6 rows of a user hold the weights, body fats, waters, muscles, dates and times of the 64 readings of the user
+ * as big-endian 16-bit values, so the fields of a reading are one row apart. The view is repositioned to the next reading
+ * instead of creating a measurement per reading, so the dumps can be scanned without allocating. The view also reads the readings stored
+ * with their 6 fields next to each other, {@value #RECORD_LENGTH} bytes per reading, with a field stride of 2.
+ * The buffer is read with absolute gets, its position, limit and byte order are left untouched.
+ */
+public class BF480MeasurementView {
+
+	/** The Constant ROW_LENGTH is the number of bytes of a row of the memory. */
+	public static final int ROW_LENGTH = 128;
+
+	/** The Constant NUMBER_OF_FIELDS of a reading: weight, body fat, water, muscles, date and time. */
+	public static final int NUMBER_OF_FIELDS = 6;
+
+	/** The Constant RECORD_LENGTH is the number of bytes of a reading with its fields next to each other. */
+	public static final int RECORD_LENGTH = NUMBER_OF_FIELDS * 2;
+
+	/** The Constant NUMBER_OF_SLOTS is the number of readings stored per user, one 16-bit value of each of the rows of the user. */
+	public static final int NUMBER_OF_SLOTS = ROW_LENGTH / 2;
+
+	/** The Constant MEMORY_LENGTH is the number of bytes of a memory dump, 64 rows of which the first 60 hold the readings of the 10 users. */
+	public static final int MEMORY_LENGTH = 64 * ROW_LENGTH;
+
+	private ByteBuffer buffer;
+	private int offset;
+	private int fieldStride;
+
+	/**
+	 * Instantiates a new BF480 measurement view, to be positioned with {@link #wrap(ByteBuffer, int)}.
+	 */
+	public BF480MeasurementView() {
+	}
+
+	/**
+	 * Instantiates a new BF480 measurement view of the reading at the offset of the buffer.
+	 *
+	 * @param buffer the buffer holding the memory dump
+	 * @param offset the offset of the weight of the reading, see {@link #getOffset(int, int)}
+	 */
+	public BF480MeasurementView(final ByteBuffer buffer, final int offset) {
+		wrap(buffer, offset);
+	}
+
+	/**
+	 * Gets the offset of the weight of a reading in a dump of the memory starting at offset 0.
+	 *
+	 * @param userNumber the user number (1 to 10)
+	 * @param readingNumber the slot of the reading in the memory of the user (0 to 63)
+	 * @return the offset of the reading
+	 */
+	public static int getOffset(final int userNumber, final int readingNumber) {
+		return (userNumber - 1) * NUMBER_OF_FIELDS * ROW_LENGTH + readingNumber * 2;
+	}
+
+	/**
+	 * Positions the view on the reading at the offset of the buffer.
+	 *
+	 * @param buffer the buffer holding the memory dump
+	 * @param offset the offset of the weight of the reading
+	 * @return this view
+	 */
+	public BF480MeasurementView wrap(final ByteBuffer buffer, final int offset) {
+		return wrap(buffer, offset, ROW_LENGTH);
+	}
+
+	/**
+	 * Positions the view on the reading at the offset of the buffer, with the given number of bytes from a field to the next.
+	 *
+	 * @param buffer the buffer holding the readings
+	 * @param offset the offset of the weight of the reading
+	 * @param fieldStride the number of bytes from a field to the next, {@value #ROW_LENGTH} in a memory dump and 2 in a record
+	 * @return this view
+	 */
+	public BF480MeasurementView wrap(final ByteBuffer buffer, final int offset, final int fieldStride) {
+		if(offset < 0 || offset + (NUMBER_OF_FIELDS - 1) * fieldStride + 2 > buffer.limit()) {
+			throw new IndexOutOfBoundsException("No reading at offset " + offset + " of a buffer of " + buffer.limit() + " bytes");
+		}
+		this.buffer = buffer;
+		this.offset = offset;
+		this.fieldStride = fieldStride;
+		return this;
+	}
+
+	/**
+	 * Positions the view on the reading at the offset in the same buffer.
+	 *
+	 * @param offset the offset of the weight of the reading
+	 * @return this view
+	 */
+	public BF480MeasurementView moveTo(final int offset) {
+		return wrap(buffer, offset, fieldStride);
+	}
+
+	/**
+	 * Gets the offset of the reading in the buffer.
+	 *
+	 * @return the offset
+	 */
+	public int getOffset() {
+		return this.offset;
+	}
+
+	/**
+	 * Checks if the slot is empty, the device stores a zero date in the slots after the last reading of the user.
+	 *
+	 * @return true, if the slot holds no reading
+	 */
+	public boolean isEmpty() {
+		return getField(4) == 0;
+	}
+
+	/**
+	 * Gets the weight.
+	 *
+	 * @return the weight
+	 */
+	public double getWeight() {
+		return getWeightTenths() / 10.0;
+	}
+
+	/**
+	 * Gets the weight in tenths, as stored by the device.
+	 *
+	 * @return the weight in tenths
+	 */
+	public int getWeightTenths() {
+		return getField(0);
+	}
+
+	/**
+	 * Gets the body fat.
+	 *
+	 * @return the body fat
+	 */
+	public double getBodyFat() {
+		return getBodyFatTenths() / 10.0;
+	}
+
+	/**
+	 * Gets the body fat in tenths, as stored by the device.
+	 *
+	 * @return the body fat in tenths
+	 */
+	public int getBodyFatTenths() {
+		return getField(1);
+	}
+
+	/**
+	 * Gets the water.
+	 *
+	 * @return the water
+	 */
+	public double getWater() {
+		return getWaterTenths() / 10.0;
+	}
+
+	/**
+	 * Gets the water in tenths, as stored by the device.
+	 *
+	 * @return the water in tenths
+	 */
+	public int getWaterTenths() {
+		return getField(2);
+	}
+
+	/**
+	 * Gets the muscles.
+	 *
+	 * @return the muscles
+	 */
+	public double getMuscles() {
+		return getMusclesTenths() / 10.0;
+	}
+
+	/**
+	 * Gets the muscles in tenths, as stored by the device.
+	 *
+	 * @return the muscles in tenths
+	 */
+	public int getMusclesTenths() {
+		return getField(3);
+	}
+
+	/**
+	 * Gets the measured time in seconds since the epoch, the device stores the time in UTC.
+	 * The date is (year - 1920) &lt;&lt; 9 | month &lt;&lt; 5 | day and the time is hour &lt;&lt; 8 | minute.
+	 *
+	 * @return the measured time in epoch seconds
+	 */
+	public long getMeasuredTime() {
+		final int date = getField(4);
+		final int time = getField(5);
+		return EpochTime.toEpochSecond(1920 + (date >> 9), date >> 5 & 0xf, date & 0x1f, time >> 8, time & 0xff);
+	}
+
+	/**
+	 * Gets the measured time in seconds since the epoch, measured by a device whose clock is at the offset from UTC.
+	 *
+	 * @param zoneOffset the offset of the clock of the device
+	 * @return the measured time in epoch seconds, or {@link EpochTime#INVALID} if the date or time of the reading does not exist
+	 */
+	public long getValidMeasuredTime(final ZoneOffset zoneOffset) {
+		final int date = getField(4);
+		final int time = getField(5);
+		return EpochTime.toValidEpochSecond(1920 + (date >> 9), date >> 5 & 0xf, date & 0x1f, time >> 8, time & 0xff, zoneOffset.getTotalSeconds());
+	}
+
+	/**
+	 * Creates the measurement of the reading, for the readings which are kept after the scan.
+	 *
+	 * @return the measurement
+	 */
+	public BF480Measurement toMeasurement() {
+		return new BF480Measurement(getWeight(), getBodyFat(), getWater(), getMuscles(), Instant.ofEpochSecond(getMeasuredTime()));
+	}
+
+	private int getField(final int fieldNumber) {
+		final int index = offset + fieldNumber * fieldStride;
+		return (buffer.get(index) & 0xff) << 8 | buffer.get(index + 1) & 0xff;
+	}
+}
@@ -12,11 +12,10 @@ package com.steptron.medical.device.domain;
 
 import java.text.ParseException;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.time.ZoneOffset;
 
 import com.steptron.medical.device.util.BytesManipulator;
+import com.steptron.medical.device.util.EpochTime;
 
 /**
  * The Class BM55Measurement converts the byte data array received from serial
@@ -54,12 +53,24 @@ public class BM55Measurement {
     }
 
     /**
-     * Instantiates a new BM55 measurement.
+     * Instantiates a new BM55 measurement, measured by a device set to UTC.
      *
      * @param reading the reading bytes which will be converted to meaningful
      * values after decoding them
      */
 	public BM55Measurement(final byte[] reading) {
+		this(reading, ZoneOffset.UTC);
+	}
+
+    /**
+     * Instantiates a new BM55 measurement, measured by a device whose clock is at the offset from UTC.
+     * The measured time is null if the date or time of the reading does not exist.
+     *
+     * @param reading the reading bytes which will be converted to meaningful
+     * values after decoding them
+     * @param zoneOffset the offset of the clock of the device, the same offset for all the readings of the device
+     */
+	public BM55Measurement(final byte[] reading, final ZoneOffset zoneOffset) {
 		//Systolic pressure is byte[0] + 25
 		this.systolicPressure = BytesManipulator.getUnsignedInteger((byte) (reading[0] + 25));
 
@@ -106,14 +117,9 @@ public class BM55Measurement {
 			year = reading[7] + 2000;
 		}
 
-		//Convert the yyyy-mm-dd HH:mm to ZonedDateTime or you can convert this to simple java.util.Date or java.sql.Timestamp
-		try {
-			ZonedDateTime zdt = LocalDateTime.of(year, month, day, hour, minute).atZone(ZoneId.of("Z"));
-			this.measuredTime = zdt.toInstant();
-
-		} catch(final Exception e) {
-			e.printStackTrace();
-		}
+		//Convert the yyyy-mm-dd HH:mm to the epoch second arithmetically, the time zone rules are not looked up for every reading
+		final long epochSecond = EpochTime.toValidEpochSecond(year, month, day, hour, minute, zoneOffset.getTotalSeconds());
+		this.measuredTime = epochSecond == EpochTime.INVALID ? null : Instant.ofEpochSecond(epochSecond);
 	}
 
     /**
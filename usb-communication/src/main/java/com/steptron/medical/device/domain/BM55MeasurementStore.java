@@ -0,0 +1,270 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.domain;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * The Class BM55MeasurementStore keeps the BM55 readings column by column in primitive arrays instead of a list of measurements:
+ * the pressures and pulse rates as ints, the user, resting and arrhythmia indicators as bits and the measured times as epoch seconds.
+ * A reading takes about 20 bytes instead of the 68 bytes of a measurement with its measured time and list slot, and a scan of
+ * one column reads consecutive memory. The readings are kept in the order they are appended and are read by index.
+ */
+public class BM55MeasurementStore {
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private int size;
+	private int[] systolicPressures;
+	private int[] diastolicPressures;
+	private int[] pulseRates;
+	private long[] measuredTimes;
+	private final BitSet userB = new BitSet();
+	private final BitSet restingIndicators = new BitSet();
+	private final BitSet arrhythmias = new BitSet();
+
+	private final BM55MeasurementView view = new BM55MeasurementView();
+	private byte[] wrappedReading;
+	private ByteBuffer wrappedBuffer;
+
+	/**
+	 * Instantiates a new empty BM55 measurement store.
+	 */
+	public BM55MeasurementStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Instantiates a new empty BM55 measurement store with room for the given number of readings.
+	 *
+	 * @param initialCapacity the number of readings stored before the columns grow
+	 */
+	public BM55MeasurementStore(final int initialCapacity) {
+		systolicPressures = new int[initialCapacity];
+		diastolicPressures = new int[initialCapacity];
+		pulseRates = new int[initialCapacity];
+		measuredTimes = new long[initialCapacity];
+	}
+
+	/**
+	 * Appends the reading the view is positioned on.
+	 *
+	 * @param reading the view of the reading
+	 */
+	public void append(final BM55MeasurementView reading) {
+		append(reading.getSystolicPressure(), reading.getDiastolicPressure(), reading.getUser(), reading.getPulseRate(), reading.isRestingIndicator(), reading.isArrhythmia(), reading.getMeasuredTime());
+	}
+
+	/**
+	 * Appends the 8 bytes of a reading as read from the device, without creating a measurement.
+	 * The reading is not kept, so the caller can read the next reading into the same array.
+	 *
+	 * @param reading the reading bytes
+	 */
+	public void append(final byte[] reading) {
+		//The drivers read every reading into the same buffer, which is wrapped once
+		if(reading != wrappedReading) {
+			wrappedReading = reading;
+			wrappedBuffer = ByteBuffer.wrap(reading);
+		}
+		append(view.wrap(wrappedBuffer, 0));
+	}
+
+	/**
+	 * Appends the measurement.
+	 *
+	 * @param measurement the measurement
+	 */
+	public void append(final BM55Measurement measurement) {
+		append(measurement.getSystolicPressure(), measurement.getDiastolicPressure(), measurement.getUser(), measurement.getPulseRate(), measurement.isRestingIndicator(), measurement.isArrhythmia(), measurement.getMeasuredTime().getEpochSecond());
+	}
+
+	/**
+	 * Appends the measurements in the order of the collection.
+	 *
+	 * @param measurements the measurements
+	 */
+	public void appendAll(final Collection<BM55Measurement> measurements) {
+		ensureCapacity(size + measurements.size());
+		for(final BM55Measurement measurement : measurements) {
+			append(measurement);
+		}
+	}
+
+	/**
+	 * Appends a reading.
+	 *
+	 * @param systolicPressure the systolic pressure
+	 * @param diastolicPressure the diastolic pressure
+	 * @param user the user
+	 * @param pulseRate the pulse rate
+	 * @param restingIndicator the resting indicator
+	 * @param arrhythmia the arrhythmia
+	 * @param measuredTime the measured time in epoch seconds
+	 */
+	public void append(final int systolicPressure, final int diastolicPressure, final BM55User user, final int pulseRate, final boolean restingIndicator, final boolean arrhythmia, final long measuredTime) {
+		ensureCapacity(size + 1);
+		systolicPressures[size] = systolicPressure;
+		diastolicPressures[size] = diastolicPressure;
+		pulseRates[size] = pulseRate;
+		measuredTimes[size] = measuredTime;
+		userB.set(size, user == BM55User.B);
+		restingIndicators.set(size, restingIndicator);
+		arrhythmias.set(size, arrhythmia);
+		size++;
+	}
+
+	/**
+	 * Gets the number of readings stored.
+	 *
+	 * @return the number of readings
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Checks if no reading is stored.
+	 *
+	 * @return true, if the store is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the systolic pressure of the reading.
+	 *
+	 * @param index the index of the reading
+	 * @return the systolic pressure
+	 */
+	public int getSystolicPressure(final int index) {
+		return systolicPressures[checkIndex(index)];
+	}
+
+	/**
+	 * Gets the diastolic pressure of the reading.
+	 *
+	 * @param index the index of the reading
+	 * @return the diastolic pressure
+	 */
+	public int getDiastolicPressure(final int index) {
+		return diastolicPressures[checkIndex(index)];
+	}
+
+	/**
+	 * Gets the pulse rate of the reading.
+	 *
+	 * @param index the index of the reading
+	 * @return the pulse rate
+	 */
+	public int getPulseRate(final int index) {
+		return pulseRates[checkIndex(index)];
+	}
+
+	/**
+	 * Gets the user of the reading.
+	 *
+	 * @param index the index of the reading
+	 * @return the user
+	 */
+	public BM55User getUser(final int index) {
+		return userB.get(checkIndex(index)) ? BM55User.B : BM55User.A;
+	}
+
+	/**
+	 * Checks if the resting indicator of the reading is on.
+	 *
+	 * @param index the index of the reading
+	 * @return true, if the resting indicator is on
+	 */
+	public boolean isRestingIndicator(final int index) {
+		return restingIndicators.get(checkIndex(index));
+	}
+
+	/**
+	 * Checks if the arrhythmia indicator of the reading is on.
+	 *
+	 * @param index the index of the reading
+	 * @return true, if the arrhythmia indicator is on
+	 */
+	public boolean isArrhythmia(final int index) {
+		return arrhythmias.get(checkIndex(index));
+	}
+
+	/**
+	 * Gets the measured time of the reading in seconds since the epoch.
+	 *
+	 * @param index the index of the reading
+	 * @return the measured time in epoch seconds
+	 */
+	public long getMeasuredTime(final int index) {
+		return measuredTimes[checkIndex(index)];
+	}
+
+	/**
+	 * Creates the measurement of the reading.
+	 *
+	 * @param index the index of the reading
+	 * @return the measurement
+	 */
+	public BM55Measurement getMeasurement(final int index) {
+		return new BM55Measurement(getSystolicPressure(index), getDiastolicPressure(index), getUser(index), getPulseRate(index), isRestingIndicator(index), isArrhythmia(index), Instant.ofEpochSecond(getMeasuredTime(index)));
+	}
+
+	/**
+	 * Removes all the readings, the columns keep their capacity.
+	 */
+	public void clear() {
+		size = 0;
+		userB.clear();
+		restingIndicators.clear();
+		arrhythmias.clear();
+	}
+
+	/**
+	 * Shrinks the columns to the number of readings stored.
+	 */
+	public void trimToSize() {
+		systolicPressures = Arrays.copyOf(systolicPressures, size);
+		diastolicPressures = Arrays.copyOf(diastolicPressures, size);
+		pulseRates = Arrays.copyOf(pulseRates, size);
+		measuredTimes = Arrays.copyOf(measuredTimes, size);
+	}
+
+	private void ensureCapacity(final int capacity) {
+		if(capacity > measuredTimes.length) {
+			final int newCapacity = Math.max(capacity, measuredTimes.length + (measuredTimes.length >> 1) + 1);
+			systolicPressures = Arrays.copyOf(systolicPressures, newCapacity);
+			diastolicPressures = Arrays.copyOf(diastolicPressures, newCapacity);
+			pulseRates = Arrays.copyOf(pulseRates, newCapacity);
+			measuredTimes = Arrays.copyOf(measuredTimes, newCapacity);
+		}
+	}
+
+	private int checkIndex(final int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return index;
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.domain;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import com.steptron.medical.device.util.EpochTime;
+
+/**
+ * The Class BM55MeasurementView reads the values of a BM55 reading straight from the 8 bytes stored in a buffer,
+ * with the same decoding as {@link BM55Measurement#BM55Measurement(byte[])}. The view is repositioned to the next reading
+ * instead of creating a measurement per reading, so a dump of millions of readings can be scanned without allocating.
+ * The buffer is read with absolute gets, its position and limit are left untouched.
+ */
+public class BM55MeasurementView {
+
+	/** The Constant READING_LENGTH is the number of bytes of a reading. */
+	public static final int READING_LENGTH = 8;
+
+	private ByteBuffer buffer;
+	private int offset;
+
+	/**
+	 * Instantiates a new BM55 measurement view, to be positioned with {@link #wrap(ByteBuffer, int)}.
+	 */
+	public BM55MeasurementView() {
+	}
+
+	/**
+	 * Instantiates a new BM55 measurement view of the reading at the offset of the buffer.
+	 *
+	 * @param buffer the buffer holding the readings
+	 * @param offset the offset of the first byte of the reading
+	 */
+	public BM55MeasurementView(final ByteBuffer buffer, final int offset) {
+		wrap(buffer, offset);
+	}
+
+	/**
+	 * Positions the view on the reading at the offset of the buffer.
+	 *
+	 * @param buffer the buffer holding the readings
+	 * @param offset the offset of the first byte of the reading
+	 * @return this view
+	 */
+	public BM55MeasurementView wrap(final ByteBuffer buffer, final int offset) {
+		if(offset < 0 || offset + READING_LENGTH > buffer.limit()) {
+			throw new IndexOutOfBoundsException("No reading at offset " + offset + " of a buffer of " + buffer.limit() + " bytes");
+		}
+		this.buffer = buffer;
+		this.offset = offset;
+		return this;
+	}
+
+	/**
+	 * Positions the view on the reading at the offset in the same buffer.
+	 *
+	 * @param offset the offset of the first byte of the reading
+	 * @return this view
+	 */
+	public BM55MeasurementView moveTo(final int offset) {
+		return wrap(buffer, offset);
+	}
+
+	/**
+	 * Gets the offset of the reading in the buffer.
+	 *
+	 * @return the offset
+	 */
+	public int getOffset() {
+		return this.offset;
+	}
+
+	/**
+	 * Gets the systolic pressure, byte 0 + 25.
+	 *
+	 * @return the systolic pressure
+	 */
+	public int getSystolicPressure() {
+		return buffer.get(offset) + 25 & 0xff;
+	}
+
+	/**
+	 * Gets the diastolic pressure, byte 1 + 25.
+	 *
+	 * @return the diastolic pressure
+	 */
+	public int getDiastolicPressure() {
+		return buffer.get(offset + 1) + 25 & 0xff;
+	}
+
+	/**
+	 * Gets the pulse rate, byte 2.
+	 *
+	 * @return the pulse rate
+	 */
+	public int getPulseRate() {
+		return buffer.get(offset + 2) & 0xff;
+	}
+
+	/**
+	 * Checks if the resting indicator is on, the high bit of byte 3.
+	 *
+	 * @return true, if the resting indicator is on
+	 */
+	public boolean isRestingIndicator() {
+		return buffer.get(offset + 3) < 0;
+	}
+
+	/**
+	 * Gets the user, B if the high bit of byte 4 is set.
+	 *
+	 * @return the user
+	 */
+	public BM55User getUser() {
+		return buffer.get(offset + 4) < 0 ? BM55User.B : BM55User.A;
+	}
+
+	/**
+	 * Checks if the arrhythmia indicator is on, the high bit of byte 7.
+	 *
+	 * @return true, if the arrhythmia indicator is on
+	 */
+	public boolean isArrhythmia() {
+		return buffer.get(offset + 7) < 0;
+	}
+
+	/**
+	 * Gets the measured time in seconds since the epoch, the device stores the time in UTC.
+	 *
+	 * @return the measured time in epoch seconds
+	 */
+	public long getMeasuredTime() {
+		final int month = buffer.get(offset + 3) & 0x7f;
+		final int day = buffer.get(offset + 4) & 0x7f;
+		final int year = 2000 + (buffer.get(offset + 7) & 0x7f);
+		return EpochTime.toEpochSecond(year, month, day, buffer.get(offset + 5), buffer.get(offset + 6));
+	}
+
+	/**
+	 * Gets the measured time in seconds since the epoch, measured by a device whose clock is at the offset from UTC.
+	 *
+	 * @param zoneOffset the offset of the clock of the device
+	 * @return the measured time in epoch seconds, or {@link EpochTime#INVALID} if the date or time of the reading does not exist
+	 */
+	public long getValidMeasuredTime(final ZoneOffset zoneOffset) {
+		final int month = buffer.get(offset + 3) & 0x7f;
+		final int day = buffer.get(offset + 4) & 0x7f;
+		final int year = 2000 + (buffer.get(offset + 7) & 0x7f);
+		return EpochTime.toValidEpochSecond(year, month, day, buffer.get(offset + 5), buffer.get(offset + 6), zoneOffset.getTotalSeconds());
+	}
+
+	/**
+	 * Creates the measurement of the reading, for the readings which are kept after the scan.
+	 *
+	 * @return the measurement
+	 */
+	public BM55Measurement toMeasurement() {
+		return new BM55Measurement(getSystolicPressure(), getDiastolicPressure(), getUser(), getPulseRate(), isRestingIndicator(), isArrhythmia(), Instant.ofEpochSecond(getMeasuredTime()));
+	}
+}
@@ -0,0 +1,30 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.domain;
+
+/**
+ * The reasons a frame is rejected by the {@link MeasurementBatchDecoder}.
+ */
+public enum DecodeError {
+
+	/** The frame is shorter than a reading, the bytes left at the end of a batch or a frame cut short. */
+	SHORT_FRAME,
+
+	/** The date or time of the reading does not exist, the frame was corrupted on the wire or on disk. */
+	INVALID_DATE_TIME
+}
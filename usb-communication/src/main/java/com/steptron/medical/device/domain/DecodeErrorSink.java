@@ -0,0 +1,39 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.domain;
+
+/**
+ * The Interface DecodeErrorSink receives the frames rejected by the {@link MeasurementBatchDecoder}.
+ * It is called on the decoding thread, so it should only record the error and return.
+ */
+@FunctionalInterface
+public interface DecodeErrorSink {
+
+	/** The sink which ignores the rejected frames, they are still counted by the decoder. */
+	DecodeErrorSink IGNORE = (frameNumber, error) -> {
+		//Do nothing
+	};
+
+	/**
+	 * Receives a rejected frame.
+	 *
+	 * @param frameNumber the number of the frame in the batch, from 0
+	 * @param error the reason the frame is rejected
+	 */
+	void rejected(int frameNumber, DecodeError error);
+}
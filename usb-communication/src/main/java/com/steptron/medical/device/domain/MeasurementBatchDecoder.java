@@ -0,0 +1,261 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.domain;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.steptron.medical.device.jfr.BatchDecodeEvent;
+import com.steptron.medical.device.jfr.FlightRecorderEvents;
+import com.steptron.medical.device.util.EpochTime;
+
+/**
+ * The Class MeasurementBatchDecoder decodes many BM55 and BF480 frames in one call, for the reprocessing of downloaded dumps and archives.
+ * A frame which cannot be decoded is not handed to the consumer: it is counted and reported to the error sink with its number in the batch,
+ * without an exception or a stack trace, and the decoding carries on with the next frame. So the decoded measurements always have a measured time.
+ * <p>
+ * The decoder keeps its counters and views between the batches, so it is meant to be used by one thread at a time.
+ * Each batch is reported to the flight recorder as a {@link BatchDecodeEvent} while a recording enables it.
+ */
+public class MeasurementBatchDecoder {
+
+	private final ZoneOffset zoneOffset;
+	private final DecodeErrorSink errorSink;
+	private final int offsetSeconds;
+	private final BF480MeasurementView bf480View = new BF480MeasurementView();
+	private final long[] rejectedCounts = new long[DecodeError.values().length];
+
+	private long decodedCount;
+
+	/**
+	 * Instantiates a new batch decoder of the readings measured by a device set to UTC, which counts the rejected frames only.
+	 */
+	public MeasurementBatchDecoder() {
+		this(ZoneOffset.UTC, DecodeErrorSink.IGNORE);
+	}
+
+	/**
+	 * Instantiates a new batch decoder.
+	 *
+	 * @param zoneOffset the offset of the clock of the device from UTC
+	 * @param errorSink the sink of the rejected frames
+	 */
+	public MeasurementBatchDecoder(final ZoneOffset zoneOffset, final DecodeErrorSink errorSink) {
+		this.zoneOffset = zoneOffset;
+		this.offsetSeconds = zoneOffset.getTotalSeconds();
+		this.errorSink = errorSink;
+	}
+
+	/**
+	 * Decodes the 8 byte BM55 readings stored back to back in the buffer, from its position to its limit.
+	 * The bytes left after the last whole reading are rejected as a short frame.
+	 *
+	 * @param frames the buffer of the readings, its position is not changed
+	 * @param consumer the consumer of the measurements
+	 * @return the number of measurements decoded
+	 */
+	public int decodeBM55(final ByteBuffer frames, final Consumer<? super BM55Measurement> consumer) {
+		final BatchDecodeEvent event = FlightRecorderEvents.beginBatchDecode();
+		final long rejected = getRejectedCount();
+		int decoded = 0;
+		int frameNumber = 0;
+		int offset = frames.position();
+		for(; offset + BM55MeasurementView.READING_LENGTH <= frames.limit(); offset += BM55MeasurementView.READING_LENGTH, frameNumber++) {
+			//The month, day and year bytes also hold the resting, user and arrhythmia flags, so each is read once
+			final byte month = frames.get(offset + 3);
+			final byte day = frames.get(offset + 4);
+			final byte year = frames.get(offset + 7);
+			final long measuredTime = EpochTime.toValidEpochSecond(2000 + (year & 0x7f), month & 0x7f, day & 0x7f, frames.get(offset + 5), frames.get(offset + 6), offsetSeconds);
+			if(measuredTime == EpochTime.INVALID) {
+				reject(frameNumber, DecodeError.INVALID_DATE_TIME);
+			} else {
+				consumer.accept(new BM55Measurement(frames.get(offset) + 25 & 0xff, frames.get(offset + 1) + 25 & 0xff, day < 0 ? BM55User.B : BM55User.A,
+						frames.get(offset + 2) & 0xff, month < 0, year < 0, Instant.ofEpochSecond(measuredTime)));
+				decoded++;
+			}
+		}
+		if(offset < frames.limit()) {
+			reject(frameNumber, DecodeError.SHORT_FRAME);
+		}
+		decodedCount += decoded;
+		if(event != null) {
+			event.complete("BM55", frames.remaining(), decoded, getRejectedCount() - rejected);
+		}
+		return decoded;
+	}
+
+	/**
+	 * Decodes the BM55 readings as read from the device, one frame of 8 bytes per reading.
+	 *
+	 * @param frames the frames
+	 * @param consumer the consumer of the measurements
+	 * @return the number of measurements decoded
+	 */
+	public int decodeBM55(final List<byte[]> frames, final Consumer<? super BM55Measurement> consumer) {
+		final BatchDecodeEvent event = FlightRecorderEvents.beginBatchDecode();
+		final long rejected = getRejectedCount();
+		long bytes = 0;
+		int decoded = 0;
+		for(int frameNumber = 0; frameNumber < frames.size(); frameNumber++) {
+			final byte[] frame = frames.get(frameNumber);
+			bytes += frame.length;
+			if(frame.length < BM55MeasurementView.READING_LENGTH) {
+				reject(frameNumber, DecodeError.SHORT_FRAME);
+				continue;
+			}
+			final BM55Measurement measurement = new BM55Measurement(frame, zoneOffset);
+			if(measurement.getMeasuredTime() == null) {
+				reject(frameNumber, DecodeError.INVALID_DATE_TIME);
+			} else {
+				consumer.accept(measurement);
+				decoded++;
+			}
+		}
+		decodedCount += decoded;
+		if(event != null) {
+			event.complete("BM55", bytes, decoded, getRejectedCount() - rejected);
+		}
+		return decoded;
+	}
+
+	/**
+	 * Decodes the 12 byte BF480 records stored back to back in the buffer, from its position to its limit.
+	 * A record holds the weight, body fat, water, muscles, date and time of a reading as big-endian 16-bit values, the way they are archived.
+	 * The bytes left after the last whole record are rejected as a short frame.
+	 *
+	 * @param records the buffer of the records, its position is not changed
+	 * @param consumer the consumer of the measurements
+	 * @return the number of measurements decoded
+	 */
+	public int decodeBF480(final ByteBuffer records, final Consumer<? super BF480Measurement> consumer) {
+		final BatchDecodeEvent event = FlightRecorderEvents.beginBatchDecode();
+		final long rejected = getRejectedCount();
+		int decoded = 0;
+		int frameNumber = 0;
+		int offset = records.position();
+		for(; offset + BF480MeasurementView.RECORD_LENGTH <= records.limit(); offset += BF480MeasurementView.RECORD_LENGTH, frameNumber++) {
+			bf480View.wrap(records, offset, 2);
+			if(decodeBF480(frameNumber, consumer)) {
+				decoded++;
+			}
+		}
+		if(offset < records.limit()) {
+			reject(frameNumber, DecodeError.SHORT_FRAME);
+		}
+		decodedCount += decoded;
+		if(event != null) {
+			event.complete("BF480 records", records.remaining(), decoded, getRejectedCount() - rejected);
+		}
+		return decoded;
+	}
+
+	/**
+	 * Decodes the readings of the user from a BF480 memory dump of 64 rows of 128 bytes, starting at the position of the buffer,
+	 * in the order of the device memory until the first empty slot. The frame number reported to the sink is the slot of the reading.
+	 * The slots beyond the limit of a dump cut short are rejected as a single short frame.
+	 *
+	 * @param memory the memory dump, its position is not changed
+	 * @param userNumber the user number, 1 to 10
+	 * @param consumer the consumer of the measurements
+	 * @return the number of measurements decoded
+	 */
+	public int decodeBF480User(final ByteBuffer memory, final int userNumber, final Consumer<? super BF480Measurement> consumer) {
+		final int lastFieldOffset = (BF480MeasurementView.NUMBER_OF_FIELDS - 1) * BF480MeasurementView.ROW_LENGTH;
+		final BatchDecodeEvent event = FlightRecorderEvents.beginBatchDecode();
+		final long rejected = getRejectedCount();
+		int decoded = 0;
+		for(int slot = 0; slot < BF480MeasurementView.NUMBER_OF_SLOTS; slot++) {
+			final int offset = memory.position() + BF480MeasurementView.getOffset(userNumber, slot);
+			if(offset + lastFieldOffset + 2 > memory.limit()) {
+				reject(slot, DecodeError.SHORT_FRAME);
+				break;
+			}
+			if(bf480View.wrap(memory, offset).isEmpty()) {
+				break;
+			}
+			if(decodeBF480(slot, consumer)) {
+				decoded++;
+			}
+		}
+		decodedCount += decoded;
+		if(event != null) {
+			event.complete("BF480 memory", memory.remaining(), decoded, getRejectedCount() - rejected);
+		}
+		return decoded;
+	}
+
+	/**
+	 * Gets the number of measurements decoded since the decoder was created or the counters were reset.
+	 *
+	 * @return the decoded count
+	 */
+	public long getDecodedCount() {
+		return this.decodedCount;
+	}
+
+	/**
+	 * Gets the number of frames rejected since the decoder was created or the counters were reset.
+	 *
+	 * @return the rejected count
+	 */
+	public long getRejectedCount() {
+		long rejectedCount = 0;
+		for(final long count : rejectedCounts) {
+			rejectedCount += count;
+		}
+		return rejectedCount;
+	}
+
+	/**
+	 * Gets the number of frames rejected for the error since the decoder was created or the counters were reset.
+	 *
+	 * @param error the error
+	 * @return the rejected count
+	 */
+	public long getRejectedCount(final DecodeError error) {
+		return rejectedCounts[error.ordinal()];
+	}
+
+	/**
+	 * Resets the decoded and rejected counters.
+	 */
+	public void resetCounters() {
+		decodedCount = 0;
+		for(int errorCounter = 0; errorCounter < rejectedCounts.length; errorCounter++) {
+			rejectedCounts[errorCounter] = 0;
+		}
+	}
+
+	private boolean decodeBF480(final int frameNumber, final Consumer<? super BF480Measurement> consumer) {
+		final long measuredTime = bf480View.getValidMeasuredTime(zoneOffset);
+		if(measuredTime == EpochTime.INVALID) {
+			reject(frameNumber, DecodeError.INVALID_DATE_TIME);
+			return false;
+		}
+		consumer.accept(new BF480Measurement(bf480View.getWeight(), bf480View.getBodyFat(), bf480View.getWater(), bf480View.getMuscles(), Instant.ofEpochSecond(measuredTime)));
+		return true;
+	}
+
+	private void reject(final int frameNumber, final DecodeError error) {
+		rejectedCounts[error.ordinal()]++;
+		errorSink.rejected(frameNumber, error);
+	}
+}
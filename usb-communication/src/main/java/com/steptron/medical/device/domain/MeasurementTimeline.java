@@ -0,0 +1,295 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.domain;
+
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Function;
+
+/**
+ * The Class MeasurementTimeline keeps measurements in the order of their measured times, with the measured times as epoch seconds
+ * in a primitive array next to them. It is built once per download or archive load, sorting the measurements only if they are not
+ * in order already, and then answers the time range, latest and count queries by binary search, without sorting or scanning again.
+ * The measurements measured at the same time keep their order. The measurements without a measured time are left out.
+ * <p>
+ * The lists returned by the queries are read-only views of the timeline, which does not change once built.
+ *
+ * @param <M> the type of the measurements
+ */
+public final class MeasurementTimeline<M> {
+
+	private final long[] measuredTimes;
+	private final Object[] measurements;
+	private final List<M> measurementList;
+
+	private MeasurementTimeline(final long[] measuredTimes, final Object[] measurements) {
+		this.measuredTimes = measuredTimes;
+		this.measurements = measurements;
+		this.measurementList = new TimelineList();
+	}
+
+	/**
+	 * Builds the timeline of the measurements.
+	 *
+	 * @param <M> the type of the measurements
+	 * @param measurements the measurements, in any order
+	 * @param measuredTime the function getting the measured time of a measurement, null if the measurement has none
+	 * @return the timeline
+	 */
+	public static <M> MeasurementTimeline<M> of(final Collection<? extends M> measurements, final Function<? super M, Instant> measuredTime) {
+		long[] times = new long[measurements.size()];
+		Object[] sortedMeasurements = new Object[measurements.size()];
+		int size = 0;
+		boolean sorted = true;
+		for(final M measurement : measurements) {
+			final Instant time = measuredTime.apply(measurement);
+			if(time == null) {
+				continue;
+			}
+			times[size] = time.getEpochSecond();
+			sortedMeasurements[size] = measurement;
+			sorted &= size == 0 || times[size - 1] <= times[size];
+			size++;
+		}
+		if(size < times.length) {
+			times = Arrays.copyOf(times, size);
+			sortedMeasurements = Arrays.copyOf(sortedMeasurements, size);
+		}
+		if(!sorted) {
+			sort(times, sortedMeasurements);
+		}
+		return new MeasurementTimeline<M>(times, sortedMeasurements);
+	}
+
+	/**
+	 * Builds the timeline of the BM55 measurements.
+	 *
+	 * @param measurements the measurements, in any order
+	 * @return the timeline
+	 */
+	public static MeasurementTimeline<BM55Measurement> ofBM55(final Collection<? extends BM55Measurement> measurements) {
+		return of(measurements, BM55Measurement::getMeasuredTime);
+	}
+
+	/**
+	 * Builds the timeline of the BF480 measurements.
+	 *
+	 * @param measurements the measurements, in any order
+	 * @return the timeline
+	 */
+	public static MeasurementTimeline<BF480Measurement> ofBF480(final Collection<? extends BF480Measurement> measurements) {
+		return of(measurements, BF480Measurement::getMeasuredTime);
+	}
+
+	/**
+	 * Gets the number of measurements.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return measuredTimes.length;
+	}
+
+	/**
+	 * Checks if the timeline has no measurement.
+	 *
+	 * @return true, if the timeline is empty
+	 */
+	public boolean isEmpty() {
+		return measuredTimes.length == 0;
+	}
+
+	/**
+	 * Gets the measurement at the index, the oldest measurement is at the index 0.
+	 *
+	 * @param index the index
+	 * @return the measurement
+	 */
+	@SuppressWarnings("unchecked")
+	public M get(final int index) {
+		return (M) measurements[index];
+	}
+
+	/**
+	 * Gets the measured time of the measurement at the index in epoch seconds.
+	 *
+	 * @param index the index
+	 * @return the measured time
+	 */
+	public long getMeasuredTime(final int index) {
+		return measuredTimes[index];
+	}
+
+	/**
+	 * Gets all the measurements, oldest first.
+	 *
+	 * @return the measurements
+	 */
+	public List<M> getMeasurements() {
+		return measurementList;
+	}
+
+	/**
+	 * Gets the index of the first measurement measured at or after the time, the size if there is none.
+	 *
+	 * @param measuredTime the time in epoch seconds
+	 * @return the index
+	 */
+	public int indexOfFirstAtOrAfter(final long measuredTime) {
+		int low = 0;
+		int high = measuredTimes.length;
+		while(low < high) {
+			final int middle = (low + high) >>> 1;
+			if(measuredTimes[middle] < measuredTime) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the measurements measured from the time included to the time excluded, oldest first.
+	 *
+	 * @param from the first time included in epoch seconds
+	 * @param to the first time excluded in epoch seconds
+	 * @return the measurements
+	 */
+	public List<M> between(final long from, final long to) {
+		if(to <= from) {
+			return Collections.emptyList();
+		}
+		return measurementList.subList(indexOfFirstAtOrAfter(from), indexOfFirstAtOrAfter(to));
+	}
+
+	/**
+	 * Gets the measurements measured from the instant included to the instant excluded, oldest first.
+	 *
+	 * @param from the first instant included
+	 * @param to the first instant excluded
+	 * @return the measurements
+	 */
+	public List<M> between(final Instant from, final Instant to) {
+		return between(toEpochSecondCeiling(from), toEpochSecondCeiling(to));
+	}
+
+	/**
+	 * Counts the measurements measured from the time included to the time excluded.
+	 *
+	 * @param from the first time included in epoch seconds
+	 * @param to the first time excluded in epoch seconds
+	 * @return the number of measurements
+	 */
+	public int count(final long from, final long to) {
+		return to <= from ? 0 : indexOfFirstAtOrAfter(to) - indexOfFirstAtOrAfter(from);
+	}
+
+	/**
+	 * Counts the measurements measured from the instant included to the instant excluded.
+	 *
+	 * @param from the first instant included
+	 * @param to the first instant excluded
+	 * @return the number of measurements
+	 */
+	public int count(final Instant from, final Instant to) {
+		return count(toEpochSecondCeiling(from), toEpochSecondCeiling(to));
+	}
+
+	/**
+	 * Gets the latest measurements, oldest first.
+	 *
+	 * @param numberOfMeasurements the number of measurements
+	 * @return the last measurements, all of them if there are fewer
+	 */
+	public List<M> latest(final int numberOfMeasurements) {
+		if(numberOfMeasurements < 0) {
+			throw new IllegalArgumentException("The number of measurements must not be negative");
+		}
+		return measurementList.subList(Math.max(0, measuredTimes.length - numberOfMeasurements), measuredTimes.length);
+	}
+
+	/**
+	 * Gets the measurements measured at or after the time, oldest first.
+	 *
+	 * @param from the first time included in epoch seconds
+	 * @return the measurements
+	 */
+	public List<M> since(final long from) {
+		return measurementList.subList(indexOfFirstAtOrAfter(from), measuredTimes.length);
+	}
+
+	/**
+	 * The measured times are whole seconds, so a time range starting or ending within a second starts or ends at the next second.
+	 */
+	private static long toEpochSecondCeiling(final Instant instant) {
+		return instant.getNano() == 0 ? instant.getEpochSecond() : instant.getEpochSecond() + 1;
+	}
+
+	/**
+	 * Sorts the measurements by measured time, keeping the order of the measurements measured at the same time.
+	 * A merge sort on the primitive keys, the measurements are moved along with their keys.
+	 */
+	private static void sort(final long[] times, final Object[] measurements) {
+		final long[] timesBuffer = times.clone();
+		final Object[] measurementsBuffer = measurements.clone();
+		mergeSort(timesBuffer, measurementsBuffer, times, measurements, 0, times.length);
+	}
+
+	private static void mergeSort(final long[] sourceTimes, final Object[] sourceMeasurements, final long[] times, final Object[] measurements, final int from, final int to) {
+		if(to - from < 2) {
+			return;
+		}
+		final int middle = (from + to) >>> 1;
+		//The halves are sorted into the source arrays, then merged into the destination arrays
+		mergeSort(times, measurements, sourceTimes, sourceMeasurements, from, middle);
+		mergeSort(times, measurements, sourceTimes, sourceMeasurements, middle, to);
+		int left = from;
+		int right = middle;
+		for(int index = from; index < to; index++) {
+			if(right >= to || left < middle && sourceTimes[left] <= sourceTimes[right]) {
+				times[index] = sourceTimes[left];
+				measurements[index] = sourceMeasurements[left++];
+			} else {
+				times[index] = sourceTimes[right];
+				measurements[index] = sourceMeasurements[right++];
+			}
+		}
+	}
+
+	/**
+	 * The read-only list view of the measurements of the timeline.
+	 */
+	private class TimelineList extends AbstractList<M> implements RandomAccess {
+
+		@Override
+		public M get(final int index) {
+			return MeasurementTimeline.this.get(index);
+		}
+
+		@Override
+		public int size() {
+			return measurements.length;
+		}
+	}
+}
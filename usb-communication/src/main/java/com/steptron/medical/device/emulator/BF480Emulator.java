@@ -0,0 +1,174 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.steptron.medical.device.domain.BF480Measurement;
+import com.steptron.medical.device.services.BF480USBService;
+
+/**
+ * The Class BF480Emulator emulates the firmware of the Beurer BF480 diagnostic scale.
+ * On the 0x10 command the device dumps its whole memory as 64 interrupt-in transfers of 128 bytes.
+ * Row 6 * (user - 1) + field holds the field (weight, body fat, water, muscles, date, time) of the user,
+ * every row holding the 64 readings as big endian 16 bit values.
+ */
+public class BF480Emulator extends DeviceEmulator {
+
+	/** The Constant NUMBER_OF_USERS the scale has memory slots for. */
+	public static final int NUMBER_OF_USERS = 10;
+
+	/** The Constant NUMBER_OF_FIELDS stored per reading. */
+	public static final int NUMBER_OF_FIELDS = 6;
+
+	private final byte[][] rows;
+
+	/**
+	 * Instantiates a new BF480 emulator with the given readings stored in its memory.
+	 *
+	 * @param measurements the measurements stored for each user, user 1 first. Each user can have maximum of 64 readings.
+	 */
+	public BF480Emulator(final List<List<BF480Measurement>> measurements) {
+		super(BF480USBService.VENDOR_ID, BF480USBService.PRODUCT_ID);
+		if(measurements.size() > NUMBER_OF_USERS) {
+			throw new IllegalArgumentException("The BF480 has memory for " + NUMBER_OF_USERS + " users only");
+		}
+		this.rows = new byte[BF480USBService.MAX_NUMBER_OF_READINGS][BF480USBService.BYTE_ARRAY_LENGTH_128];
+		for(int userCounter = 0; userCounter < measurements.size(); userCounter++) {
+			final List<BF480Measurement> userMeasurements = measurements.get(userCounter);
+			if(userMeasurements.size() > BF480USBService.MAX_NUMBER_OF_READINGS) {
+				throw new IllegalArgumentException("The BF480 has memory for " + BF480USBService.MAX_NUMBER_OF_READINGS + " readings per user only");
+			}
+			for(int readingsCounter = 0; readingsCounter < userMeasurements.size(); readingsCounter++) {
+				final int[] fields = encode(userMeasurements.get(readingsCounter));
+				for(int fieldCounter = 0; fieldCounter < NUMBER_OF_FIELDS; fieldCounter++) {
+					final byte[] row = rows[userCounter * NUMBER_OF_FIELDS + fieldCounter];
+					row[readingsCounter * 2] = (byte) (fields[fieldCounter] >> 8);
+					row[readingsCounter * 2 + 1] = (byte) fields[fieldCounter];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores a new reading of the user after the last one, as the scale does when the user is weighed.
+	 * When the 64 slots of the user are used the oldest reading is dropped.
+	 *
+	 * @param userNumber the user number (1 to 10)
+	 * @param measurement the measurement taken
+	 */
+	public synchronized void addMeasurement(final int userNumber, final BF480Measurement measurement) {
+		final int firstRow = (userNumber - 1) * NUMBER_OF_FIELDS;
+		int slot = 0;
+		while(slot < BF480USBService.MAX_NUMBER_OF_READINGS && (rows[firstRow + 4][slot * 2] != 0 || rows[firstRow + 4][slot * 2 + 1] != 0)) {
+			slot++;
+		}
+		if(slot == BF480USBService.MAX_NUMBER_OF_READINGS) {
+			slot--;
+			for(int fieldCounter = 0; fieldCounter < NUMBER_OF_FIELDS; fieldCounter++) {
+				final byte[] row = rows[firstRow + fieldCounter];
+				System.arraycopy(row, 2, row, 0, row.length - 2);
+			}
+		}
+		final int[] fields = encode(measurement);
+		for(int fieldCounter = 0; fieldCounter < NUMBER_OF_FIELDS; fieldCounter++) {
+			final byte[] row = rows[firstRow + fieldCounter];
+			row[slot * 2] = (byte) (fields[fieldCounter] >> 8);
+			row[slot * 2 + 1] = (byte) fields[fieldCounter];
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.emulator.DeviceEmulator#handleCommand(byte[])
+	 */
+	@Override
+	protected synchronized void handleCommand(final byte[] command) {
+		if(command[0] == (byte) 0x10) {
+			for(final byte[] row : rows) {
+				respond(row.clone());
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.emulator.DeviceEmulator#getProductName()
+	 */
+	@Override
+	public String getProductName() {
+		return "BF480";
+	}
+
+	/**
+	 * Gets a copy of the 64 x 128 byte memory dump of the device.
+	 *
+	 * @return the memory dump
+	 */
+	public synchronized byte[][] getRows() {
+		final byte[][] copy = new byte[rows.length][];
+		for(int rowCounter = 0; rowCounter < rows.length; rowCounter++) {
+			copy[rowCounter] = rows[rowCounter].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * Encodes the measurement to the six 16 bit values stored by the device.
+	 * This is the reverse of {@link BF480Measurement#BF480Measurement(int[], int)}.
+	 *
+	 * @param measurement the measurement
+	 * @return the weight, body fat, water, muscles, date and time values
+	 */
+	public static int[] encode(final BF480Measurement measurement) {
+		final LocalDateTime time = LocalDateTime.ofInstant(measurement.getMeasuredTime(), ZoneOffset.UTC);
+		final int[] fields = new int[NUMBER_OF_FIELDS];
+		fields[0] = (int) Math.round(measurement.getWeight() * 10);
+		fields[1] = (int) Math.round(measurement.getBodyFat() * 10);
+		fields[2] = (int) Math.round(measurement.getWater() * 10);
+		fields[3] = (int) Math.round(measurement.getMuscles() * 10);
+		fields[4] = (time.getYear() - 1920) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+		fields[5] = time.getHour() << 8 | time.getMinute();
+		return fields;
+	}
+
+	/**
+	 * Generates deterministic measurements for all ten users, one a day per user starting from 2016-01-01.
+	 *
+	 * @param numberOfReadings the number of readings to be generated per user (maximum 64)
+	 * @return the generated measurements, user 1 first
+	 */
+	public static List<List<BF480Measurement>> generateMeasurements(final int numberOfReadings) {
+		final List<List<BF480Measurement>> measurements = new ArrayList<List<BF480Measurement>>(NUMBER_OF_USERS);
+		final LocalDateTime start = LocalDateTime.of(2016, 1, 1, 6, 0);
+		for(int userCounter = 0; userCounter < NUMBER_OF_USERS; userCounter++) {
+			final List<BF480Measurement> userMeasurements = new ArrayList<BF480Measurement>(numberOfReadings);
+			for(int readingsCounter = 0; readingsCounter < numberOfReadings; readingsCounter++) {
+				final double weight = (600 + userCounter * 45 + readingsCounter % 20) / 10.0;
+				final double bodyFat = (180 + userCounter * 9 + readingsCounter % 15) / 10.0;
+				final double water = (500 + userCounter * 7 + readingsCounter % 11) / 10.0;
+				final double muscles = (350 + userCounter * 5 + readingsCounter % 9) / 10.0;
+				final LocalDateTime measuredTime = start.plusDays(readingsCounter).plusHours(userCounter).plusMinutes(readingsCounter % 60);
+				userMeasurements.add(new BF480Measurement(weight, bodyFat, water, muscles, measuredTime.toInstant(ZoneOffset.UTC)));
+			}
+			measurements.add(userMeasurements);
+		}
+		return measurements;
+	}
+}
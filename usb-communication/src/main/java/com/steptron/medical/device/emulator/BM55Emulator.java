@@ -0,0 +1,159 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.steptron.medical.device.domain.BM55Measurement;
+import com.steptron.medical.device.domain.BM55User;
+import com.steptron.medical.device.services.BM55USBService;
+
+/**
+ * The Class BM55Emulator emulates the firmware of the Beurer BM55 blood pressure monitor.
+ * It answers the 0xAA (initialise), 0xA2 (number of readings), 0xA3 n (reading n) and 0xF7 (terminate)
+ * commands with 8 byte responses encoded the same way the device stores its readings.
+ * As on the device, the number of readings answered to 0xA2 is one more than the count of the stored readings,
+ * which are numbered from 1 to the number of readings - 1.
+ */
+public class BM55Emulator extends DeviceEmulator {
+
+	/** The Constant ACKNOWLEDGEMENT returned for the initialise and terminate commands. */
+	private static final byte[] ACKNOWLEDGEMENT = {(byte) 0x55, 0, 0, 0, 0, 0, 0, 0};
+
+	private final List<byte[]> readings;
+
+	/**
+	 * Instantiates a new BM55 emulator with the given readings stored in its memory.
+	 *
+	 * @param measurements the measurements stored in the device memory, reading 1 first
+	 */
+	public BM55Emulator(final List<BM55Measurement> measurements) {
+		super(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		final List<byte[]> encodedReadings = new ArrayList<byte[]>(measurements.size());
+		for(final BM55Measurement measurement : measurements) {
+			encodedReadings.add(encode(measurement));
+		}
+		this.readings = new CopyOnWriteArrayList<byte[]>(encodedReadings);
+	}
+
+	/**
+	 * Stores a new reading after the last one, as the device does when a measurement is taken.
+	 *
+	 * @param measurement the measurement taken
+	 */
+	public void addMeasurement(final BM55Measurement measurement) {
+		readings.add(encode(measurement));
+	}
+
+	/**
+	 * Clears the device memory, as the user does by holding the memory button.
+	 */
+	public void clearMemory() {
+		readings.clear();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.emulator.DeviceEmulator#handleCommand(byte[])
+	 */
+	@Override
+	protected void handleCommand(final byte[] command) {
+		switch(command[0]) {
+			case (byte) 0xAA:
+			case (byte) 0xF7:
+				respond(ACKNOWLEDGEMENT.clone());
+				break;
+			case (byte) 0xA2:
+				respond(new byte[] {(byte) (readings.size() + 1), 0, 0, 0, 0, 0, 0, 0});
+				break;
+			case (byte) 0xA3:
+				final int readingNumber = command[1] & 0xff;
+				if(readingNumber >= 1 && readingNumber <= readings.size()) {
+					respond(readings.get(readingNumber - 1).clone());
+				}
+				break;
+			default:
+				//Unknown commands are not answered by the device
+				break;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.emulator.DeviceEmulator#getProductName()
+	 */
+	@Override
+	public String getProductName() {
+		return "BM55";
+	}
+
+	/**
+	 * Gets the raw 8 byte readings stored in the device memory.
+	 *
+	 * @return the readings, reading 1 first
+	 */
+	public List<byte[]> getReadings() {
+		return Collections.unmodifiableList(readings);
+	}
+
+	/**
+	 * Encodes the measurement to the 8 byte representation stored by the device.
+	 * This is the reverse of {@link BM55Measurement#BM55Measurement(byte[])}.
+	 *
+	 * @param measurement the measurement
+	 * @return the encoded reading
+	 */
+	public static byte[] encode(final BM55Measurement measurement) {
+		final LocalDateTime time = LocalDateTime.ofInstant(measurement.getMeasuredTime(), ZoneOffset.UTC);
+		final byte[] reading = new byte[8];
+		reading[0] = (byte) (measurement.getSystolicPressure() - 25);
+		reading[1] = (byte) (measurement.getDiastolicPressure() - 25);
+		reading[2] = (byte) measurement.getPulseRate();
+		reading[3] = (byte) (time.getMonthValue() | (measurement.isRestingIndicator() ? 0x80 : 0));
+		reading[4] = (byte) (time.getDayOfMonth() | (measurement.getUser() == BM55User.B ? 0x80 : 0));
+		reading[5] = (byte) time.getHour();
+		reading[6] = (byte) time.getMinute();
+		reading[7] = (byte) ((time.getYear() - 2000) | (measurement.isArrhythmia() ? 0x80 : 0));
+		return reading;
+	}
+
+	/**
+	 * Generates deterministic measurements alternating between user A and B, one every eleven hours starting from 2016-01-01.
+	 *
+	 * @param numberOfReadings the number of readings to be generated
+	 * @return the generated measurements
+	 */
+	public static List<BM55Measurement> generateMeasurements(final int numberOfReadings) {
+		final List<BM55Measurement> measurements = new ArrayList<BM55Measurement>(numberOfReadings);
+		final LocalDateTime start = LocalDateTime.of(2016, 1, 1, 7, 30);
+		for(int readingsCounter = 0; readingsCounter < numberOfReadings; readingsCounter++) {
+			final BM55User user = readingsCounter % 2 == 0 ? BM55User.A : BM55User.B;
+			final int systolicPressure = 110 + readingsCounter * 7 % 60;
+			final int diastolicPressure = 65 + readingsCounter * 5 % 30;
+			final int pulseRate = 55 + readingsCounter * 3 % 45;
+			final boolean restingIndicator = readingsCounter % 3 == 0;
+			final boolean arrhythmia = readingsCounter % 17 == 0;
+			final LocalDateTime measuredTime = start.plusHours(11L * readingsCounter).plusMinutes(readingsCounter % 60);
+			measurements.add(new BM55Measurement(systolicPressure, diastolicPressure, user, pulseRate, restingIndicator, arrhythmia, measuredTime.toInstant(ZoneOffset.UTC)));
+		}
+		return measurements;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is an abstract class which emulates the firmware of a serial USB device.
+ * The control-out data written by the drivers is passed to {@link #handleCommand(byte[])}
+ * and the emulator answers by queueing responses on the interrupt-in endpoint using {@link #respond(byte[])}.
+ * Every response is delivered after the configured latency plus a random jitter.
+ */
+public abstract class DeviceEmulator {
+
+	private final short vendorId;
+	private final short productId;
+	private final Random random = new Random();
+
+	private volatile long latencyNanos;
+	private volatile long jitterNanos;
+	private final AtomicLong commandCount = new AtomicLong();
+	private final AtomicLong responseCount = new AtomicLong();
+
+	private VirtualUsbPipe interruptPipe;
+
+	/**
+	 * Instantiates a new device emulator.
+	 *
+	 * @param vendorId the vendor id reported in the device descriptor
+	 * @param productId the product id reported in the device descriptor
+	 */
+	protected DeviceEmulator(final short vendorId, final short productId) {
+		this.vendorId = vendorId;
+		this.productId = productId;
+	}
+
+	/**
+	 * Handles the control-out data written to the device.
+	 *
+	 * @param command the command bytes including the padding bytes
+	 */
+	protected abstract void handleCommand(final byte[] command);
+
+	/**
+	 * Gets the product name reported by the emulated device.
+	 *
+	 * @return the product name
+	 */
+	public abstract String getProductName();
+
+	/**
+	 * Queues the data to be read from the interrupt-in endpoint.
+	 *
+	 * @param data the data to be returned by the next read
+	 */
+	protected void respond(final byte[] data) {
+		respond(data, nextResponseDelayNanos());
+	}
+
+	/**
+	 * Queues the data to be read from the interrupt-in endpoint after the given delay instead of the configured latency.
+	 *
+	 * @param data the data to be returned by the next read
+	 * @param delayNanos the delay in nanoseconds
+	 */
+	protected void respond(final byte[] data, final long delayNanos) {
+		responseCount.incrementAndGet();
+		interruptPipe.deliver(data, delayNanos);
+	}
+
+	/**
+	 * Sets the per-IRP latency and the maximum random jitter added to it.
+	 *
+	 * @param latencyMicros the latency in microseconds
+	 * @param jitterMicros the maximum jitter in microseconds
+	 */
+	public void setLatency(final long latencyMicros, final long jitterMicros) {
+		this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+		this.jitterNanos = TimeUnit.MICROSECONDS.toNanos(jitterMicros);
+	}
+
+	/**
+	 * Gets the vendor id.
+	 *
+	 * @return the vendor id
+	 */
+	public short getVendorId() {
+		return this.vendorId;
+	}
+
+	/**
+	 * Gets the product id.
+	 *
+	 * @return the product id
+	 */
+	public short getProductId() {
+		return this.productId;
+	}
+
+	/**
+	 * Gets the number of control-out transfers received so far.
+	 *
+	 * @return the command count
+	 */
+	public long getCommandCount() {
+		return this.commandCount.get();
+	}
+
+	/**
+	 * Gets the number of interrupt-in responses queued so far.
+	 *
+	 * @return the response count
+	 */
+	public long getResponseCount() {
+		return this.responseCount.get();
+	}
+
+	void connect(final VirtualUsbPipe pipe) {
+		this.interruptPipe = pipe;
+	}
+
+	void controlOut(final byte[] command) {
+		commandCount.incrementAndGet();
+		handleCommand(command);
+	}
+
+	private long nextResponseDelayNanos() {
+		long delay = latencyNanos;
+		if(jitterNanos > 0) {
+			delay += (long) (random.nextDouble() * jitterNanos);
+		}
+		return delay;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.steptron.medical.device.services.CapturedTransfer;
+import com.steptron.medical.device.services.CapturedTransfer.Direction;
+import com.steptron.medical.device.services.TransferCapture;
+import com.steptron.medical.device.services.TransferRecording;
+
+/**
+ * The Class ReplayEmulator plays back a capture written by {@link TransferCapture}, so a download recorded in the field
+ * can be repeated against the drivers. Each command written to the device is answered with the interrupt-in payloads
+ * which followed the next captured control-out frame, either after the delays they followed it in the capture or at once.
+ * <p>
+ * The commands are not interpreted: they are answered in the order of the capture, and the commands which differ from the
+ * captured frame are counted by {@link #getMismatchCount()}, which shows a driver does not talk to the device the way it did
+ * when the capture was taken. The commands after the end of the capture are not answered.
+ */
+public class ReplayEmulator extends DeviceEmulator {
+
+	private final List<Exchange> exchanges = new ArrayList<Exchange>();
+	private final boolean recordedSpeed;
+	private final AtomicInteger nextExchange = new AtomicInteger();
+	private final AtomicLong mismatchCount = new AtomicLong();
+
+	/**
+	 * Instantiates a new replay emulator with the vendor id and product id of the captured device.
+	 *
+	 * @param recording the recording to be played back
+	 * @param recordedSpeed true to answer after the captured delays, false to answer at once
+	 */
+	public ReplayEmulator(final TransferRecording recording, final boolean recordedSpeed) {
+		super(recording.getVendorId(), recording.getProductId());
+		this.recordedSpeed = recordedSpeed;
+		Exchange exchange = null;
+		for(final CapturedTransfer transfer : recording.getTransfers()) {
+			if(transfer.getDirection() == Direction.CONTROL_OUT) {
+				exchange = new Exchange(transfer);
+				exchanges.add(exchange);
+			} else if(exchange != null) {
+				//The payloads read before the first command were left in the device by an earlier download, they are not replayed
+				exchange.responses.add(transfer);
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.emulator.DeviceEmulator#handleCommand(byte[])
+	 */
+	@Override
+	protected void handleCommand(final byte[] command) {
+		final int exchangeNumber = nextExchange.getAndIncrement();
+		if(exchangeNumber >= exchanges.size()) {
+			mismatchCount.incrementAndGet();
+			return;
+		}
+		final Exchange exchange = exchanges.get(exchangeNumber);
+		if(!Arrays.equals(command, exchange.command.getData())) {
+			mismatchCount.incrementAndGet();
+		}
+		for(final CapturedTransfer response : exchange.responses) {
+			respond(response.getData().clone(), recordedSpeed ? response.getElapsedNanos() - exchange.command.getElapsedNanos() : 0);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.emulator.DeviceEmulator#getProductName()
+	 */
+	@Override
+	public String getProductName() {
+		return "Replay";
+	}
+
+	/**
+	 * Gets the number of commands which differ from the captured frames or were written after the end of the capture.
+	 *
+	 * @return the mismatch count
+	 */
+	public long getMismatchCount() {
+		return this.mismatchCount.get();
+	}
+
+	/**
+	 * Checks if every captured command has been replayed.
+	 *
+	 * @return true, if the capture has been played to the end
+	 */
+	public boolean isComplete() {
+		return nextExchange.get() >= exchanges.size();
+	}
+
+	/**
+	 * A captured command and the payloads read after it, up to the next command.
+	 */
+	private static class Exchange {
+
+		private final CapturedTransfer command;
+		private final List<CapturedTransfer> responses = new ArrayList<CapturedTransfer>();
+
+		Exchange(final CapturedTransfer command) {
+			this.command = command;
+		}
+	}
+}
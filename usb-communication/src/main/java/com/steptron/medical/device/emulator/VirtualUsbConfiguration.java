@@ -0,0 +1,91 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.usb.UsbConfiguration;
+import javax.usb.UsbConfigurationDescriptor;
+import javax.usb.UsbDevice;
+import javax.usb.UsbInterface;
+
+/**
+ * The single, always active configuration of an emulated device.
+ * Emulated hubs have no interfaces, every other device has the HID interface 0.
+ */
+class VirtualUsbConfiguration implements UsbConfiguration {
+
+	private final VirtualUsbDevice device;
+	private final VirtualUsbInterface usbInterface;
+	private final UsbConfigurationDescriptor descriptor;
+
+	/**
+	 * Instantiates a new virtual USB configuration.
+	 *
+	 * @param device the device owning this configuration
+	 * @param withInterface true if the configuration has the HID interface 0
+	 */
+	VirtualUsbConfiguration(final VirtualUsbDevice device, final boolean withInterface) {
+		this.device = device;
+		this.usbInterface = withInterface ? new VirtualUsbInterface(device, this) : null;
+		this.descriptor = new VirtualUsbDescriptors.ConfigurationDescriptor((byte) (withInterface ? 1 : 0));
+	}
+
+	@Override
+	public boolean isActive() {
+		return true;
+	}
+
+	@Override
+	public List<UsbInterface> getUsbInterfaces() {
+		if(usbInterface == null) {
+			return Collections.emptyList();
+		}
+		return Collections.<UsbInterface> singletonList(usbInterface);
+	}
+
+	@Override
+	public UsbInterface getUsbInterface(final byte number) {
+		return containsUsbInterface(number) ? usbInterface : null;
+	}
+
+	@Override
+	public boolean containsUsbInterface(final byte number) {
+		return usbInterface != null && number == 0;
+	}
+
+	@Override
+	public UsbDevice getUsbDevice() {
+		return device;
+	}
+
+	@Override
+	public UsbConfigurationDescriptor getUsbConfigurationDescriptor() {
+		return descriptor;
+	}
+
+	@Override
+	public String getConfigurationString() {
+		return null;
+	}
+
+	VirtualUsbInterface getVirtualUsbInterface() {
+		return usbInterface;
+	}
+}
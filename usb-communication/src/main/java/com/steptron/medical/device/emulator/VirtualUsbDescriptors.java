@@ -0,0 +1,266 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import javax.usb.UsbConfigurationDescriptor;
+import javax.usb.UsbConst;
+import javax.usb.UsbDeviceDescriptor;
+import javax.usb.UsbEndpointDescriptor;
+import javax.usb.UsbInterfaceDescriptor;
+
+/**
+ * The descriptors reported by the emulated devices. Only the fields the drivers rely on carry meaningful values.
+ */
+final class VirtualUsbDescriptors {
+
+	private VirtualUsbDescriptors() {
+	}
+
+	/**
+	 * The device descriptor of an emulated full speed HID device or hub.
+	 */
+	static class DeviceDescriptor implements UsbDeviceDescriptor {
+
+		private final short vendorId;
+		private final short productId;
+		private final boolean hub;
+
+		DeviceDescriptor(final short vendorId, final short productId, final boolean hub) {
+			this.vendorId = vendorId;
+			this.productId = productId;
+			this.hub = hub;
+		}
+
+		@Override
+		public byte bLength() {
+			return 18;
+		}
+
+		@Override
+		public byte bDescriptorType() {
+			return UsbConst.DESCRIPTOR_TYPE_DEVICE;
+		}
+
+		@Override
+		public short bcdUSB() {
+			return 0x0110;
+		}
+
+		@Override
+		public byte bDeviceClass() {
+			return hub ? UsbConst.HUB_CLASSCODE : 0;
+		}
+
+		@Override
+		public byte bDeviceSubClass() {
+			return 0;
+		}
+
+		@Override
+		public byte bDeviceProtocol() {
+			return 0;
+		}
+
+		@Override
+		public byte bMaxPacketSize0() {
+			return 8;
+		}
+
+		@Override
+		public short idVendor() {
+			return vendorId;
+		}
+
+		@Override
+		public short idProduct() {
+			return productId;
+		}
+
+		@Override
+		public short bcdDevice() {
+			return 0x0100;
+		}
+
+		@Override
+		public byte iManufacturer() {
+			return 0;
+		}
+
+		@Override
+		public byte iProduct() {
+			return 0;
+		}
+
+		@Override
+		public byte iSerialNumber() {
+			return 0;
+		}
+
+		@Override
+		public byte bNumConfigurations() {
+			return 1;
+		}
+	}
+
+	/**
+	 * The descriptor of the single configuration of an emulated device.
+	 */
+	static class ConfigurationDescriptor implements UsbConfigurationDescriptor {
+
+		private final byte numberOfInterfaces;
+
+		ConfigurationDescriptor(final byte numberOfInterfaces) {
+			this.numberOfInterfaces = numberOfInterfaces;
+		}
+
+		@Override
+		public byte bLength() {
+			return 9;
+		}
+
+		@Override
+		public byte bDescriptorType() {
+			return UsbConst.DESCRIPTOR_TYPE_CONFIGURATION;
+		}
+
+		@Override
+		public short wTotalLength() {
+			return (short) (9 + numberOfInterfaces * (9 + 7));
+		}
+
+		@Override
+		public byte bNumInterfaces() {
+			return numberOfInterfaces;
+		}
+
+		@Override
+		public byte bConfigurationValue() {
+			return 1;
+		}
+
+		@Override
+		public byte iConfiguration() {
+			return 0;
+		}
+
+		@Override
+		public byte bmAttributes() {
+			return (byte) 0x80;
+		}
+
+		@Override
+		public byte bMaxPower() {
+			return 50;
+		}
+	}
+
+	/**
+	 * The descriptor of the HID interface 0 of an emulated device.
+	 */
+	static class InterfaceDescriptor implements UsbInterfaceDescriptor {
+
+		@Override
+		public byte bLength() {
+			return 9;
+		}
+
+		@Override
+		public byte bDescriptorType() {
+			return UsbConst.DESCRIPTOR_TYPE_INTERFACE;
+		}
+
+		@Override
+		public byte bInterfaceNumber() {
+			return 0;
+		}
+
+		@Override
+		public byte bAlternateSetting() {
+			return 0;
+		}
+
+		@Override
+		public byte bNumEndpoints() {
+			return 1;
+		}
+
+		@Override
+		public byte bInterfaceClass() {
+			return 3;
+		}
+
+		@Override
+		public byte bInterfaceSubClass() {
+			return 0;
+		}
+
+		@Override
+		public byte bInterfaceProtocol() {
+			return 0;
+		}
+
+		@Override
+		public byte iInterface() {
+			return 0;
+		}
+	}
+
+	/**
+	 * The descriptor of the interrupt-in endpoint of an emulated device.
+	 */
+	static class EndpointDescriptor implements UsbEndpointDescriptor {
+
+		private final byte address;
+		private final short maxPacketSize;
+
+		EndpointDescriptor(final byte address, final short maxPacketSize) {
+			this.address = address;
+			this.maxPacketSize = maxPacketSize;
+		}
+
+		@Override
+		public byte bLength() {
+			return 7;
+		}
+
+		@Override
+		public byte bDescriptorType() {
+			return UsbConst.DESCRIPTOR_TYPE_ENDPOINT;
+		}
+
+		@Override
+		public byte bEndpointAddress() {
+			return address;
+		}
+
+		@Override
+		public byte bmAttributes() {
+			return UsbConst.ENDPOINT_TYPE_INTERRUPT;
+		}
+
+		@Override
+		public short wMaxPacketSize() {
+			return maxPacketSize;
+		}
+
+		@Override
+		public byte bInterval() {
+			return 10;
+		}
+	}
+}
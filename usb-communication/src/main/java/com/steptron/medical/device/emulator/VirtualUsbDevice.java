@@ -0,0 +1,261 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.usb.UsbConfiguration;
+import javax.usb.UsbConst;
+import javax.usb.UsbControlIrp;
+import javax.usb.UsbDevice;
+import javax.usb.UsbDeviceDescriptor;
+import javax.usb.UsbDisconnectedException;
+import javax.usb.UsbException;
+import javax.usb.UsbPort;
+import javax.usb.UsbStringDescriptor;
+import javax.usb.event.UsbDeviceDataEvent;
+import javax.usb.event.UsbDeviceErrorEvent;
+import javax.usb.event.UsbDeviceEvent;
+import javax.usb.event.UsbDeviceListener;
+import javax.usb.util.DefaultUsbControlIrp;
+
+/**
+ * An emulated USB device. Control-out transfers submitted to the device are handed over to its
+ * {@link DeviceEmulator} and the emulator responses are read from the interrupt-in endpoint 0x81 of interface 0.
+ */
+public class VirtualUsbDevice implements UsbDevice {
+
+	private final DeviceEmulator emulator;
+	private final UsbDeviceDescriptor descriptor;
+	private final VirtualUsbConfiguration configuration;
+	private final List<UsbDeviceListener> listeners = new CopyOnWriteArrayList<UsbDeviceListener>();
+
+	private volatile VirtualUsbPort parentPort;
+
+	/**
+	 * Instantiates a new virtual USB device driven by the given emulator.
+	 *
+	 * @param emulator the emulator of the device firmware
+	 */
+	public VirtualUsbDevice(final DeviceEmulator emulator) {
+		this.emulator = emulator;
+		this.descriptor = new VirtualUsbDescriptors.DeviceDescriptor(emulator.getVendorId(), emulator.getProductId(), false);
+		this.configuration = new VirtualUsbConfiguration(this, true);
+		emulator.connect(configuration.getVirtualUsbInterface().getVirtualUsbEndpoint().getVirtualUsbPipe());
+	}
+
+	/**
+	 * Instantiates a new virtual USB hub.
+	 *
+	 * @param vendorId the vendor id of the hub
+	 * @param productId the product id of the hub
+	 */
+	VirtualUsbDevice(final short vendorId, final short productId) {
+		this.emulator = null;
+		this.descriptor = new VirtualUsbDescriptors.DeviceDescriptor(vendorId, productId, true);
+		this.configuration = new VirtualUsbConfiguration(this, false);
+	}
+
+	/**
+	 * Gets the emulator of the device firmware.
+	 *
+	 * @return the emulator, null for hubs
+	 */
+	public DeviceEmulator getEmulator() {
+		return emulator;
+	}
+
+	/**
+	 * Checks if the device is attached to a hub.
+	 *
+	 * @return true, if the device is attached
+	 */
+	public boolean isAttached() {
+		return parentPort != null;
+	}
+
+	void setParentUsbPort(final VirtualUsbPort parentPort) {
+		this.parentPort = parentPort;
+	}
+
+	void fireDetached() {
+		if(emulator != null) {
+			configuration.getVirtualUsbInterface().getVirtualUsbEndpoint().getVirtualUsbPipe().detached();
+		}
+		final UsbDeviceEvent event = new UsbDeviceEvent(this);
+		for(final UsbDeviceListener listener : listeners) {
+			listener.usbDeviceDetached(event);
+		}
+	}
+
+	@Override
+	public UsbPort getParentUsbPort() {
+		return parentPort;
+	}
+
+	@Override
+	public boolean isUsbHub() {
+		return false;
+	}
+
+	@Override
+	public String getManufacturerString() {
+		return emulator == null ? null : "Beurer";
+	}
+
+	@Override
+	public String getSerialNumberString() {
+		return null;
+	}
+
+	@Override
+	public String getProductString() {
+		return emulator == null ? null : emulator.getProductName();
+	}
+
+	@Override
+	public Object getSpeed() {
+		return UsbConst.DEVICE_SPEED_FULL;
+	}
+
+	@Override
+	public List<UsbConfiguration> getUsbConfigurations() {
+		return Collections.<UsbConfiguration> singletonList(configuration);
+	}
+
+	@Override
+	public UsbConfiguration getUsbConfiguration(final byte number) {
+		return containsUsbConfiguration(number) ? configuration : null;
+	}
+
+	@Override
+	public boolean containsUsbConfiguration(final byte number) {
+		return number == 1;
+	}
+
+	@Override
+	public byte getActiveUsbConfigurationNumber() {
+		return 1;
+	}
+
+	@Override
+	public UsbConfiguration getActiveUsbConfiguration() {
+		return configuration;
+	}
+
+	@Override
+	public boolean isConfigured() {
+		return true;
+	}
+
+	@Override
+	public UsbDeviceDescriptor getUsbDeviceDescriptor() {
+		return descriptor;
+	}
+
+	@Override
+	public UsbStringDescriptor getUsbStringDescriptor(final byte index) throws UsbException {
+		throw new UsbException("String descriptors are not emulated");
+	}
+
+	@Override
+	public String getString(final byte index) throws UsbException {
+		throw new UsbException("String descriptors are not emulated");
+	}
+
+	@Override
+	public void syncSubmit(final UsbControlIrp irp) throws UsbException {
+		asyncSubmit(irp);
+		if(irp.isUsbException()) {
+			throw irp.getUsbException();
+		}
+	}
+
+	@Override
+	public void asyncSubmit(final UsbControlIrp irp) throws UsbException {
+		if(!isAttached()) {
+			throw new UsbDisconnectedException();
+		}
+		if(emulator == null) {
+			throw new UsbException("Control transfers are not emulated for hubs");
+		}
+		irp.setComplete(false);
+		irp.setUsbException(null);
+		final byte[] command = Arrays.copyOfRange(irp.getData(), irp.getOffset(), irp.getOffset() + irp.getLength());
+		try {
+			emulator.controlOut(command);
+		} catch(RuntimeException e) {
+			//A command the firmware fails on is stalled, like on the device
+			irp.setUsbException(new UsbException("The control transfer failed: " + e.getMessage()));
+			irp.complete();
+			final UsbDeviceErrorEvent event = new UsbDeviceErrorEvent(this, irp);
+			for(final UsbDeviceListener listener : listeners) {
+				listener.errorEventOccurred(event);
+			}
+			return;
+		}
+		irp.setActualLength(command.length);
+		irp.complete();
+		final UsbDeviceDataEvent event = new UsbDeviceDataEvent(this, irp);
+		for(final UsbDeviceListener listener : listeners) {
+			listener.dataEventOccurred(event);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void syncSubmit(final List list) throws UsbException {
+		for(final Object irp : list) {
+			syncSubmit((UsbControlIrp) irp);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void asyncSubmit(final List list) throws UsbException {
+		for(final Object irp : list) {
+			asyncSubmit((UsbControlIrp) irp);
+		}
+	}
+
+	@Override
+	public UsbControlIrp createUsbControlIrp(final byte bmRequestType, final byte bRequest, final short wValue, final short wIndex) {
+		return new DefaultUsbControlIrp(bmRequestType, bRequest, wValue, wIndex);
+	}
+
+	@Override
+	public void addUsbDeviceListener(final UsbDeviceListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void removeUsbDeviceListener(final UsbDeviceListener listener) {
+		listeners.remove(listener);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("VirtualUsbDevice [%04x:%04x]", descriptor.idVendor() & 0xffff, descriptor.idProduct() & 0xffff);
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import javax.usb.UsbConst;
+import javax.usb.UsbEndpoint;
+import javax.usb.UsbEndpointDescriptor;
+import javax.usb.UsbInterface;
+import javax.usb.UsbPipe;
+
+/**
+ * The interrupt-in endpoint (address 0x81) of an emulated device.
+ */
+class VirtualUsbEndpoint implements UsbEndpoint {
+
+	/** The Constant INTERRUPT_IN_ADDRESS is the endpoint number -127 used by the drivers. */
+	static final byte INTERRUPT_IN_ADDRESS = (byte) 0x81;
+
+	private final VirtualUsbInterface usbInterface;
+	private final UsbEndpointDescriptor descriptor;
+	private final VirtualUsbPipe pipe;
+
+	/**
+	 * Instantiates a new virtual USB endpoint.
+	 *
+	 * @param device the device owning this endpoint
+	 * @param usbInterface the interface owning this endpoint
+	 */
+	VirtualUsbEndpoint(final VirtualUsbDevice device, final VirtualUsbInterface usbInterface) {
+		this.usbInterface = usbInterface;
+		this.descriptor = new VirtualUsbDescriptors.EndpointDescriptor(INTERRUPT_IN_ADDRESS, (short) 64);
+		this.pipe = new VirtualUsbPipe(device, this);
+	}
+
+	@Override
+	public UsbInterface getUsbInterface() {
+		return usbInterface;
+	}
+
+	@Override
+	public UsbEndpointDescriptor getUsbEndpointDescriptor() {
+		return descriptor;
+	}
+
+	@Override
+	public byte getDirection() {
+		return (byte) (descriptor.bEndpointAddress() & UsbConst.ENDPOINT_DIRECTION_MASK);
+	}
+
+	@Override
+	public byte getType() {
+		return (byte) (descriptor.bmAttributes() & UsbConst.ENDPOINT_TYPE_MASK);
+	}
+
+	@Override
+	public UsbPipe getUsbPipe() {
+		return pipe;
+	}
+
+	VirtualUsbPipe getVirtualUsbPipe() {
+		return pipe;
+	}
+}
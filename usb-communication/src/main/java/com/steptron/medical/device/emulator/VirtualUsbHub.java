@@ -0,0 +1,145 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.usb.UsbDevice;
+import javax.usb.UsbHub;
+import javax.usb.UsbPort;
+
+/**
+ * An emulated USB hub. The hub grows a new downstream port whenever all of its ports are in use.
+ */
+public class VirtualUsbHub extends VirtualUsbDevice implements UsbHub {
+
+	/** The Constant VENDOR_ID of the emulated hubs (Linux Foundation). */
+	public static final short VENDOR_ID = (short) 0x1d6b;
+
+	/** The Constant PRODUCT_ID of the emulated hubs (1.1 root hub). */
+	public static final short PRODUCT_ID = (short) 0x0001;
+
+	private final boolean rootHub;
+	private final List<VirtualUsbPort> ports = new ArrayList<VirtualUsbPort>();
+
+	/**
+	 * Instantiates a new virtual USB hub which can be attached to another hub.
+	 */
+	public VirtualUsbHub() {
+		this(false);
+	}
+
+	/**
+	 * Instantiates a new virtual USB hub.
+	 *
+	 * @param rootHub true for the root hub of the virtual host
+	 */
+	VirtualUsbHub(final boolean rootHub) {
+		super(VENDOR_ID, PRODUCT_ID);
+		this.rootHub = rootHub;
+	}
+
+	@Override
+	public boolean isAttached() {
+		return rootHub || super.isAttached();
+	}
+
+	@Override
+	public boolean isUsbHub() {
+		return true;
+	}
+
+	@Override
+	public synchronized byte getNumberOfPorts() {
+		return (byte) ports.size();
+	}
+
+	@Override
+	public synchronized List<UsbPort> getUsbPorts() {
+		return new ArrayList<UsbPort>(ports);
+	}
+
+	@Override
+	public synchronized UsbPort getUsbPort(final byte number) {
+		if(number < 1 || number > ports.size()) {
+			return null;
+		}
+		return ports.get(number - 1);
+	}
+
+	@Override
+	public synchronized List<UsbDevice> getAttachedUsbDevices() {
+		final List<UsbDevice> devices = new ArrayList<UsbDevice>();
+		for(final VirtualUsbPort port : ports) {
+			if(port.isUsbDeviceAttached()) {
+				devices.add(port.getUsbDevice());
+			}
+		}
+		return devices;
+	}
+
+	@Override
+	public boolean isRootUsbHub() {
+		return rootHub;
+	}
+
+	/**
+	 * Connects the device to the first free port.
+	 *
+	 * @param device the device to be connected
+	 */
+	synchronized void connect(final VirtualUsbDevice device) {
+		VirtualUsbPort freePort = null;
+		for(final VirtualUsbPort port : ports) {
+			if(!port.isUsbDeviceAttached()) {
+				freePort = port;
+				break;
+			}
+		}
+		if(freePort == null) {
+			freePort = new VirtualUsbPort(this, (byte) (ports.size() + 1));
+			ports.add(freePort);
+		}
+		freePort.setUsbDevice(device);
+		device.setParentUsbPort(freePort);
+	}
+
+	/**
+	 * Disconnects the device from its port.
+	 *
+	 * @param device the device to be disconnected
+	 */
+	synchronized void disconnect(final VirtualUsbDevice device) {
+		for(final VirtualUsbPort port : ports) {
+			if(port.getUsbDevice() == device) {
+				port.setUsbDevice(null);
+				device.setParentUsbPort(null);
+				return;
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.emulator.VirtualUsbDevice#toString()
+	 */
+	@Override
+	public String toString() {
+		return (rootHub ? "VirtualUsbHub [root]" : "VirtualUsbHub") + " with " + getNumberOfPorts() + " ports";
+	}
+}
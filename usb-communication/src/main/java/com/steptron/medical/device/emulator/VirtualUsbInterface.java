@@ -0,0 +1,157 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.usb.UsbClaimException;
+import javax.usb.UsbConfiguration;
+import javax.usb.UsbDisconnectedException;
+import javax.usb.UsbEndpoint;
+import javax.usb.UsbInterface;
+import javax.usb.UsbInterfaceDescriptor;
+import javax.usb.UsbInterfacePolicy;
+
+/**
+ * The HID interface 0 of an emulated device. It has a single setting with a single interrupt-in endpoint.
+ */
+class VirtualUsbInterface implements UsbInterface {
+
+	private final VirtualUsbDevice device;
+	private final VirtualUsbConfiguration configuration;
+	private final UsbInterfaceDescriptor descriptor = new VirtualUsbDescriptors.InterfaceDescriptor();
+	private final VirtualUsbEndpoint endpoint;
+
+	private boolean claimed;
+
+	/**
+	 * Instantiates a new virtual USB interface.
+	 *
+	 * @param device the device owning this interface
+	 * @param configuration the configuration owning this interface
+	 */
+	VirtualUsbInterface(final VirtualUsbDevice device, final VirtualUsbConfiguration configuration) {
+		this.device = device;
+		this.configuration = configuration;
+		this.endpoint = new VirtualUsbEndpoint(device, this);
+	}
+
+	@Override
+	public void claim() throws UsbClaimException {
+		claim(null);
+	}
+
+	@Override
+	public synchronized void claim(final UsbInterfacePolicy policy) throws UsbClaimException {
+		checkConnected();
+		if(claimed) {
+			throw new UsbClaimException("An interface is already claimed");
+		}
+		claimed = true;
+	}
+
+	@Override
+	public synchronized void release() throws UsbClaimException {
+		checkConnected();
+		if(!claimed) {
+			throw new UsbClaimException("Interface is not claimed");
+		}
+		claimed = false;
+	}
+
+	@Override
+	public synchronized boolean isClaimed() {
+		return claimed;
+	}
+
+	@Override
+	public boolean isActive() {
+		return true;
+	}
+
+	@Override
+	public int getNumSettings() {
+		return 1;
+	}
+
+	@Override
+	public byte getActiveSettingNumber() {
+		return 0;
+	}
+
+	@Override
+	public UsbInterface getActiveSetting() {
+		return this;
+	}
+
+	@Override
+	public UsbInterface getSetting(final byte number) {
+		return number == 0 ? this : null;
+	}
+
+	@Override
+	public boolean containsSetting(final byte number) {
+		return number == 0;
+	}
+
+	@Override
+	public List<UsbInterface> getSettings() {
+		return Collections.<UsbInterface> singletonList(this);
+	}
+
+	@Override
+	public List<UsbEndpoint> getUsbEndpoints() {
+		return Collections.<UsbEndpoint> singletonList(endpoint);
+	}
+
+	@Override
+	public UsbEndpoint getUsbEndpoint(final byte address) {
+		return containsUsbEndpoint(address) ? endpoint : null;
+	}
+
+	@Override
+	public boolean containsUsbEndpoint(final byte address) {
+		return address == VirtualUsbEndpoint.INTERRUPT_IN_ADDRESS;
+	}
+
+	@Override
+	public UsbConfiguration getUsbConfiguration() {
+		return configuration;
+	}
+
+	@Override
+	public UsbInterfaceDescriptor getUsbInterfaceDescriptor() {
+		return descriptor;
+	}
+
+	@Override
+	public String getInterfaceString() {
+		return null;
+	}
+
+	VirtualUsbEndpoint getVirtualUsbEndpoint() {
+		return endpoint;
+	}
+
+	private void checkConnected() {
+		if(!device.isAttached()) {
+			throw new UsbDisconnectedException();
+		}
+	}
+}
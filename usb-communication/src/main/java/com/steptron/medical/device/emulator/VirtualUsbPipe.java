@@ -0,0 +1,310 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.usb.UsbAbortException;
+import javax.usb.UsbControlIrp;
+import javax.usb.UsbDisconnectedException;
+import javax.usb.UsbEndpoint;
+import javax.usb.UsbException;
+import javax.usb.UsbIrp;
+import javax.usb.UsbNotClaimedException;
+import javax.usb.UsbNotOpenException;
+import javax.usb.UsbPipe;
+import javax.usb.event.UsbPipeDataEvent;
+import javax.usb.event.UsbPipeErrorEvent;
+import javax.usb.event.UsbPipeListener;
+import javax.usb.util.DefaultUsbControlIrp;
+import javax.usb.util.DefaultUsbIrp;
+
+/**
+ * The interrupt-in pipe of an emulated device.
+ * Submitted IRPs are queued until the emulator delivers a response, the responses are matched
+ * to the IRPs in submission order, the same way a device answers the host polling the endpoint.
+ */
+class VirtualUsbPipe implements UsbPipe {
+
+	/** Single daemon thread which delivers the delayed responses of all the emulated devices in order. */
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "virtual-usb-scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final VirtualUsbDevice device;
+	private final VirtualUsbEndpoint endpoint;
+	private final Deque<UsbIrp> pendingIrps = new ArrayDeque<UsbIrp>();
+	private final Deque<InFlightResponse> inFlightResponses = new ArrayDeque<InFlightResponse>();
+	private final Deque<byte[]> responses = new ArrayDeque<byte[]>();
+	private final List<UsbPipeListener> listeners = new CopyOnWriteArrayList<UsbPipeListener>();
+
+	private boolean open;
+	private long lastDueNanos;
+
+	/**
+	 * Instantiates a new virtual USB pipe.
+	 *
+	 * @param device the device owning this pipe
+	 * @param endpoint the endpoint owning this pipe
+	 */
+	VirtualUsbPipe(final VirtualUsbDevice device, final VirtualUsbEndpoint endpoint) {
+		this.device = device;
+		this.endpoint = endpoint;
+		this.lastDueNanos = System.nanoTime();
+	}
+
+	/**
+	 * Delivers the response of the device after the given delay. Responses never overtake each other.
+	 *
+	 * @param data the response data
+	 * @param delayNanos the delay in nanoseconds
+	 */
+	void deliver(final byte[] data, final long delayNanos) {
+		final long now = System.nanoTime();
+		final long dueNanos;
+		synchronized(this) {
+			dueNanos = Math.max(now + delayNanos, lastDueNanos);
+			lastDueNanos = dueNanos;
+			inFlightResponses.add(new InFlightResponse(dueNanos, data));
+		}
+		if(dueNanos - now <= 0) {
+			releaseDueResponses();
+		} else {
+			SCHEDULER.schedule(this::releaseDueResponses, dueNanos - now, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Makes the in-flight responses which are due available to the host, in the order they were sent.
+	 */
+	private void releaseDueResponses() {
+		synchronized(this) {
+			final long now = System.nanoTime();
+			while(!inFlightResponses.isEmpty() && inFlightResponses.peek().dueNanos - now <= 0) {
+				responses.add(inFlightResponses.poll().data);
+			}
+		}
+		dispatch();
+	}
+
+	/**
+	 * Completes the pending IRPs for which a response is available.
+	 */
+	private void dispatch() {
+		//Most calls find nothing to complete, the list is only created when a response is matched
+		List<UsbIrp> completedIrps = null;
+		synchronized(this) {
+			while(!pendingIrps.isEmpty() && !responses.isEmpty()) {
+				if(completedIrps == null) {
+					completedIrps = new ArrayList<UsbIrp>(1);
+				}
+				final UsbIrp irp = pendingIrps.poll();
+				final byte[] response = responses.poll();
+				final int length = Math.min(response.length, irp.getLength());
+				System.arraycopy(response, 0, irp.getData(), irp.getOffset(), length);
+				irp.setActualLength(length);
+				completedIrps.add(irp);
+			}
+		}
+		if(completedIrps == null) {
+			return;
+		}
+		for(final UsbIrp irp : completedIrps) {
+			irp.complete();
+			for(final UsbPipeListener listener : listeners) {
+				listener.dataEventOccurred(new UsbPipeDataEvent(this, irp));
+			}
+		}
+	}
+
+	@Override
+	public void open() throws UsbException {
+		checkConnected();
+		if(!endpoint.getUsbInterface().isClaimed()) {
+			throw new UsbNotClaimedException("Interface is not claimed");
+		}
+		synchronized(this) {
+			if(open) {
+				throw new UsbException("Pipe is already open");
+			}
+			open = true;
+		}
+	}
+
+	@Override
+	public synchronized void close() throws UsbException {
+		if(!open) {
+			throw new UsbNotOpenException("Pipe is not open");
+		}
+		//As with usb4java, the submitted IRPs have to be aborted before the pipe is closed
+		if(!pendingIrps.isEmpty()) {
+			throw new UsbException("Pipe is still busy");
+		}
+		open = false;
+		//Drop whatever the device had queued for the host
+		inFlightResponses.clear();
+		responses.clear();
+	}
+
+	@Override
+	public boolean isActive() {
+		return true;
+	}
+
+	@Override
+	public synchronized boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public UsbEndpoint getUsbEndpoint() {
+		return endpoint;
+	}
+
+	@Override
+	public int syncSubmit(final byte[] data) throws UsbException {
+		final UsbIrp irp = asyncSubmit(data);
+		irp.waitUntilComplete();
+		if(irp.isUsbException()) {
+			throw irp.getUsbException();
+		}
+		return irp.getActualLength();
+	}
+
+	@Override
+	public UsbIrp asyncSubmit(final byte[] data) throws UsbException {
+		final UsbIrp irp = new DefaultUsbIrp(data);
+		asyncSubmit(irp);
+		return irp;
+	}
+
+	@Override
+	public void syncSubmit(final UsbIrp irp) throws UsbException {
+		asyncSubmit(irp);
+		irp.waitUntilComplete();
+		if(irp.isUsbException()) {
+			throw irp.getUsbException();
+		}
+	}
+
+	@Override
+	public void asyncSubmit(final UsbIrp irp) throws UsbException {
+		checkConnected();
+		synchronized(this) {
+			if(!open) {
+				throw new UsbNotOpenException("Pipe is not open");
+			}
+			irp.setComplete(false);
+			irp.setUsbException(null);
+			pendingIrps.add(irp);
+		}
+		dispatch();
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void syncSubmit(final List list) throws UsbException {
+		for(final Object irp : list) {
+			syncSubmit((UsbIrp) irp);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void asyncSubmit(final List list) throws UsbException {
+		for(final Object irp : list) {
+			asyncSubmit((UsbIrp) irp);
+		}
+	}
+
+	@Override
+	public void abortAllSubmissions() {
+		failPendingIrps(new UsbAbortException());
+	}
+
+	/**
+	 * Fails the pending IRPs as the host controller does when the device is unplugged.
+	 */
+	void detached() {
+		failPendingIrps(new UsbException("The device has been detached"));
+	}
+
+	private void failPendingIrps(final UsbException exception) {
+		final List<UsbIrp> failedIrps;
+		synchronized(this) {
+			failedIrps = new ArrayList<UsbIrp>(pendingIrps);
+			pendingIrps.clear();
+		}
+		for(final UsbIrp irp : failedIrps) {
+			irp.setUsbException(exception);
+			irp.complete();
+			for(final UsbPipeListener listener : listeners) {
+				listener.errorEventOccurred(new UsbPipeErrorEvent(this, irp));
+			}
+		}
+	}
+
+	@Override
+	public UsbIrp createUsbIrp() {
+		return new DefaultUsbIrp();
+	}
+
+	@Override
+	public UsbControlIrp createUsbControlIrp(final byte bmRequestType, final byte bRequest, final short wValue, final short wIndex) {
+		return new DefaultUsbControlIrp(bmRequestType, bRequest, wValue, wIndex);
+	}
+
+	@Override
+	public void addUsbPipeListener(final UsbPipeListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void removeUsbPipeListener(final UsbPipeListener listener) {
+		listeners.remove(listener);
+	}
+
+	private void checkConnected() {
+		if(!device.isAttached()) {
+			throw new UsbDisconnectedException();
+		}
+	}
+
+	/**
+	 * A response sent by the device which becomes available to the host at the due time.
+	 */
+	private static class InFlightResponse {
+
+		private final long dueNanos;
+		private final byte[] data;
+
+		InFlightResponse(final long dueNanos, final byte[] data) {
+			this.dueNanos = dueNanos;
+			this.data = data;
+		}
+	}
+}
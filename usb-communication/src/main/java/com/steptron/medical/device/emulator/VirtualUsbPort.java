@@ -0,0 +1,68 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import javax.usb.UsbDevice;
+import javax.usb.UsbHub;
+import javax.usb.UsbPort;
+
+/**
+ * A downstream port of an emulated hub.
+ */
+class VirtualUsbPort implements UsbPort {
+
+	private final VirtualUsbHub hub;
+	private final byte portNumber;
+
+	private volatile VirtualUsbDevice device;
+
+	/**
+	 * Instantiates a new virtual USB port.
+	 *
+	 * @param hub the hub owning this port
+	 * @param portNumber the port number starting from 1
+	 */
+	VirtualUsbPort(final VirtualUsbHub hub, final byte portNumber) {
+		this.hub = hub;
+		this.portNumber = portNumber;
+	}
+
+	@Override
+	public byte getPortNumber() {
+		return portNumber;
+	}
+
+	@Override
+	public UsbHub getUsbHub() {
+		return hub;
+	}
+
+	@Override
+	public UsbDevice getUsbDevice() {
+		return device;
+	}
+
+	@Override
+	public boolean isUsbDeviceAttached() {
+		return device != null;
+	}
+
+	void setUsbDevice(final VirtualUsbDevice device) {
+		this.device = device;
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.usb.UsbDevice;
+import javax.usb.UsbException;
+import javax.usb.UsbHostManager;
+import javax.usb.UsbHub;
+import javax.usb.UsbServices;
+import javax.usb.event.UsbServicesEvent;
+import javax.usb.event.UsbServicesListener;
+
+import com.steptron.medical.device.services.TransferCapture;
+
+/**
+ * The Class VirtualUsbServices is an in-memory USB host which emulates the Beurer BM55 and BF480 devices,
+ * so the drivers can be driven end to end without the hardware being plugged in.
+ * To use it set javax.usb.services=com.steptron.medical.device.emulator.VirtualUsbServices in javax.usb.properties.
+ * The devices attached at start up are configured with the properties below, read from javax.usb.properties
+ * and overridden by the system properties of the same name:
+ * <ul>
+ * <li>com.steptron.medical.device.emulator.devices - comma separated device models (BM55, BF480) to be attached</li>
+ * <li>com.steptron.medical.device.emulator.latencyMicros - the per-IRP latency in microseconds (default 0)</li>
+ * <li>com.steptron.medical.device.emulator.jitterMicros - the maximum random jitter in microseconds (default 0)</li>
+ * <li>com.steptron.medical.device.emulator.bm55.readings - the number of readings stored in the BM55 (default 60)</li>
+ * <li>com.steptron.medical.device.emulator.bf480.readings - the number of readings stored per BF480 user (default 20)</li>
+ * <li>com.steptron.medical.device.emulator.replay - comma separated capture files to be played back by a {@link ReplayEmulator} each</li>
+ * <li>com.steptron.medical.device.emulator.replay.recordedSpeed - true to replay at the captured speed, false at maximum speed (default true)</li>
+ * </ul>
+ */
+public class VirtualUsbServices implements UsbServices {
+
+	/** The Constant PROPERTY_PREFIX of the emulator configuration properties. */
+	public static final String PROPERTY_PREFIX = "com.steptron.medical.device.emulator.";
+
+	/** The Constant DEVICES_PROPERTY. */
+	public static final String DEVICES_PROPERTY = PROPERTY_PREFIX + "devices";
+
+	/** The Constant LATENCY_PROPERTY. */
+	public static final String LATENCY_PROPERTY = PROPERTY_PREFIX + "latencyMicros";
+
+	/** The Constant JITTER_PROPERTY. */
+	public static final String JITTER_PROPERTY = PROPERTY_PREFIX + "jitterMicros";
+
+	/** The Constant BM55_READINGS_PROPERTY. */
+	public static final String BM55_READINGS_PROPERTY = PROPERTY_PREFIX + "bm55.readings";
+
+	/** The Constant BF480_READINGS_PROPERTY. */
+	public static final String BF480_READINGS_PROPERTY = PROPERTY_PREFIX + "bf480.readings";
+
+	/** The Constant REPLAY_PROPERTY. */
+	public static final String REPLAY_PROPERTY = PROPERTY_PREFIX + "replay";
+
+	/** The Constant REPLAY_RECORDED_SPEED_PROPERTY. */
+	public static final String REPLAY_RECORDED_SPEED_PROPERTY = PROPERTY_PREFIX + "replay.recordedSpeed";
+
+	private final VirtualUsbHub rootHub = new VirtualUsbHub(true);
+	private final List<UsbServicesListener> listeners = new CopyOnWriteArrayList<UsbServicesListener>();
+
+	/**
+	 * Instantiates the virtual USB host configured with javax.usb.properties.
+	 * This constructor is used by {@link UsbHostManager}.
+	 */
+	public VirtualUsbServices() {
+		this(loadProperties());
+	}
+
+	/**
+	 * Instantiates the virtual USB host with the devices specified by the given properties.
+	 *
+	 * @param properties the emulator configuration properties
+	 */
+	public VirtualUsbServices(final Properties properties) {
+		final String devices = properties.getProperty(DEVICES_PROPERTY, "");
+		final long latencyMicros = Long.parseLong(properties.getProperty(LATENCY_PROPERTY, "0"));
+		final long jitterMicros = Long.parseLong(properties.getProperty(JITTER_PROPERTY, "0"));
+		for(final String model : devices.split(",")) {
+			if(model.trim().isEmpty()) {
+				continue;
+			}
+			final DeviceEmulator emulator = createEmulator(model.trim(), properties);
+			emulator.setLatency(latencyMicros, jitterMicros);
+			attach(emulator);
+		}
+		final boolean recordedSpeed = Boolean.parseBoolean(properties.getProperty(REPLAY_RECORDED_SPEED_PROPERTY, "true"));
+		for(final String captureFile : properties.getProperty(REPLAY_PROPERTY, "").split(",")) {
+			if(captureFile.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				attach(new ReplayEmulator(TransferCapture.read(Paths.get(captureFile.trim())), recordedSpeed));
+			} catch(IOException e) {
+				throw new IllegalArgumentException("Cannot read the capture " + captureFile.trim() + " in " + REPLAY_PROPERTY, e);
+			}
+		}
+	}
+
+	/**
+	 * Attaches a new device driven by the given emulator to the root hub.
+	 *
+	 * @param emulator the emulator of the device firmware
+	 * @return the attached device
+	 */
+	public VirtualUsbDevice attach(final DeviceEmulator emulator) {
+		final VirtualUsbDevice device = new VirtualUsbDevice(emulator);
+		attach(rootHub, device);
+		return device;
+	}
+
+	/**
+	 * Attaches the device to the given hub and notifies the listeners.
+	 *
+	 * @param hub the hub to which the device is plugged in
+	 * @param device the device to be attached
+	 */
+	public void attach(final VirtualUsbHub hub, final VirtualUsbDevice device) {
+		hub.connect(device);
+		final UsbServicesEvent event = new UsbServicesEvent(this, device);
+		for(final UsbServicesListener listener : listeners) {
+			listener.usbDeviceAttached(event);
+		}
+	}
+
+	/**
+	 * Detaches the device from its hub and notifies the listeners.
+	 * The devices attached to a detached hub are detached first.
+	 *
+	 * @param device the device to be detached
+	 */
+	public void detach(final VirtualUsbDevice device) {
+		if(!device.isAttached()) {
+			return;
+		}
+		if(device.isUsbHub()) {
+			for(final UsbDevice attachedDevice : ((VirtualUsbHub) device).getAttachedUsbDevices()) {
+				detach((VirtualUsbDevice) attachedDevice);
+			}
+		}
+		((VirtualUsbHub) device.getParentUsbPort().getUsbHub()).disconnect(device);
+		device.fireDetached();
+		final UsbServicesEvent event = new UsbServicesEvent(this, device);
+		for(final UsbServicesListener listener : listeners) {
+			listener.usbDeviceDetached(event);
+		}
+	}
+
+	@Override
+	public UsbHub getRootUsbHub() {
+		return rootHub;
+	}
+
+	/**
+	 * Gets the root hub of the virtual host.
+	 *
+	 * @return the root hub
+	 */
+	public VirtualUsbHub getVirtualRootUsbHub() {
+		return rootHub;
+	}
+
+	@Override
+	public void addUsbServicesListener(final UsbServicesListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void removeUsbServicesListener(final UsbServicesListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public String getApiVersion() {
+		return "1.0.2";
+	}
+
+	@Override
+	public String getImpVersion() {
+		return "0.0.1";
+	}
+
+	@Override
+	public String getImpDescription() {
+		return "Virtual USB host emulating the Beurer BM55 and BF480 devices and replaying captured transfers";
+	}
+
+	private static DeviceEmulator createEmulator(final String model, final Properties properties) {
+		switch(model) {
+			case "BM55":
+				return new BM55Emulator(BM55Emulator.generateMeasurements(Integer.parseInt(properties.getProperty(BM55_READINGS_PROPERTY, "60"))));
+			case "BF480":
+				return new BF480Emulator(BF480Emulator.generateMeasurements(Integer.parseInt(properties.getProperty(BF480_READINGS_PROPERTY, "20"))));
+			default:
+				throw new IllegalArgumentException("Unknown device model " + model + " in " + DEVICES_PROPERTY);
+		}
+	}
+
+	private static Properties loadProperties() {
+		final Properties properties = new Properties();
+		try {
+			properties.putAll(UsbHostManager.getProperties());
+		} catch(final UsbException e) {
+			//No javax.usb.properties, rely on the system properties only
+		}
+		for(final String name : System.getProperties().stringPropertyNames()) {
+			if(name.startsWith(PROPERTY_PREFIX)) {
+				properties.setProperty(name, System.getProperty(name));
+			}
+		}
+		return properties;
+	}
+}
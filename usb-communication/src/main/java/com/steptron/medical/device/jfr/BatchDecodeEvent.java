@@ -0,0 +1,73 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder event of a batch decoded by the {@link com.steptron.medical.device.domain.MeasurementBatchDecoder}.
+ */
+@Name(BatchDecodeEvent.NAME)
+@Label("Measurement Batch Decode")
+@Description("A batch of frames decoded to measurements")
+@Category({"Medical Devices", "Decoding"})
+@StackTrace(false)
+public class BatchDecodeEvent extends Event {
+
+	/** The Constant NAME is the name of the event type. */
+	public static final String NAME = "com.steptron.medical.device.BatchDecode";
+
+	@Label("Format")
+	@Description("The format of the frames, BM55 readings, BF480 records or a BF480 memory dump")
+	private String format;
+
+	@Label("Bytes")
+	@DataAmount
+	private long bytes;
+
+	@Label("Decoded")
+	private int decoded;
+
+	@Label("Rejected")
+	private long rejected;
+
+	/**
+	 * Ends the event and commits it if it is recorded.
+	 *
+	 * @param frameFormat the format of the frames
+	 * @param batchBytes the number of bytes of the batch
+	 * @param decodedCount the number of measurements decoded
+	 * @param rejectedCount the number of frames rejected
+	 */
+	public void complete(final String frameFormat, final long batchBytes, final int decodedCount, final long rejectedCount) {
+		end();
+		if(shouldCommit()) {
+			this.format = frameFormat;
+			this.bytes = batchBytes;
+			this.decoded = decodedCount;
+			this.rejected = rejectedCount;
+			commit();
+		}
+	}
+}
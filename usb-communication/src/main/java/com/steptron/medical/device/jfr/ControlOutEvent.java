@@ -0,0 +1,63 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.jfr;
+
+import javax.usb.UsbDevice;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder event of a command frame written to the device with a control transfer.
+ */
+@Name(ControlOutEvent.NAME)
+@Label("USB Control Out")
+@Description("A command frame written to the device with a control transfer")
+@StackTrace(false)
+public class ControlOutEvent extends UsbDeviceEvent {
+
+	/** The Constant NAME is the name of the event type. */
+	public static final String NAME = "com.steptron.medical.device.ControlOut";
+
+	@Label("Bytes")
+	@DataAmount
+	private int bytes;
+
+	@Label("Succeeded")
+	private boolean succeeded;
+
+	/**
+	 * Ends the event and commits it if it is recorded.
+	 *
+	 * @param device the device the frame was written to
+	 * @param frameLength the length of the frame
+	 * @param frameSucceeded true if the frame was submitted, false if the submission failed
+	 */
+	public void complete(final UsbDevice device, final int frameLength, final boolean frameSucceeded) {
+		end();
+		if(shouldCommit()) {
+			setDevice(device);
+			this.bytes = frameLength;
+			this.succeeded = frameSucceeded;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The flight recorder event of a device session, from the lookup of the device to the session being closed or returned to the pool.
+ * A session which could not be opened is committed as not completed.
+ */
+@Name(DeviceSessionEvent.NAME)
+@Label("Device Session")
+@Description("A download session with a USB device, from the device lookup to the session being closed")
+public class DeviceSessionEvent extends UsbDeviceEvent {
+
+	/** The Constant NAME is the name of the event type. */
+	public static final String NAME = "com.steptron.medical.device.DeviceSession";
+
+	@Label("Device Model")
+	private String deviceModel;
+
+	@Label("Pooled")
+	@Description("The session is kept open in a session pool between downloads")
+	private boolean pooled;
+
+	@Label("Completed")
+	@Description("The download completed, a session which could not be opened or whose download failed is not completed")
+	private boolean completed;
+
+	/**
+	 * Ends the event and commits it if it is recorded.
+	 *
+	 * @param vendorId the vendor id of the USB device
+	 * @param productId the product id of the USB device
+	 * @param model the device model
+	 * @param pooledSession true if the session is kept in a session pool
+	 * @param downloadCompleted true if the download completed
+	 */
+	public void complete(final short vendorId, final short productId, final String model, final boolean pooledSession, final boolean downloadCompleted) {
+		end();
+		if(shouldCommit()) {
+			setDevice(vendorId, productId);
+			this.deviceModel = model;
+			this.pooled = pooledSession;
+			this.completed = downloadCompleted;
+			commit();
+		}
+	}
+}
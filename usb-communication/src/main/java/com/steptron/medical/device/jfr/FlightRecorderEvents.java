@@ -0,0 +1,120 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.jfr;
+
+import jdk.jfr.EventType;
+
+/**
+ * The Class FlightRecorderEvents begins the flight recorder events of the downloads, only if the Java runtime has the flight recorder
+ * and a recording enables the event, so no event is allocated while nothing is recorded. The runtimes without the jdk.jfr module
+ * (Java 8 before 8u262, or an image linked without it) do not record any event: the event classes are only loaded once the
+ * flight recorder was found, the same as the virtual threads looked up by the download executors.
+ * A null event is returned when the event is not recorded, the callers skip its completion.
+ */
+public final class FlightRecorderEvents {
+
+	private static final boolean AVAILABLE = findFlightRecorder();
+
+	private FlightRecorderEvents() {
+	}
+
+	/**
+	 * Checks if the Java runtime has the flight recorder.
+	 *
+	 * @return true, if the events can be recorded
+	 */
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * Begins the event of a command frame written to the device.
+	 *
+	 * @return the event, null if it is not recorded
+	 */
+	public static ControlOutEvent beginControlOut() {
+		if(!AVAILABLE || !EventTypes.CONTROL_OUT.isEnabled()) {
+			return null;
+		}
+		final ControlOutEvent event = new ControlOutEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Begins the event of a read from the interrupt-in endpoint requested by the current thread.
+	 *
+	 * @return the event, null if it is not recorded
+	 */
+	public static InterruptInEvent beginInterruptIn() {
+		if(!AVAILABLE || !EventTypes.INTERRUPT_IN.isEnabled()) {
+			return null;
+		}
+		final InterruptInEvent event = new InterruptInEvent();
+		event.start();
+		return event;
+	}
+
+	/**
+	 * Begins the event of a session to a device.
+	 *
+	 * @return the event, null if it is not recorded
+	 */
+	public static DeviceSessionEvent beginDeviceSession() {
+		if(!AVAILABLE || !EventTypes.DEVICE_SESSION.isEnabled()) {
+			return null;
+		}
+		final DeviceSessionEvent event = new DeviceSessionEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Begins the event of a batch of frames decoded.
+	 *
+	 * @return the event, null if it is not recorded
+	 */
+	public static BatchDecodeEvent beginBatchDecode() {
+		if(!AVAILABLE || !EventTypes.BATCH_DECODE.isEnabled()) {
+			return null;
+		}
+		final BatchDecodeEvent event = new BatchDecodeEvent();
+		event.begin();
+		return event;
+	}
+
+	private static boolean findFlightRecorder() {
+		try {
+			Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+			return true;
+		} catch(ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * The event types are only loaded once the flight recorder was found.
+	 */
+	private static final class EventTypes {
+
+		private static final EventType CONTROL_OUT = EventType.getEventType(ControlOutEvent.class);
+		private static final EventType INTERRUPT_IN = EventType.getEventType(InterruptInEvent.class);
+		private static final EventType DEVICE_SESSION = EventType.getEventType(DeviceSessionEvent.class);
+		private static final EventType BATCH_DECODE = EventType.getEventType(BatchDecodeEvent.class);
+	}
+}
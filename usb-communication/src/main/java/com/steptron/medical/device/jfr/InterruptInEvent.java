@@ -0,0 +1,114 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.jfr;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import javax.usb.UsbAbortException;
+import javax.usb.UsbPipe;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder event of a read from the interrupt-in endpoint, from the submission of the IRP to its completion.
+ * An asynchronous read is committed by the thread completing it, the thread which requested the read is recorded in the event.
+ */
+@Name(InterruptInEvent.NAME)
+@Label("USB Interrupt In")
+@Description("A read from the interrupt-in endpoint of the device")
+@StackTrace(false)
+public class InterruptInEvent extends UsbDeviceEvent {
+
+	/** The Constant NAME is the name of the event type. */
+	public static final String NAME = "com.steptron.medical.device.InterruptIn";
+
+	/** The outcome of a read which completed with data. */
+	public static final String COMPLETED = "Completed";
+
+	/** The outcome of a read the device did not answer in time. */
+	public static final String TIMED_OUT = "Timed out";
+
+	/** The outcome of a read which was aborted. */
+	public static final String ABORTED = "Aborted";
+
+	/** The outcome of a read which failed. */
+	public static final String FAILED = "Failed";
+
+	@Label("Requested Bytes")
+	@DataAmount
+	private int requestedBytes;
+
+	@Label("Bytes")
+	@DataAmount
+	private int bytes;
+
+	@Label("Outcome")
+	private String outcome;
+
+	@Label("Requesting Thread")
+	private Thread requestingThread;
+
+	/**
+	 * Starts timing the read requested by the current thread.
+	 */
+	public void start() {
+		requestingThread = Thread.currentThread();
+		begin();
+	}
+
+	/**
+	 * Ends the event and commits it if it is recorded.
+	 *
+	 * @param connectionPipe the pipe the data was read from
+	 * @param numberOfBytes the number of bytes requested
+	 * @param data the data read, null if the read failed
+	 * @param failure the failure of the read, null if it completed
+	 */
+	public void complete(final UsbPipe connectionPipe, final int numberOfBytes, final byte[] data, final Throwable failure) {
+		end();
+		if(shouldCommit()) {
+			setDevice(connectionPipe);
+			this.requestedBytes = numberOfBytes;
+			this.bytes = data == null ? 0 : data.length;
+			this.outcome = getOutcome(failure);
+			commit();
+		}
+	}
+
+	private static String getOutcome(final Throwable failure) {
+		Throwable cause = failure;
+		while((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		if(cause == null) {
+			return COMPLETED;
+		} else if(cause instanceof TimeoutException) {
+			return TIMED_OUT;
+		} else if(cause instanceof UsbAbortException || cause instanceof CancellationException || cause instanceof InterruptedException) {
+			return ABORTED;
+		}
+		return FAILED;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.jfr;
+
+import javax.usb.UsbDevice;
+import javax.usb.UsbDeviceDescriptor;
+import javax.usb.UsbPipe;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * The base of the flight recorder events of a USB device, which carry the vendor id and product id of the device.
+ * The ids are only looked up once the event is known to be committed, so the events cost next to nothing while they are not recorded.
+ * The fields are protected as the flight recorder leaves out the private fields of the superclasses of an event.
+ */
+@Category({"Medical Devices", "USB"})
+public abstract class UsbDeviceEvent extends Event {
+
+	@Label("Vendor Id")
+	protected int vendorId;
+
+	@Label("Product Id")
+	protected int productId;
+
+	/**
+	 * Sets the vendor id and product id.
+	 *
+	 * @param vendorId the vendor id of the USB device
+	 * @param productId the product id of the USB device
+	 */
+	public void setDevice(final short vendorId, final short productId) {
+		this.vendorId = vendorId & 0xffff;
+		this.productId = productId & 0xffff;
+	}
+
+	/**
+	 * Sets the vendor id and product id of the device.
+	 *
+	 * @param device the USB device
+	 */
+	public void setDevice(final UsbDevice device) {
+		final UsbDeviceDescriptor descriptor = device.getUsbDeviceDescriptor();
+		setDevice(descriptor.idVendor(), descriptor.idProduct());
+	}
+
+	/**
+	 * Sets the vendor id and product id of the device owning the pipe.
+	 *
+	 * @param connectionPipe the pipe of the device
+	 */
+	public void setDevice(final UsbPipe connectionPipe) {
+		setDevice(connectionPipe.getUsbEndpoint().getUsbInterface().getUsbConfiguration().getUsbDevice());
+	}
+}
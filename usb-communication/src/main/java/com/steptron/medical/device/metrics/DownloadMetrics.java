@@ -0,0 +1,154 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.steptron.medical.device.services.CapturedTransfer.Direction;
+import com.steptron.medical.device.services.DownloadPhase;
+
+/**
+ * The Class DownloadMetrics accumulates the metrics of the downloads of one device model.
+ * The counts are striped adders, so the threads of concurrent downloads do not contend on them.
+ */
+public final class DownloadMetrics implements DownloadMetricsMXBean {
+
+	private static final DownloadPhase[] PHASES = DownloadPhase.values();
+
+	private final String deviceModel;
+	private final LongAdder[] phaseCounts = newAdders(PHASES.length);
+	private final LongAdder[] phaseFailures = newAdders(PHASES.length);
+	private final LongAdder[] phaseNanos = newAdders(PHASES.length);
+	private final LongAccumulator[] phaseMaxNanos = new LongAccumulator[PHASES.length];
+	private final LongAdder irpCount = new LongAdder();
+	private final LongAdder bytesOut = new LongAdder();
+	private final LongAdder bytesIn = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+
+	/**
+	 * Instantiates new download metrics.
+	 *
+	 * @param deviceModel the device model
+	 */
+	DownloadMetrics(final String deviceModel) {
+		this.deviceModel = deviceModel;
+		for(int phase = 0; phase < PHASES.length; phase++) {
+			phaseMaxNanos[phase] = new LongAccumulator(Math::max, 0);
+		}
+	}
+
+	void phaseCompleted(final DownloadPhase phase, final long elapsedNanos, final boolean succeeded) {
+		final int index = phase.ordinal();
+		phaseCounts[index].increment();
+		if(!succeeded) {
+			phaseFailures[index].increment();
+		}
+		phaseNanos[index].add(elapsedNanos);
+		phaseMaxNanos[index].accumulate(elapsedNanos);
+	}
+
+	void transferCompleted(final Direction direction, final int bytes) {
+		irpCount.increment();
+		(direction == Direction.CONTROL_OUT ? bytesOut : bytesIn).add(bytes);
+	}
+
+	void transferTimedOut() {
+		timeouts.increment();
+	}
+
+	void retried() {
+		retries.increment();
+	}
+
+	/**
+	 * Gets the statistics of a phase.
+	 *
+	 * @param phase the phase
+	 * @return the phase statistics
+	 */
+	public PhaseStatistics getPhase(final DownloadPhase phase) {
+		final int index = phase.ordinal();
+		return new PhaseStatistics(phaseCounts[index].sum(), phaseFailures[index].sum(), phaseNanos[index].sum(), phaseMaxNanos[index].get());
+	}
+
+	@Override
+	public String getDeviceModel() {
+		return this.deviceModel;
+	}
+
+	@Override
+	public Map<String, PhaseStatistics> getPhases() {
+		final Map<String, PhaseStatistics> phases = new LinkedHashMap<String, PhaseStatistics>();
+		for(final DownloadPhase phase : PHASES) {
+			phases.put(phase.name(), getPhase(phase));
+		}
+		return phases;
+	}
+
+	@Override
+	public long getIrpCount() {
+		return irpCount.sum();
+	}
+
+	@Override
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	@Override
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	@Override
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	@Override
+	public long getRetries() {
+		return retries.sum();
+	}
+
+	@Override
+	public void reset() {
+		for(int phase = 0; phase < PHASES.length; phase++) {
+			phaseCounts[phase].reset();
+			phaseFailures[phase].reset();
+			phaseNanos[phase].reset();
+			phaseMaxNanos[phase].reset();
+		}
+		irpCount.reset();
+		bytesOut.reset();
+		bytesIn.reset();
+		timeouts.reset();
+		retries.reset();
+	}
+
+	private static LongAdder[] newAdders(final int length) {
+		final LongAdder[] adders = new LongAdder[length];
+		for(int index = 0; index < length; index++) {
+			adders[index] = new LongAdder();
+		}
+		return adders;
+	}
+}
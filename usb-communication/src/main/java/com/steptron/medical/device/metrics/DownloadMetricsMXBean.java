@@ -0,0 +1,81 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface of the download metrics of one device model, registered by {@link JmxDownloadMetrics}.
+ * The counts are cumulative from the registration or the last reset.
+ */
+public interface DownloadMetricsMXBean {
+
+	/**
+	 * Gets the device model.
+	 *
+	 * @return the device model
+	 */
+	String getDeviceModel();
+
+	/**
+	 * Gets the statistics of each phase of the downloads, keyed by the name of the phase.
+	 *
+	 * @return the phase statistics
+	 */
+	Map<String, PhaseStatistics> getPhases();
+
+	/**
+	 * Gets the number of IRPs, the control-out frames and the interrupt-in reads.
+	 *
+	 * @return the IRP count
+	 */
+	long getIrpCount();
+
+	/**
+	 * Gets the number of bytes written with control-out frames.
+	 *
+	 * @return the bytes written
+	 */
+	long getBytesOut();
+
+	/**
+	 * Gets the number of bytes read from the interrupt-in endpoint.
+	 *
+	 * @return the bytes read
+	 */
+	long getBytesIn();
+
+	/**
+	 * Gets the number of reads the device did not answer in time.
+	 *
+	 * @return the timeouts
+	 */
+	long getTimeouts();
+
+	/**
+	 * Gets the number of times a part of a download was requested again.
+	 *
+	 * @return the retries
+	 */
+	long getRetries();
+
+	/**
+	 * Resets all the counts to zero.
+	 */
+	void reset();
+}
@@ -0,0 +1,135 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.steptron.medical.device.services.CapturedTransfer.Direction;
+import com.steptron.medical.device.services.DownloadMetricsListener;
+import com.steptron.medical.device.services.DownloadPhase;
+
+/**
+ * The Class JmxDownloadMetrics is the default {@link DownloadMetricsListener}, which exports the metrics of each device model as an MXBean
+ * named com.steptron.medical.device:type=DownloadMetrics,model=&lt;device model&gt;.
+ * The MXBean of a model is registered when the first metric of the model is reported, replacing the one registered under the same name before.
+ * The same instance can be set on the services of several device models.
+ */
+public class JmxDownloadMetrics implements DownloadMetricsListener {
+
+	/** The Constant DOMAIN is the domain of the object names of the MXBeans. */
+	public static final String DOMAIN = "com.steptron.medical.device";
+
+	private final MBeanServer server;
+	private final ConcurrentMap<String, DownloadMetrics> models = new ConcurrentHashMap<String, DownloadMetrics>();
+
+	/**
+	 * Instantiates the download metrics exported to the platform MBean server.
+	 */
+	public JmxDownloadMetrics() {
+		this(ManagementFactory.getPlatformMBeanServer());
+	}
+
+	/**
+	 * Instantiates the download metrics exported to the MBean server.
+	 *
+	 * @param server the MBean server
+	 */
+	public JmxDownloadMetrics(final MBeanServer server) {
+		this.server = server;
+	}
+
+	/**
+	 * Gets the object name of the MXBean of the device model.
+	 *
+	 * @param deviceModel the device model
+	 * @return the object name
+	 */
+	public static ObjectName getObjectName(final String deviceModel) {
+		try {
+			return new ObjectName(DOMAIN + ":type=DownloadMetrics,model=" + deviceModel);
+		} catch(MalformedObjectNameException e) {
+			throw new IllegalArgumentException("Invalid device model " + deviceModel, e);
+		}
+	}
+
+	/**
+	 * Gets the metrics of the device model, registering its MXBean if it is the first time the model is seen.
+	 *
+	 * @param deviceModel the device model
+	 * @return the metrics of the device model
+	 */
+	public DownloadMetrics getMetrics(final String deviceModel) {
+		final DownloadMetrics metrics = models.get(deviceModel);
+		return metrics != null ? metrics : models.computeIfAbsent(deviceModel, this::register);
+	}
+
+	/**
+	 * Unregisters the MXBeans of all the device models, the metrics reported afterwards start from zero.
+	 */
+	public void unregister() {
+		for(final String deviceModel : models.keySet()) {
+			try {
+				server.unregisterMBean(getObjectName(deviceModel));
+			} catch(JMException e) {
+				//Do nothing, the MXBean was unregistered by someone else
+			}
+		}
+		models.clear();
+	}
+
+	@Override
+	public void phaseCompleted(final String deviceModel, final DownloadPhase phase, final long elapsedNanos, final boolean succeeded) {
+		getMetrics(deviceModel).phaseCompleted(phase, elapsedNanos, succeeded);
+	}
+
+	@Override
+	public void transferCompleted(final String deviceModel, final Direction direction, final int bytes) {
+		getMetrics(deviceModel).transferCompleted(direction, bytes);
+	}
+
+	@Override
+	public void transferTimedOut(final String deviceModel) {
+		getMetrics(deviceModel).transferTimedOut();
+	}
+
+	@Override
+	public void retried(final String deviceModel) {
+		getMetrics(deviceModel).retried();
+	}
+
+	private DownloadMetrics register(final String deviceModel) {
+		final DownloadMetrics metrics = new DownloadMetrics(deviceModel);
+		final ObjectName name = getObjectName(deviceModel);
+		try {
+			if(server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(metrics, name);
+		} catch(JMException e) {
+			//The metrics are still counted, they are only not visible over JMX
+		}
+		return metrics;
+	}
+}
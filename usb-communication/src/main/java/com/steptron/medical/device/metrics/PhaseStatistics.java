@@ -0,0 +1,96 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.metrics;
+
+/**
+ * The Class PhaseStatistics is a snapshot of the latencies of one phase of the downloads.
+ */
+public class PhaseStatistics {
+
+	private static final double NANOS_PER_MILLI = 1_000_000d;
+
+	private final long count;
+	private final long failures;
+	private final long totalNanos;
+	private final long maxNanos;
+
+	/**
+	 * Instantiates new phase statistics.
+	 *
+	 * @param count the number of times the phase ended
+	 * @param failures the number of times the phase failed
+	 * @param totalNanos the total nanoseconds of the phase
+	 * @param maxNanos the longest the phase took in nanoseconds
+	 */
+	public PhaseStatistics(final long count, final long failures, final long totalNanos, final long maxNanos) {
+		this.count = count;
+		this.failures = failures;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+	}
+
+	/**
+	 * Gets the number of times the phase ended, completed or failed.
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Gets the number of times the phase failed.
+	 *
+	 * @return the failures
+	 */
+	public long getFailures() {
+		return this.failures;
+	}
+
+	/**
+	 * Gets the total time of the phase in milliseconds.
+	 *
+	 * @return the total milliseconds
+	 */
+	public double getTotalMillis() {
+		return totalNanos / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Gets the mean time of the phase in milliseconds.
+	 *
+	 * @return the mean milliseconds, 0 if the phase never ended
+	 */
+	public double getMeanMillis() {
+		return count == 0 ? 0 : totalNanos / NANOS_PER_MILLI / count;
+	}
+
+	/**
+	 * Gets the longest time of the phase in milliseconds.
+	 *
+	 * @return the maximum milliseconds
+	 */
+	public double getMaxMillis() {
+		return maxNanos / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public String toString() {
+		return "PhaseStatistics [count=" + count + ", failures=" + failures + ", meanMillis=" + getMeanMillis() + ", maxMillis=" + getMaxMillis() + "]";
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * The Class AsyncDownload is the future of a download running on an executor.
+ * Cancelling it aborts the pending IRPs of the session the download has opened and interrupts the thread running the download,
+ * so the download fails at once instead of waiting for the device, and the session is closed instead of being pooled.
+ *
+ * @param <T> the type of the measurements downloaded
+ */
+final class AsyncDownload<T> extends CompletableFuture<T> {
+
+	private static final ThreadLocal<AsyncDownload<?>> CURRENT = new ThreadLocal<AsyncDownload<?>>();
+
+	private Thread thread;
+	private DeviceSession session;
+
+	/**
+	 * Runs the download on the executor.
+	 *
+	 * @param download the blocking download
+	 * @param executor the executor running the download
+	 * @return the future of the measurements
+	 */
+	static <T> AsyncDownload<T> start(final Callable<T> download, final Executor executor) {
+		final AsyncDownload<T> future = new AsyncDownload<T>();
+		executor.execute(() -> future.run(download));
+		return future;
+	}
+
+	/**
+	 * Registers the session opened by the download running on the current thread, if any, so it can be aborted on cancellation.
+	 *
+	 * @param session the session opened
+	 */
+	static void sessionOpened(final DeviceSession session) {
+		final AsyncDownload<?> download = CURRENT.get();
+		if(download != null) {
+			download.setSession(session);
+		}
+	}
+
+	/**
+	 * Unregisters the session closed by the download running on the current thread, if any.
+	 *
+	 * @param session the session closed
+	 */
+	static void sessionClosed(final DeviceSession session) {
+		final AsyncDownload<?> download = CURRENT.get();
+		if(download != null) {
+			download.clearSession(session);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.CompletableFuture#cancel(boolean)
+	 */
+	@Override
+	public boolean cancel(final boolean mayInterruptIfRunning) {
+		final boolean cancelled = super.cancel(mayInterruptIfRunning);
+		if(cancelled) {
+			abort();
+		}
+		return cancelled;
+	}
+
+	private void run(final Callable<T> download) {
+		synchronized(this) {
+			if(isDone()) {
+				return;
+			}
+			thread = Thread.currentThread();
+		}
+		CURRENT.set(this);
+		try {
+			complete(download.call());
+		} catch(Throwable e) {
+			completeExceptionally(e);
+		} finally {
+			CURRENT.remove();
+			synchronized(this) {
+				thread = null;
+				session = null;
+			}
+			//Do not leak the interrupt of a cancellation to the next task of the executor
+			if(isCancelled()) {
+				Thread.interrupted();
+			}
+		}
+	}
+
+	private synchronized void setSession(final DeviceSession session) {
+		this.session = session;
+		if(isCancelled()) {
+			session.getConnectionPipe().abortAllSubmissions();
+		}
+	}
+
+	private synchronized void clearSession(final DeviceSession session) {
+		if(this.session == session) {
+			this.session = null;
+		}
+	}
+
+	private synchronized void abort() {
+		if(session != null) {
+			session.getConnectionPipe().abortAllSubmissions();
+		}
+		if(thread != null) {
+			thread.interrupt();
+		}
+	}
+}
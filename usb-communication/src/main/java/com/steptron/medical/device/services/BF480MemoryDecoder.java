@@ -0,0 +1,127 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.steptron.medical.device.domain.BF480Measurement;
+import com.steptron.medical.device.domain.DecodeError;
+import com.steptron.medical.device.domain.DecodeErrorSink;
+import com.steptron.medical.device.util.BytesManipulator;
+
+/**
+ * The Class BF480MemoryDecoder decodes the readings of one user straight from the raw rows of the BF480 memory.
+ * The row readingStartByteNumber + n holds the field n (weight, body fat, water, muscles, date and time) of all the readings of the user,
+ * and the reading m of the field is the big-endian 16-bit value of the bytes 2m and 2m+1 of the row. Only the 6 rows of the user are read,
+ * so the memory is neither converted to integers nor transposed.
+ */
+public final class BF480MemoryDecoder {
+
+	private BF480MemoryDecoder() {
+	}
+
+	/**
+	 * Decodes the readings of the user in the order of the device memory until the first empty slot.
+	 *
+	 * @param rawReadings the rows of 128 bytes read from the device
+	 * @param readingStartByteNumber the row of the weights of the user, (user number - 1) * 6
+	 * @return the measurements of the user
+	 */
+	public static List<BF480Measurement> decodeUser(final byte[][] rawReadings, final int readingStartByteNumber) {
+		final List<BF480Measurement> measurements = new ArrayList<BF480Measurement>();
+		decodeUser(rawReadings, readingStartByteNumber, measurements::add);
+		return measurements;
+	}
+
+	/**
+	 * Decodes the readings of the user in the order of the device memory until the first empty slot and hands them to the consumer.
+	 *
+	 * @param rawReadings the rows of 128 bytes read from the device, only the 6 rows of the user are read
+	 * @param readingStartByteNumber the row of the weights of the user
+	 * @param consumer the consumer of the measurements
+	 */
+	public static void decodeUser(final byte[][] rawReadings, final int readingStartByteNumber, final Consumer<? super BF480Measurement> consumer) {
+		decodeUser(rawReadings, readingStartByteNumber, null, consumer);
+	}
+
+	/**
+	 * Decodes the readings of the user measured after the given time until the first empty slot and hands them to the consumer.
+	 * The date and time of each slot are compared as stored by the device, the slots measured at or before the given time are not decoded.
+	 *
+	 * @param rawReadings the rows of 128 bytes read from the device, only the 6 rows of the user are read
+	 * @param readingStartByteNumber the row of the weights of the user
+	 * @param measuredAfter the time after which the readings are decoded, null to decode all the readings
+	 * @param consumer the consumer of the measurements
+	 */
+	public static void decodeUser(final byte[][] rawReadings, final int readingStartByteNumber, final Instant measuredAfter, final Consumer<? super BF480Measurement> consumer) {
+		decodeUser(rawReadings, readingStartByteNumber, measuredAfter, consumer, null);
+	}
+
+	/**
+	 * Decodes the readings of the user measured after the given time until the first empty slot and hands them to the consumer,
+	 * rejecting the readings whose date or time does not exist to the sink. The frame number reported to the sink is the slot of the reading.
+	 *
+	 * @param rawReadings the rows of 128 bytes read from the device, only the 6 rows of the user are read
+	 * @param readingStartByteNumber the row of the weights of the user
+	 * @param measuredAfter the time after which the readings are decoded, null to decode all the readings
+	 * @param consumer the consumer of the measurements
+	 * @param errorSink the sink of the rejected readings, null to hand the readings without measured time to the consumer
+	 */
+	public static void decodeUser(final byte[][] rawReadings, final int readingStartByteNumber, final Instant measuredAfter, final Consumer<? super BF480Measurement> consumer, final DecodeErrorSink errorSink) {
+		final long knownTimestamp = measuredAfter == null ? -1 : toTimestamp(measuredAfter);
+		final int[] reading = new int[BF480USBService.NUMBER_OF_FIELDS];
+		for(int readingsCounter = 0; readingsCounter < BF480USBService.MAX_NUMBER_OF_READINGS; readingsCounter++) {
+			final int date = BytesManipulator.convertBytesToInteger(rawReadings[readingStartByteNumber + 4], readingsCounter * 2);
+			if(date == 0) {
+				//break when it is indicated that there are no more readings available
+				break;
+			}
+			final int time = BytesManipulator.convertBytesToInteger(rawReadings[readingStartByteNumber + 5], readingsCounter * 2);
+			if(((long) date << 16 | time) <= knownTimestamp) {
+				continue;
+			}
+			for(int fieldCounter = 0; fieldCounter < BF480USBService.NUMBER_OF_FIELDS; fieldCounter++) {
+				reading[fieldCounter] = BytesManipulator.convertBytesToInteger(rawReadings[readingStartByteNumber + fieldCounter], readingsCounter * 2);
+			}
+			final BF480Measurement measurement = new BF480Measurement(reading, 0);
+			if(errorSink != null && measurement.getMeasuredTime() == null) {
+				errorSink.rejected(readingsCounter, DecodeError.INVALID_DATE_TIME);
+			} else {
+				consumer.accept(measurement);
+			}
+		}
+	}
+
+	/**
+	 * Packs the time the way the device stores it, the date ((year - 1920) &lt;&lt; 9 | month &lt;&lt; 5 | day) in the high 16 bits
+	 * and the time (hour &lt;&lt; 8 | minute) in the low 16 bits, so that the packed timestamps compare in chronological order.
+	 *
+	 * @param measuredTime the measured time
+	 * @return the packed timestamp
+	 */
+	private static long toTimestamp(final Instant measuredTime) {
+		final LocalDateTime time = LocalDateTime.ofInstant(measuredTime, ZoneOffset.UTC);
+		final long date = (time.getYear() - 1920) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+		return date << 16 | time.getHour() << 8 | time.getMinute();
+	}
+}
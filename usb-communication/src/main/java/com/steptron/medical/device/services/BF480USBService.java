@@ -17,22 +17,36 @@
  */
 package com.steptron.medical.device.services;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 import javax.usb.UsbControlIrp;
 import javax.usb.UsbDevice;
 import javax.usb.UsbException;
-import javax.usb.UsbIrp;
 import javax.usb.UsbPipe;
 
 import org.usb4java.javax.DeviceNotFoundException;
 
+import com.steptron.medical.device.archive.BF480Archive;
 import com.steptron.medical.device.domain.BF480Measurement;
+import com.steptron.medical.device.domain.BF480MeasurementStore;
+import com.steptron.medical.device.domain.BF480MeasurementView;
+import com.steptron.medical.device.domain.DecodeErrorSink;
+import com.steptron.medical.device.domain.MeasurementTimeline;
 import com.steptron.medical.device.exception.DeviceConnectionException;
-import com.steptron.medical.device.util.BytesManipulator;
+import com.steptron.medical.device.util.EpochTime;
 
 /**
  * The Class BF480USBService extends an abstract class USBService.
@@ -48,83 +62,374 @@ public class BF480USBService extends USBService {
 	/** The Constant MAX_NUMBER_OF_READINGS represents that the beurer BF480 has maximum of 64 readings stored per user. */
 	public static final int MAX_NUMBER_OF_READINGS = 64;
 
+	/** The Constant NUMBER_OF_USERS represents that the beurer BF480 stores the readings of 10 users. */
+	public static final int NUMBER_OF_USERS = 10;
+
+	/** The Constant NUMBER_OF_FIELDS of a reading: weight, body fat, water, muscles, date and time. */
+	public static final int NUMBER_OF_FIELDS = 6;
+
+	/** The Constant READ_TIMEOUT_MILLIS is the time the device has to send a row of its memory. */
+	public static final long READ_TIMEOUT_MILLIS = 3000;
+
+	/** The sink of the readings whose date or time does not exist, they are left out of the measurements as they cannot be sorted. */
+	private volatile DecodeErrorSink decodeErrorSink = DecodeErrorSink.IGNORE;
+
+	/**
+	 * Sets the sink of the readings whose date or time does not exist, which are left out of the downloaded measurements.
+	 *
+	 * @param decodeErrorSink the decode error sink, {@link DecodeErrorSink#IGNORE} to leave them out silently
+	 */
+	public void setDecodeErrorSink(final DecodeErrorSink decodeErrorSink) {
+		this.decodeErrorSink = decodeErrorSink;
+	}
+
+	/**
+	 * Gets the sink of the readings whose date or time does not exist.
+	 *
+	 * @return the decode error sink
+	 */
+	public DecodeErrorSink getDecodeErrorSink() {
+		return this.decodeErrorSink;
+	}
+
 	@Override
-	public Collection<?> getMeasurements(String user) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException {
-		//User number (1 to 10) for which readings needs to be transferred
-		int userNumber = Integer.valueOf(user);
+	public Collection<?> getMeasurements(String user) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
+		List<BF480Measurement> measurements = new ArrayList<BF480Measurement>();
+		streamMeasurements(user, measurements::add);
 
-		//This variable will be used to identify starting point in a transposed array for the given user
-		int readingStartByteNumber = (userNumber - 1) * 6;
+		//Sort the readings according to measured time
+		Collections.sort(measurements);
+		return measurements;
+	}
 
-		//Find Beurer BM55 USB device with VENDOR_ID = (short) 0x04d9 and PRODUCT_ID = (short) 0x8010
+	/**
+	 * Downloads the measurements of the user into a timeline, which answers the time range and latest queries without sorting again.
+	 *
+	 * @param user the user number (1 to 10) for which readings needs to be transferred
+	 * @return the timeline of the measurements of the user
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public MeasurementTimeline<BF480Measurement> getMeasurementTimeline(final String user) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
 		List<BF480Measurement> measurements = new ArrayList<BF480Measurement>();
-		UsbDevice device = getUSBDevice(VENDOR_ID, PRODUCT_ID);
+		streamMeasurements(user, measurements::add);
+		return MeasurementTimeline.ofBF480(measurements);
+	}
 
-		//Get USB connection with interface number 0 and endpoint number -127
-		UsbPipe connectionPipe = getUSBConnection(device, 0, -127);
-		byte requestType = 33;
-		byte request = 0x09;
-		short value = 521;
-		short index = 0;
+	/**
+	 * Streams the measurements of the user, in the order of the device memory, to the consumer.
+	 * The device sends its memory one field of one user per row, so the measurements of the user are decoded and handed over
+	 * as soon as the 6 rows of the user are read, without waiting for the rows of the following users.
+	 * Only the rows of the user are kept, the rows of the other users are dropped as they are read.
+	 * The readings whose date or time does not exist are rejected to the decode error sink.
+	 *
+	 * @param user the user number (1 to 10) for which readings needs to be transferred
+	 * @param consumer the consumer of the measurements
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public void streamMeasurements(final String user, final Consumer<? super BF480Measurement> consumer) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
+		//User number (1 to 10) for which readings needs to be transferred
+		int userNumber = Integer.valueOf(user);
 
-		//Get usbControl with the above specified parameter. This object is needed to send data to the USB device
-		UsbControlIrp usbControl = getUSBControl(device, requestType, request, value, index);
-		try {
+		//The row of the device memory holding the weights of the given user, the following 5 rows hold the other fields of the user
+		int firstUserRow = (userNumber - 1) * NUMBER_OF_FIELDS;
+
+		//Only the rows of the user are kept, the user readings are decoded as soon as the last of them is read
+		byte[][] userRows = new byte[NUMBER_OF_FIELDS][];
+		readMemory((row, rowCounter) -> {
+			if(rowCounter >= firstUserRow && rowCounter < firstUserRow + NUMBER_OF_FIELDS) {
+				userRows[rowCounter - firstUserRow] = row;
+				if(rowCounter == firstUserRow + NUMBER_OF_FIELDS - 1) {
+					BF480MemoryDecoder.decodeUser(userRows, 0, null, consumer, decodeErrorSink);
+				}
+			}
+		});
+	}
 
-			//Open the USB communication
-			connectionPipe.open();
+	/**
+	 * Gets the measurements of all the 10 users from a single read of the device memory.
+	 * The readings whose date or time does not exist are rejected to the decode error sink.
+	 *
+	 * @return the measurements sorted according to measured time, keyed by user number (1 to 10), empty for the users without readings
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public Map<Integer, List<BF480Measurement>> getAllUsersMeasurements() throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
+		byte[][] rawReadings = new byte[MAX_NUMBER_OF_READINGS][];
+		readMemory((row, rowCounter) -> rawReadings[rowCounter] = row);
 
-			//prepare the device to communicate over the USB by writing {0x10, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00} byte array to device.
-			//Read the data available on read port after writing data to the USB device.
-			initialiseDevice(device, usbControl, connectionPipe);
+		Map<Integer, List<BF480Measurement>> measurements = new LinkedHashMap<Integer, List<BF480Measurement>>();
+		for(int userNumber = 1; userNumber <= NUMBER_OF_USERS; userNumber++) {
+			List<BF480Measurement> userMeasurements = new ArrayList<BF480Measurement>();
+			BF480MemoryDecoder.decodeUser(rawReadings, (userNumber - 1) * NUMBER_OF_FIELDS, null, userMeasurements::add, decodeErrorSink);
 
-			//No need to get number of readings as maximum number of readings for this device are 64
+			//Sort the readings according to measured time
+			Collections.sort(userMeasurements);
+			measurements.put(userNumber, userMeasurements);
+		}
+		return measurements;
+	}
 
-			//Read the data from USB device by iterating 64 times and collect the readings in 128 byte array
-			//Read 128 x 64 data from serial interface
-			byte[][] rawReadings = new byte[BF480USBService.MAX_NUMBER_OF_READINGS][BF480USBService.BYTE_ARRAY_LENGTH_128];
-			for(int readingsCounter = 0; readingsCounter < BF480USBService.MAX_NUMBER_OF_READINGS; readingsCounter++) {
-				rawReadings[readingsCounter] = readData(connectionPipe, 128);
-			}
+	/**
+	 * Reads the device memory once and appends the readings of all the 10 users to the columnar store, without creating a measurement per reading.
+	 * The readings are appended user by user, in the order of the device memory.
+	 *
+	 * @param store the store to which the readings are appended
+	 * @return the number of readings appended
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public int readMeasurementsInto(final BF480MeasurementStore store) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
+		ByteBuffer memory = readMemoryDump();
 
-			//Each value is represented with 2 adjacent bytes. Convert 2 adjacent bytes to one integer. e.g. [W0, W0, W1, W1,...W59,W59] will be converted to [W0,W1,... W59]
-			//Convert 128 x 64 data to 64 x 64
-			int[][] readings = new int[BF480USBService.MAX_NUMBER_OF_READINGS][BF480USBService.BYTE_ARRAY_LENGTH_128 / 2];
-			for(int readingsCounter = 0; readingsCounter < BF480USBService.MAX_NUMBER_OF_READINGS; readingsCounter++) {
-				readings[readingsCounter] = BytesManipulator.convertBytesToIntegers(rawReadings[readingsCounter]);
+		int size = store.size();
+		BF480MeasurementView view = new BF480MeasurementView();
+		for(int userNumber = 1; userNumber <= NUMBER_OF_USERS; userNumber++) {
+			//The slots after the last reading of the user are empty
+			for(int readingsCounter = 0; readingsCounter < MAX_NUMBER_OF_READINGS && !view.wrap(memory, BF480MeasurementView.getOffset(userNumber, readingsCounter)).isEmpty(); readingsCounter++) {
+				store.append(userNumber, view);
 			}
+		}
+		return store.size() - size;
+	}
 
-			//Transpose the data matrix to retrieve each patients information
-			int[][] userReadings = BytesManipulator.transpose(readings);
+	/**
+	 * Reads the device memory once and appends the readings of the user which are not archived yet, in the order they were measured,
+	 * as the 12 bytes of their fields. The readings measured before the last reading of the archive cannot be appended, they are
+	 * left out, see {@link #archiveMeasurements(int, BF480Archive, Consumer)} to be handed them.
+	 *
+	 * @param userNumber the user number (1 to 10)
+	 * @param archive the archive of the user
+	 * @return the number of readings appended
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 * @throws IOException Signals that an I/O exception has occurred while appending to the archive.
+	 */
+	public int archiveMeasurements(final int userNumber, final BF480Archive archive) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException, IOException {
+		return archiveMeasurements(userNumber, archive, measurement -> {
+		});
+	}
 
+	/**
+	 * Reads the device memory once and appends the readings of the user which are not archived yet, in the order they were measured,
+	 * as the 12 bytes of their fields. The slots of the user are not in the order of the measured times, so the new readings are sorted
+	 * by measured time and then slot before they are appended. A reading measured in the same minute as the last archived reading is
+	 * appended unless it is already archived. A reading which is not archived but was measured before the last reading of the archive
+	 * cannot be appended, it is handed to the consumer instead.
+	 *
+	 * @param userNumber the user number (1 to 10)
+	 * @param archive the archive of the user
+	 * @param unarchivedConsumer the consumer of the readings measured before the last reading of the archive which are not archived,
+	 *            and of the readings whose date or time does not exist
+	 * @return the number of readings appended
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 * @throws IOException Signals that an I/O exception has occurred while appending to the archive.
+	 */
+	public int archiveMeasurements(final int userNumber, final BF480Archive archive, final Consumer<BF480Measurement> unarchivedConsumer) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException, IOException {
+		ByteBuffer memory = readMemoryDump();
 
-			//convert all 64 readings to an object by iterating over rows of the matrix
-			for(int readingsCounter = 0; readingsCounter < BF480USBService.MAX_NUMBER_OF_READINGS; readingsCounter++) {
-				if(userReadings[readingsCounter][readingStartByteNumber + 4] == 0) {
-					//break when it is indicated that there are no more readings available
-					break;
+		//The slots of the user are not in the order of the measured times, the new readings are sorted by measured time and then slot
+		long archivedUntil = archive.getLastMeasuredTime();
+		long[] newReadings = new long[MAX_NUMBER_OF_READINGS];
+		int numberOfNewReadings = 0;
+		byte[] record = new byte[BF480MeasurementView.RECORD_LENGTH];
+		BF480MeasurementView view = new BF480MeasurementView();
+		for(int readingsCounter = 0; readingsCounter < MAX_NUMBER_OF_READINGS && !view.wrap(memory, BF480MeasurementView.getOffset(userNumber, readingsCounter)).isEmpty(); readingsCounter++) {
+			long measuredTime = view.getValidMeasuredTime(ZoneOffset.UTC);
+			if(measuredTime == EpochTime.INVALID) {
+				//A reading whose date or time does not exist has no place in the archive
+				unarchivedConsumer.accept(new BF480Measurement(view.getWeight(), view.getBodyFat(), view.getWater(), view.getMuscles(), null));
+			} else if(measuredTime > archivedUntil) {
+				newReadings[numberOfNewReadings++] = measuredTime * MAX_NUMBER_OF_READINGS + readingsCounter;
+			} else if(!archive.contains(copyRecord(memory, view.getOffset(), record))) {
+				if(measuredTime == archivedUntil) {
+					newReadings[numberOfNewReadings++] = measuredTime * MAX_NUMBER_OF_READINGS + readingsCounter;
+				} else {
+					unarchivedConsumer.accept(view.toMeasurement());
 				}
-				//Pass the transposed byte array along with starting position for the give user to BF480Measurement constructor which will decode the byte array to different parameters of selected measurement.
-				measurements.add(new BF480Measurement(userReadings[readingsCounter], readingStartByteNumber));
 			}
-			//No need to terminate the device communication for BF480
+		}
+		Arrays.sort(newReadings, 0, numberOfNewReadings);
 
-			//Sort the readings according to measured time
-			Collections.sort(measurements);
-		} finally {
-			//Close the USB device communication
-			if(connectionPipe != null && connectionPipe.isOpen()) {
-				try {
-					connectionPipe.close();
-					connectionPipe.getUsbEndpoint().getUsbInterface().release();
-				} catch(UsbException e) {
-					//Do nothing
-				}
+		for(int newReadingsCounter = 0; newReadingsCounter < numberOfNewReadings; newReadingsCounter++) {
+			int offset = BF480MeasurementView.getOffset(userNumber, Math.floorMod(newReadings[newReadingsCounter], MAX_NUMBER_OF_READINGS));
+			archive.append(copyRecord(memory, offset, record));
+		}
+		return numberOfNewReadings;
+	}
+
+	/**
+	 * Copies the 6 fields of the reading at the offset of the memory dump next to each other.
+	 *
+	 * @param memory the memory dump
+	 * @param offset the offset of the weight of the reading
+	 * @param record the array of 12 bytes receiving the fields
+	 * @return the record
+	 */
+	private static byte[] copyRecord(final ByteBuffer memory, final int offset, final byte[] record) {
+		for(int fieldCounter = 0; fieldCounter < NUMBER_OF_FIELDS; fieldCounter++) {
+			record[fieldCounter * 2] = memory.get(offset + fieldCounter * BYTE_ARRAY_LENGTH_128);
+			record[fieldCounter * 2 + 1] = memory.get(offset + fieldCounter * BYTE_ARRAY_LENGTH_128 + 1);
+		}
+		return record;
+	}
+
+	/**
+	 * Gets the measurements of all the 10 users taken since the last sync of the device, from a single read of the device memory.
+	 * The scale has no command to get the number of readings, so the whole memory is read, but the slots measured at or before
+	 * the newest measurement of the user at the last sync are not decoded and only the new measurements are sorted.
+	 * The readings whose date or time does not exist are rejected to the decode error sink, they do not move the checkpoints.
+	 * The checkpoints of the users are saved once the memory was read.
+	 *
+	 * @param store the store of the checkpoints, one per user slot of the device
+	 * @return the new measurements sorted according to measured time, keyed by user number (1 to 10), empty for the users without new readings
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 * @throws IOException Signals that an I/O exception has occurred while loading or saving the checkpoints.
+	 */
+	public Map<Integer, List<BF480Measurement>> syncMeasurements(final SyncCheckpointStore store) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException, IOException {
+		String deviceKey = getDeviceKey(getUSBDevice(VENDOR_ID, PRODUCT_ID));
+		byte[][] rawReadings = new byte[MAX_NUMBER_OF_READINGS][];
+		readMemory((row, rowCounter) -> rawReadings[rowCounter] = row);
+
+		Map<Integer, List<BF480Measurement>> measurements = new LinkedHashMap<Integer, List<BF480Measurement>>();
+		for(int userNumber = 1; userNumber <= NUMBER_OF_USERS; userNumber++) {
+			String userKey = deviceKey + "#" + userNumber;
+			SyncCheckpoint checkpoint = store.load(userKey);
+			List<BF480Measurement> userMeasurements = new ArrayList<BF480Measurement>();
+			BF480MemoryDecoder.decodeUser(rawReadings, (userNumber - 1) * NUMBER_OF_FIELDS, checkpoint == null ? null : checkpoint.getLastMeasuredTime(), userMeasurements::add, decodeErrorSink);
+
+			//Sort the new readings according to measured time
+			Collections.sort(userMeasurements);
+			if(!userMeasurements.isEmpty()) {
+				int readingCount = (checkpoint == null ? 0 : checkpoint.getReadingCount()) + userMeasurements.size();
+				store.save(userKey, new SyncCheckpoint(readingCount, userMeasurements.get(userMeasurements.size() - 1).getMeasuredTime()));
 			}
+			measurements.put(userNumber, userMeasurements);
 		}
 		return measurements;
 	}
 
+	/**
+	 * Reads the 64 rows of 128 bytes of the device memory and hands each row to the consumer with its row number as it is read.
+	 *
+	 * @param rowConsumer the consumer of the rows
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private ByteBuffer readMemoryDump() throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
+		ByteBuffer memory = ByteBuffer.allocate(BF480MeasurementView.MEMORY_LENGTH);
+		readMemory((row, rowCounter) -> {
+			memory.position(rowCounter * BYTE_ARRAY_LENGTH_128);
+			memory.put(row);
+		});
+		return memory;
+	}
+
+	private void readMemory(final ObjIntConsumer<byte[]> rowConsumer) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
+		//Find Beurer BM55 USB device with VENDOR_ID = (short) 0x04d9 and PRODUCT_ID = (short) 0x8010
+		//Open the session with interface number 0 and endpoint number -127, reusing the pooled session if there is one
+		DeviceSession session = openSession(VENDOR_ID, PRODUCT_ID);
+		UsbDevice device = session.getDevice();
+		UsbPipe connectionPipe = session.getConnectionPipe();
+		UsbControlIrp usbControl = session.getUsbControl();
+		boolean completed = false;
+		//Times the phases of the download for the metrics listener, if one is set
+		DownloadPhaseTimer timer = startPhaseTimer();
+		try {
+
+			//prepare the device to communicate over the USB by writing {0x10, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00} byte array to device.
+			//Read the data available on read port after writing data to the USB device.
+			timer.start(DownloadPhase.INITIALISE);
+			initialiseDevice(device, usbControl, connectionPipe);
+
+			//No need to get number of readings as maximum number of readings for this device are 64
+
+			//Read the data from USB device by iterating 64 times, each row of 128 bytes holds one field of the 64 readings of one user.
+			//All the rows are read so that nothing is left in the pipe for the next download.
+			timer.start(DownloadPhase.READINGS);
+			for(int rowCounter = 0; rowCounter < BF480USBService.MAX_NUMBER_OF_READINGS; rowCounter++) {
+				rowConsumer.accept(readData(connectionPipe, BYTE_ARRAY_LENGTH_128), rowCounter);
+			}
+			//No need to terminate the device communication for BF480
+			completed = true;
+		} finally {
+			timer.stop(completed);
+			//Close the USB device communication, or keep it open in the session pool for the next download
+			closeSession(session, completed);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.services.USBService#getMeasurementsAsync(java.lang.String, java.util.concurrent.Executor)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<BF480Measurement>> getMeasurementsAsync(final String user, final Executor executor) {
+		return downloadAsync(() -> (List<BF480Measurement>) getMeasurements(user), executor);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.services.USBService#getMeasurementsAsync(java.lang.String)
+	 */
+	@Override
+	public CompletableFuture<List<BF480Measurement>> getMeasurementsAsync(final String user) {
+		return getMeasurementsAsync(user, DownloadExecutors.getDefaultExecutor());
+	}
+
+	/**
+	 * Downloads the measurements of the user from every attached device concurrently, each device on its own task of the executor.
+	 *
+	 * @param user the user for which the measurements are downloaded
+	 * @param executor the executor running the downloads
+	 * @return the future of the downloads, one per device, completed once all the downloads are completed
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<DeviceDownload<List<BF480Measurement>>>> getMeasurementsFromAllDevices(final String user, final Executor executor) throws SecurityException, UsbException {
+		return downloadFromAllDevices(VENDOR_ID, PRODUCT_ID, () -> (List<BF480Measurement>) getMeasurements(user), executor);
+	}
+
+	/**
+	 * Downloads the measurements of the user from every attached device concurrently, each device on a thread of its own,
+	 * a virtual thread if the Java runtime supports them.
+	 *
+	 * @param user the user for which the measurements are downloaded
+	 * @return the future of the downloads, one per device, completed once all the downloads are completed
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 */
+	public CompletableFuture<List<DeviceDownload<List<BF480Measurement>>>> getMeasurementsFromAllDevices(final String user) throws SecurityException, UsbException {
+		return getMeasurementsFromAllDevices(user, DownloadExecutors.getDefaultExecutor());
+	}
+
 	/* (non-Javadoc)
 	 * @see org.medipi.devices.drivers.service.USBService#initialiseDevice(javax.usb.UsbDevice, javax.usb.UsbControlIrp, javax.usb.UsbPipe)
 	 */
@@ -146,15 +451,9 @@ public class BF480USBService extends USBService {
 	 */
 	@Override
 	public byte[] readData(final UsbPipe connectionPipe, final int numberOfBytes) throws UsbException {
-		final byte[] data = new byte[numberOfBytes];
-		final UsbIrp irp = connectionPipe.asyncSubmit(data);
-        irp.waitUntilComplete(3000);
-
-        //This condition is just to check if the data is being read properly.
-        if (irp.isUsbException()) {
-        	throw new DeviceConnectionException("Unplug and then replug in the Beurer BF480 Diagnostic Scale and press download");
-        }
-		return data;
+		//This is just to check if the data is being read properly. A device which did not send the row in time
+		//or failed is reported with the timeout or the USB exception of the transfer as the cause.
+		return awaitData(readDataAsync(connectionPipe, numberOfBytes, READ_TIMEOUT_MILLIS), "Unplug and then replug in the Beurer BF480 Diagnostic Scale and press download");
 	}
 
 	/* (non-Javadoc)
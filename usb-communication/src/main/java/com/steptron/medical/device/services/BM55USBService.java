@@ -17,22 +17,40 @@
  */
 package com.steptron.medical.device.services;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 import javax.usb.UsbControlIrp;
 import javax.usb.UsbDevice;
 import javax.usb.UsbException;
-import javax.usb.UsbIrp;
 import javax.usb.UsbPipe;
 
 import org.usb4java.javax.DeviceNotFoundException;
 
+import com.steptron.medical.device.archive.BM55Archive;
 import com.steptron.medical.device.domain.BM55Measurement;
+import com.steptron.medical.device.domain.BM55MeasurementStore;
+import com.steptron.medical.device.domain.BM55MeasurementView;
 import com.steptron.medical.device.domain.BM55User;
+import com.steptron.medical.device.domain.MeasurementTimeline;
 import com.steptron.medical.device.exception.DeviceConnectionException;
+import com.steptron.medical.device.jfr.FlightRecorderEvents;
+import com.steptron.medical.device.jfr.InterruptInEvent;
+import com.steptron.medical.device.util.EpochTime;
 
 /**
  * The Class BM55USBService extends an abstract class USBService.
@@ -45,71 +63,456 @@ public class BM55USBService extends USBService {
 	public static final short VENDOR_ID = (short) 0x0c45;
 	public static final short PRODUCT_ID = (short) 0x7406;
 
+	/** The Constant READ_TIMEOUT_MILLIS is the time the device has to answer a command. */
+	public static final long READ_TIMEOUT_MILLIS = 500;
+
+	private static final String REPLUG_MESSAGE = "Unplug and then replug in the Beurer BM55 Blood Pressure Monitor and press download";
+
+	/** The number of readings requested before waiting for their responses, 1 for the lock-step download. */
+	private int pipelineDepth = 1;
+
 	@Override
 	public Collection<?> getMeasurements(String user) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
 		//User A or B for which readings needs to be transferred
 		BM55User readingsUser = BM55User.valueOf(user);
 		List<BM55Measurement> measurements = new ArrayList<BM55Measurement>();
 
-		//Find Beurer BM55 USB device with VENDOR_ID = (short) 0x0c45 and PRODUCT_ID = (short) 0x7406
-		UsbDevice device = getUSBDevice(VENDOR_ID, PRODUCT_ID);
+		//Add the measurement to the list only if the user passed to this method matches with decoded BM55Measurement user attribute.
+		readReadings(null, measurement -> {
+			if(measurement.getUser().equals(readingsUser)) {
+				measurements.add(measurement);
+			}
+		});
+		return measurements;
+	}
 
-		//Get USB connection with interface number 0 and endpoint number -127
-		UsbPipe connectionPipe = getUSBConnection(device, 0, -127);
-		byte requestType = 33;
-		byte request = 0x09;
-		short value = 521;
-		short index = 0;
+	/**
+	 * Downloads the measurements of the user into a timeline, which answers the time range and latest queries without sorting again.
+	 *
+	 * @param user the user A or B for which readings needs to be transferred
+	 * @return the timeline of the measurements of the user
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public MeasurementTimeline<BM55Measurement> getMeasurementTimeline(final String user) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
+		return MeasurementTimeline.ofBM55(getAllUsersMeasurements().get(BM55User.valueOf(user)));
+	}
 
-		//Get usbControl with the above specified parameter. This object is needed to send data to the USB device
-		UsbControlIrp usbControl = getUSBControl(device, requestType, request, value, index);
-		try {
+	/**
+	 * Gets the measurements of both the users A and B with a single download, the device memory holds the readings of both users.
+	 *
+	 * @return the measurements in the order of the device memory, keyed by user, empty for a user without readings
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public Map<BM55User, List<BM55Measurement>> getAllUsersMeasurements() throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
+		Map<BM55User, List<BM55Measurement>> measurements = newUsersMeasurements();
+		readReadings(null, measurement -> measurements.get(measurement.getUser()).add(measurement));
+		return measurements;
+	}
+
+	/**
+	 * Downloads the readings stored since the last sync of the device, for both the users A and B.
+	 * The checkpoint of the last sync is loaded from the store, only the readings after it are requested and the new checkpoint
+	 * is saved once the download completed. Everything is downloaded again when the device has fewer readings than at the last sync
+	 * or the reading at the checkpoint is not the one downloaded last time, which is the case when the memory was cleared or wrapped.
+	 *
+	 * @param store the store of the checkpoints
+	 * @return the new measurements in the order of the device memory, keyed by user, empty for a user without new readings
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 * @throws IOException Signals that an I/O exception has occurred while loading or saving the checkpoint.
+	 */
+	public Map<BM55User, List<BM55Measurement>> syncMeasurements(final SyncCheckpointStore store) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException, IOException {
+		String deviceKey = getDeviceKey(getUSBDevice(VENDOR_ID, PRODUCT_ID));
+		SyncCheckpoint checkpoint = store.load(deviceKey);
 
-			//Open the USB communication
-			connectionPipe.open();
+		List<BM55Measurement> newMeasurements = new ArrayList<BM55Measurement>();
+		int numberOfReadings = readReadings(checkpoint, newMeasurements::add);
+
+		Instant lastMeasuredTime = checkpoint == null ? null : checkpoint.getLastMeasuredTime();
+		if(!newMeasurements.isEmpty()) {
+			lastMeasuredTime = newMeasurements.get(newMeasurements.size() - 1).getMeasuredTime();
+		}
+		store.save(deviceKey, new SyncCheckpoint(numberOfReadings, lastMeasuredTime));
+
+		Map<BM55User, List<BM55Measurement>> measurements = newUsersMeasurements();
+		for(BM55Measurement measurement : newMeasurements) {
+			measurements.get(measurement.getUser()).add(measurement);
+		}
+		return measurements;
+	}
+
+	/**
+	 * Downloads the readings of both the users A and B into the columnar store, without creating a measurement per reading.
+	 *
+	 * @param store the store to which the readings are appended in the order of the device memory
+	 * @return the number of readings appended
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public int readMeasurementsInto(final BM55MeasurementStore store) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
+		int size = store.size();
+		readRawReadings(null, store::append);
+		return store.size() - size;
+	}
+
+	/**
+	 * Downloads the readings of both the users A and B and appends the readings which are not archived yet, in the order they were measured,
+	 * as the 8 bytes read from the device. The readings measured before the last reading of the archive cannot be appended, they are
+	 * left out, see {@link #archiveMeasurements(BM55Archive, Consumer)} to be handed them.
+	 *
+	 * @param archive the archive of the device
+	 * @return the number of readings appended
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 * @throws IOException Signals that an I/O exception has occurred while appending to the archive.
+	 */
+	public int archiveMeasurements(final BM55Archive archive) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException, IOException {
+		return archiveMeasurements(archive, measurement -> {
+		});
+	}
+
+	/**
+	 * Downloads the readings of both the users A and B and appends the readings which are not archived yet, in the order they were measured,
+	 * as the 8 bytes read from the device. The memory of the device is not in the order of the measured times once its clock was set back,
+	 * so the new readings are sorted by measured time and then reading number before they are appended. A reading which is not archived
+	 * but was measured before the last reading of the archive cannot be appended, it is handed to the consumer instead.
+	 *
+	 * @param archive the archive of the device
+	 * @param unarchivedConsumer the consumer of the readings measured before the last reading of the archive which are not archived,
+	 *            and of the readings whose date or time does not exist
+	 * @return the number of readings appended
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 * @throws IOException Signals that an I/O exception has occurred while appending to the archive.
+	 */
+	public int archiveMeasurements(final BM55Archive archive, final Consumer<BM55Measurement> unarchivedConsumer) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException, IOException {
+		//The reading buffer is reused for the next reading, so the readings are copied
+		List<byte[]> readings = new ArrayList<byte[]>();
+		readRawReadings(null, reading -> readings.add(reading.clone()));
+
+		//The reading numbers are below 256 as the device returns the number of readings in a byte
+		long archivedUntil = archive.getLastMeasuredTime();
+		long[] newReadings = new long[readings.size()];
+		int numberOfNewReadings = 0;
+		BM55MeasurementView view = new BM55MeasurementView();
+		for(int readingsCounter = 0; readingsCounter < readings.size(); readingsCounter++) {
+			byte[] reading = readings.get(readingsCounter);
+			long measuredTime = view.wrap(ByteBuffer.wrap(reading), 0).getValidMeasuredTime(ZoneOffset.UTC);
+			if(measuredTime == EpochTime.INVALID) {
+				//A reading whose date or time does not exist has no place in the archive
+				unarchivedConsumer.accept(new BM55Measurement(reading));
+			} else if(measuredTime > archivedUntil) {
+				newReadings[numberOfNewReadings++] = measuredTime << 8 | readingsCounter;
+			} else if(!archive.contains(reading)) {
+				if(measuredTime == archivedUntil) {
+					newReadings[numberOfNewReadings++] = measuredTime << 8 | readingsCounter;
+				} else {
+					unarchivedConsumer.accept(new BM55Measurement(reading));
+				}
+			}
+		}
+		Arrays.sort(newReadings, 0, numberOfNewReadings);
+
+		for(int newReadingsCounter = 0; newReadingsCounter < numberOfNewReadings; newReadingsCounter++) {
+			archive.append(readings.get((int) (newReadings[newReadingsCounter] & 0xff)));
+		}
+		return numberOfNewReadings;
+	}
+
+	/**
+	 * Downloads the readings stored in the device and hands them to the consumer in the order of the device memory.
+	 *
+	 * @param checkpoint the checkpoint of the last sync to download the readings after it only, null to download all the readings
+	 * @param consumer the consumer of the measurements
+	 * @return the number of readings the device reported
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private int readReadings(final SyncCheckpoint checkpoint, final Consumer<BM55Measurement> consumer) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
+		//Pass each received byte array to BM55Measurement constructor which will decode the byte array to different attributes.
+		return readRawReadings(checkpoint, reading -> consumer.accept(new BM55Measurement(reading)));
+	}
+
+	/**
+	 * Downloads the readings stored in the device and hands their 8 bytes to the consumer in the order of the device memory.
+	 * The bytes are only valid until the consumer returns, the next reading is read into the same buffer.
+	 *
+	 * @param checkpoint the checkpoint of the last sync to download the readings after it only, null to download all the readings
+	 * @param readingConsumer the consumer of the reading bytes
+	 * @return the number of readings the device reported
+	 * @throws DeviceNotFoundException the device not found exception
+	 * @throws DeviceConnectionException the device connection exception
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private int readRawReadings(final SyncCheckpoint checkpoint, final Consumer<byte[]> readingConsumer) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException {
+		//Find Beurer BM55 USB device with VENDOR_ID = (short) 0x0c45 and PRODUCT_ID = (short) 0x7406
+		//and open the session with interface number 0 and endpoint number -127, reusing the pooled session if there is one
+		DeviceSession session = openSession(VENDOR_ID, PRODUCT_ID);
+		UsbDevice device = session.getDevice();
+		UsbPipe connectionPipe = session.getConnectionPipe();
+		UsbControlIrp usbControl = session.getUsbControl();
+		boolean completed = false;
+		//Times the phases of the download for the metrics listener, if one is set
+		DownloadPhaseTimer timer = startPhaseTimer();
+		try {
 
 			//prepare the device to communicate over the USB by writing {0xAA, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00} byte array to device.
 			//Read the data available on read port after writing data to the USB device.
+			timer.start(DownloadPhase.INITIALISE);
 			initialiseDevice(device, usbControl, connectionPipe);
 
 			//Get the number of readings available in the device by writing {0xA2, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00} byte array to device.
 			//Read the data available on read port after writing data to the USB device. This read data represents number of readings available with the device irrespective of user A & B (It will return total readings of A+B).
+			timer.start(DownloadPhase.NUMBER_OF_READINGS);
 			int numberOfReadings = getNumberOfReadings(device, usbControl, connectionPipe);
 
-			BM55Measurement measurement;
-			byte[] data;
+			//Resume after the checkpoint of the last sync if the device memory still holds the readings downloaded last time
+			timer.start(DownloadPhase.READINGS);
+			int readingsCounter = 1;
+			if(checkpoint != null) {
+				readingsCounter = getFirstReadingAfter(checkpoint, device, usbControl, connectionPipe, numberOfReadings);
+			}
+
+			//With a pipeline depth above 1 request the readings in batches, this returns the first reading which is still to be read
+			if(pipelineDepth > 1) {
+				readingsCounter = readReadingsPipelined(device, usbControl, connectionPipe, readingsCounter, numberOfReadings, readingConsumer);
+			}
+
+			//The same command frame and receive buffer are used for all the readings, so the loop itself allocates nothing
+			byte[] commandFrame = getPaddedByteArray(new byte[] {(byte) 0xA3, 0x00}, DEFAULT_BYTE_ARRAY_LENGTH_8, PADDING_BYTE_0xF4);
+			ReusableUsbIrp readingIrp = new ReusableUsbIrp(DEFAULT_BYTE_ARRAY_LENGTH_8);
 
 			//Iterate for the numberOfReadings returned
-			for(int readingsCounter = 1; readingsCounter < numberOfReadings; readingsCounter++) {
-				//To get each reading write {0xA3, (byte) readingsCounter, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00} byte to device.
-				writeDataToInterface(device, usbControl, new byte[] {(byte) 0xA3, (byte) readingsCounter}, BM55USBService.DEFAULT_BYTE_ARRAY_LENGTH_8, BM55USBService.PADDING_BYTE_0xF4);
+			for(; readingsCounter < numberOfReadings; readingsCounter++) {
+				//To get each reading write {0xA3, (byte) readingsCounter, 0xF4, 0xF4, 0xF4, 0xF4, 0xF4, 0xF4} byte to device.
+				commandFrame[1] = (byte) readingsCounter;
+				writeFrameToInterface(device, usbControl, commandFrame);
 
 				//Read the data available on read port after writing above data to the USB device. This read data represents the byte array of {readingCounter} measurement stored in the device.
-				data = readData(connectionPipe, 8);
+				byte[] data = readReading(readingIrp, connectionPipe);
 
-				//Pass the received byte array to BM55Measurement constructor which will decode the byte array to different attributes.
-				measurement = new BM55Measurement(data);
-
-				//Add this measurement to the list only if the user passed to this method matches with decoded BM55Measurement user attribute.
-				if(measurement.getUser().equals(readingsUser)) {
-					measurements.add(new BM55Measurement(data));
-				}
+				//The reading is consumed before the buffer is read into again.
+				readingConsumer.accept(data);
 			}
 
 			//Once all the measurements are captured, terminate the device communication by writing {0xF7, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00} byte array to device.
+			timer.start(DownloadPhase.TERMINATE);
 			terminateDeviceCommunication(device, usbControl, connectionPipe);
+			completed = true;
+			return numberOfReadings;
 		} finally {
-			//Close the USB device communication
-			if(connectionPipe != null && connectionPipe.isOpen()) {
+			timer.stop(completed);
+			//Close the USB device communication, or keep it open in the session pool for the next download
+			closeSession(session, completed);
+		}
+	}
+
+	/**
+	 * Gets the first reading to be downloaded after the checkpoint of the last sync.
+	 * The last reading downloaded at the last sync is requested again and compared with the checkpoint, if the device
+	 * has fewer readings than at the checkpoint or the reading has changed the memory was cleared or wrapped.
+	 *
+	 * @param checkpoint the checkpoint of the last sync
+	 * @param device the device object with which the communication is instantiated
+	 * @param usbControl to write the data to serial interface
+	 * @param connectionPipe to read the data from serial interface
+	 * @param numberOfReadings the number of readings returned by the device
+	 * @return the first reading after the checkpoint, 1 to download all the readings
+	 * @throws UsbException the USB exception
+	 */
+	private int getFirstReadingAfter(final SyncCheckpoint checkpoint, final UsbDevice device, final UsbControlIrp usbControl, final UsbPipe connectionPipe, final int numberOfReadings) throws UsbException {
+		int lastReading = checkpoint.getReadingCount() - 1;
+		if(lastReading < 1 || checkpoint.getReadingCount() > numberOfReadings || checkpoint.getLastMeasuredTime() == null) {
+			return 1;
+		}
+		writeDataToInterface(device, usbControl, new byte[] {(byte) 0xA3, (byte) lastReading}, DEFAULT_BYTE_ARRAY_LENGTH_8, PADDING_BYTE_0xF4);
+		BM55Measurement measurement = new BM55Measurement(readData(connectionPipe, 8));
+		return checkpoint.getLastMeasuredTime().equals(measurement.getMeasuredTime()) ? checkpoint.getReadingCount() : 1;
+	}
+
+	private static Map<BM55User, List<BM55Measurement>> newUsersMeasurements() {
+		Map<BM55User, List<BM55Measurement>> measurements = new EnumMap<BM55User, List<BM55Measurement>>(BM55User.class);
+		for(BM55User user : BM55User.values()) {
+			measurements.put(user, new ArrayList<BM55Measurement>());
+		}
+		return measurements;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.services.USBService#getMeasurementsAsync(java.lang.String, java.util.concurrent.Executor)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<BM55Measurement>> getMeasurementsAsync(final String user, final Executor executor) {
+		return downloadAsync(() -> (List<BM55Measurement>) getMeasurements(user), executor);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.services.USBService#getMeasurementsAsync(java.lang.String)
+	 */
+	@Override
+	public CompletableFuture<List<BM55Measurement>> getMeasurementsAsync(final String user) {
+		return getMeasurementsAsync(user, DownloadExecutors.getDefaultExecutor());
+	}
+
+	/**
+	 * Downloads the measurements of the user from every attached device concurrently, each device on its own task of the executor.
+	 *
+	 * @param user the user for which the measurements are downloaded
+	 * @param executor the executor running the downloads
+	 * @return the future of the downloads, one per device, completed once all the downloads are completed
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<DeviceDownload<List<BM55Measurement>>>> getMeasurementsFromAllDevices(final String user, final Executor executor) throws SecurityException, UsbException {
+		return downloadFromAllDevices(VENDOR_ID, PRODUCT_ID, () -> (List<BM55Measurement>) getMeasurements(user), executor);
+	}
+
+	/**
+	 * Downloads the measurements of the user from every attached device concurrently, each device on a thread of its own,
+	 * a virtual thread if the Java runtime supports them.
+	 *
+	 * @param user the user for which the measurements are downloaded
+	 * @return the future of the downloads, one per device, completed once all the downloads are completed
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 */
+	public CompletableFuture<List<DeviceDownload<List<BM55Measurement>>>> getMeasurementsFromAllDevices(final String user) throws SecurityException, UsbException {
+		return getMeasurementsFromAllDevices(user, DownloadExecutors.getDefaultExecutor());
+	}
+
+	/**
+	 * Sets the number of readings requested before waiting for their responses.
+	 * With a depth above 1 the download is bound by the bus throughput instead of the round trip of each reading.
+	 * If the device does not answer every request the download falls back to requesting the readings one by one.
+	 *
+	 * @param pipelineDepth the pipeline depth, 1 for the lock-step download
+	 */
+	public void setPipelineDepth(final int pipelineDepth) {
+		if(pipelineDepth < 1) {
+			throw new IllegalArgumentException("The pipeline depth must be at least 1");
+		}
+		this.pipelineDepth = pipelineDepth;
+	}
+
+	/**
+	 * Gets the number of readings requested before waiting for their responses.
+	 *
+	 * @return the pipeline depth
+	 */
+	public int getPipelineDepth() {
+		return this.pipelineDepth;
+	}
+
+	/**
+	 * Reads the readings in batches of pipeline depth. The reads of a batch are queued first, then all the readings of the batch are
+	 * requested and the responses are matched to the requested reading numbers in order. The responses carry no reading number,
+	 * so if any response of a batch is missing or empty the whole batch is discarded and the caller continues one by one from its first reading.
+	 *
+	 * @param device the device object with which the communication is instantiated
+	 * @param usbControl to write the data to serial interface
+	 * @param connectionPipe to read the data from serial interface
+	 * @param firstReading the first reading to be read
+	 * @param numberOfReadings the number of readings returned by the device
+	 * @param readingConsumer the consumer of the reading bytes
+	 * @return the first reading number which is still to be read
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private int readReadingsPipelined(final UsbDevice device, final UsbControlIrp usbControl, final UsbPipe connectionPipe, final int firstReading, final int numberOfReadings, final Consumer<byte[]> readingConsumer) throws UsbException, InterruptedException {
+		//Each outstanding command needs its own control IRP as the data of a submitted IRP must not be changed
+		final UsbControlIrp[] usbControls = new UsbControlIrp[pipelineDepth];
+		for(int batchCounter = 0; batchCounter < pipelineDepth; batchCounter++) {
+			usbControls[batchCounter] = getUSBControl(device, usbControl.bmRequestType(), usbControl.bRequest(), usbControl.wValue(), usbControl.wIndex());
+		}
+		final byte[][] commandFrames = new byte[pipelineDepth][];
+		for(int batchCounter = 0; batchCounter < pipelineDepth; batchCounter++) {
+			commandFrames[batchCounter] = getPaddedByteArray(new byte[] {(byte) 0xA3, 0x00}, DEFAULT_BYTE_ARRAY_LENGTH_8, PADDING_BYTE_0xF4);
+		}
+		final List<CompletableFuture<byte[]>> transfers = new ArrayList<CompletableFuture<byte[]>>(pipelineDepth);
+		final byte[][] readings = new byte[pipelineDepth][];
+
+		int readingsCounter = firstReading;
+		while(readingsCounter < numberOfReadings) {
+			final int batchSize = Math.min(pipelineDepth, numberOfReadings - readingsCounter);
+
+			//Queue the reads before the commands so that no response is missed. The device answers the commands one after the other,
+			//so the n-th response of the batch has n times the time of one response to arrive
+			transfers.clear();
+			for(int batchCounter = 0; batchCounter < batchSize; batchCounter++) {
+				transfers.add(readDataAsync(connectionPipe, DEFAULT_BYTE_ARRAY_LENGTH_8, READ_TIMEOUT_MILLIS * (batchCounter + 1)));
+			}
+			for(int batchCounter = 0; batchCounter < batchSize; batchCounter++) {
+				commandFrames[batchCounter][1] = (byte) (readingsCounter + batchCounter);
+				writeFrameToInterface(device, usbControls[batchCounter], commandFrames[batchCounter]);
+			}
+
+			for(int batchCounter = 0; batchCounter < batchSize; batchCounter++) {
 				try {
-					connectionPipe.close();
-					connectionPipe.getUsbEndpoint().getUsbInterface().release();
-				} catch(UsbException e) {
-					//Do nothing
+					readings[batchCounter] = transfers.get(batchCounter).get();
+				} catch(ExecutionException e) {
+					readings[batchCounter] = null;
+				}
+				if(readings[batchCounter] == null || isEmpty(readings[batchCounter])) {
+					discardPendingResponses(connectionPipe);
+					markSessionNotReusable();
+					reportRetry();
+					return readingsCounter;
 				}
 			}
+
+			for(int batchCounter = 0; batchCounter < batchSize; batchCounter++) {
+				readingConsumer.accept(readings[batchCounter]);
+			}
+			readingsCounter += batchSize;
+		}
+		return readingsCounter;
+	}
+
+	/**
+	 * Aborts the outstanding reads and drops the responses the device may still send for them,
+	 * so that they are not mistaken for the responses of the following commands.
+	 *
+	 * @param connectionPipe to read the data from serial interface
+	 * @throws InterruptedException the interrupted exception
+	 */
+	private void discardPendingResponses(final UsbPipe connectionPipe) throws InterruptedException {
+		connectionPipe.abortAllSubmissions();
+		while(true) {
+			try {
+				//Read without reporting to the metrics listener, the last read waits for the timeout on purpose
+				UsbTransfers.read(connectionPipe, DEFAULT_BYTE_ARRAY_LENGTH_8, READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).get();
+			} catch(ExecutionException e) {
+				connectionPipe.abortAllSubmissions();
+				return;
+			}
 		}
-		return measurements;
 	}
 
 	/* (non-Javadoc)
@@ -136,13 +539,12 @@ public class BM55USBService extends USBService {
 	 */
 	@Override
 	public byte[] readData(final UsbPipe connectionPipe, final int numberOfBytes) throws UsbException {
-		final byte[] data = new byte[numberOfBytes];
-		final UsbIrp irp = connectionPipe.asyncSubmit(data);
-        irp.waitUntilComplete(500);
+		//A device which did not answer in time or failed is reported with the timeout or the USB exception of the transfer as the cause
+		final byte[] data = awaitData(readDataAsync(connectionPipe, numberOfBytes, READ_TIMEOUT_MILLIS), REPLUG_MESSAGE);
 
         //This condition is just to check if the data is being read properly. Input and output data cannot be the same if the device is responding.
-        if (irp.isUsbException() || Arrays.equals(data, new byte[numberOfBytes])) {
-        	throw new DeviceConnectionException("Unplug and then replug in the Beurer BM55 Blood Pressure Monitor and press download");
+        if (isEmpty(data)) {
+        	throw new DeviceConnectionException(REPLUG_MESSAGE);
         }
 		return data;
 	}
@@ -159,4 +561,55 @@ public class BM55USBService extends USBService {
 			//do nothing
 		}
 	}
+
+	/**
+	 * Reads a reading into the buffer of the reusable IRP, the same way as {@link #readData(UsbPipe, int)}.
+	 *
+	 * @param readingIrp the IRP reused for all the readings of the download
+	 * @param connectionPipe to read the data from serial interface
+	 * @return the buffer of the IRP holding the reading, valid until the next read
+	 */
+	private byte[] readReading(final ReusableUsbIrp readingIrp, final UsbPipe connectionPipe) {
+		final InterruptInEvent event = FlightRecorderEvents.beginInterruptIn();
+		byte[] data = null;
+		Exception failure = null;
+		try {
+			data = readingIrp.read(connectionPipe, READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch(TimeoutException e) {
+			failure = e;
+			reportTimeout();
+			markSessionNotReusable();
+			throw new DeviceConnectionException(REPLUG_MESSAGE, e);
+		} catch(UsbException e) {
+			failure = e;
+			throw new DeviceConnectionException(REPLUG_MESSAGE, e);
+		} catch(InterruptedException e) {
+			failure = e;
+			Thread.currentThread().interrupt();
+			throw new DeviceConnectionException(REPLUG_MESSAGE, e);
+		} finally {
+			if(event != null) {
+				event.complete(connectionPipe, DEFAULT_BYTE_ARRAY_LENGTH_8, data, failure);
+			}
+		}
+		if(isEmpty(data)) {
+			throw new DeviceConnectionException(REPLUG_MESSAGE);
+		}
+		return data;
+	}
+
+	/**
+	 * Checks if the data is all zeros, which is what a read returns when the device did not respond.
+	 *
+	 * @param data the data read from the serial interface
+	 * @return true, if all the bytes are zero
+	 */
+	private static boolean isEmpty(final byte[] data) {
+		for(final byte value : data) {
+			if(value != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
@@ -0,0 +1,80 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+/**
+ * The Class CapturedTransfer is one transfer read back from a capture written by {@link TransferCapture}.
+ */
+public class CapturedTransfer {
+
+	/**
+	 * The direction of a captured transfer.
+	 */
+	public enum Direction {
+
+		/** The data written by the host with a control transfer. */
+		CONTROL_OUT,
+
+		/** The data read by the host from the interrupt-in endpoint. */
+		INTERRUPT_IN
+	}
+
+	private final Direction direction;
+	private final long elapsedNanos;
+	private final byte[] data;
+
+	/**
+	 * Instantiates a new captured transfer.
+	 *
+	 * @param direction the direction of the transfer
+	 * @param elapsedNanos the nanoseconds elapsed from the start of the capture to the transfer
+	 * @param data the data of the transfer
+	 */
+	public CapturedTransfer(final Direction direction, final long elapsedNanos, final byte[] data) {
+		this.direction = direction;
+		this.elapsedNanos = elapsedNanos;
+		this.data = data;
+	}
+
+	/**
+	 * Gets the direction.
+	 *
+	 * @return the direction
+	 */
+	public Direction getDirection() {
+		return this.direction;
+	}
+
+	/**
+	 * Gets the nanoseconds elapsed from the start of the capture to the transfer.
+	 *
+	 * @return the elapsed nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+
+	/**
+	 * Gets the data.
+	 *
+	 * @return the data
+	 */
+	public byte[] getData() {
+		return this.data;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.util.concurrent.CompletableFuture;
+
+import javax.usb.util.DefaultUsbIrp;
+
+/**
+ * The Class CompletableUsbIrp is an IRP which completes a {@link CompletableFuture} with the data read
+ * when the transfer completes, instead of a thread waiting on {@link #waitUntilComplete(long)}.
+ * The future is completed by the thread which completes the IRP, so the dependent stages should be short
+ * or run asynchronously.
+ */
+public class CompletableUsbIrp extends DefaultUsbIrp {
+
+	private final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+
+	/**
+	 * Instantiates a new completable USB IRP.
+	 *
+	 * @param data the buffer into which the data is read
+	 */
+	public CompletableUsbIrp(final byte[] data) {
+		super(data);
+	}
+
+	/**
+	 * Gets the future completed with the buffer when the transfer succeeds,
+	 * or exceptionally with the USB exception of the transfer when it fails.
+	 *
+	 * @return the future of the transfer
+	 */
+	public CompletableFuture<byte[]> getFuture() {
+		return this.future;
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.usb.util.DefaultUsbIrp#complete()
+	 */
+	@Override
+	public void complete() {
+		super.complete();
+		if(isUsbException()) {
+			future.completeExceptionally(getUsbException());
+		} else {
+			future.complete(getData());
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import javax.usb.UsbDevice;
+
+/**
+ * The Class DeviceDownload is the outcome of the download from one of the devices of a fleet download,
+ * either the measurements or the failure of the device. The failure of a device does not affect the downloads from the other devices.
+ *
+ * @param <T> the type of the measurements downloaded
+ */
+public class DeviceDownload<T> {
+
+	private final UsbDevice device;
+	private final T measurements;
+	private final Throwable failure;
+
+	/**
+	 * Instantiates a new device download.
+	 *
+	 * @param device the device downloaded from
+	 * @param measurements the measurements, null if the download failed
+	 * @param failure the failure of the download, null if the download succeeded
+	 */
+	public DeviceDownload(final UsbDevice device, final T measurements, final Throwable failure) {
+		this.device = device;
+		this.measurements = measurements;
+		this.failure = failure;
+	}
+
+	/**
+	 * Gets the device downloaded from.
+	 *
+	 * @return the device
+	 */
+	public UsbDevice getDevice() {
+		return this.device;
+	}
+
+	/**
+	 * Gets the measurements.
+	 *
+	 * @return the measurements, null if the download failed
+	 */
+	public T getMeasurements() {
+		return this.measurements;
+	}
+
+	/**
+	 * Gets the failure of the download.
+	 *
+	 * @return the failure, null if the download succeeded
+	 */
+	public Throwable getFailure() {
+		return this.failure;
+	}
+
+	/**
+	 * Checks if the download succeeded.
+	 *
+	 * @return true, if the measurements were downloaded
+	 */
+	public boolean isSuccessful() {
+		return failure == null;
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.usb.UsbControlIrp;
+import javax.usb.UsbDevice;
+import javax.usb.UsbException;
+import javax.usb.UsbPipe;
+
+import com.steptron.medical.device.jfr.DeviceSessionEvent;
+
+/**
+ * The Class DeviceSession holds the claimed interface, the open connection pipe and the control IRP
+ * used to communicate with a device, so they can be reused by consecutive downloads from the same device.
+ */
+public class DeviceSession {
+
+	private static final Logger LOGGER = Logger.getLogger(DeviceSession.class.getName());
+
+	private final UsbDevice device;
+	private final UsbPipe connectionPipe;
+	private final UsbControlIrp usbControl;
+
+	private volatile long lastUsedNanos;
+	private volatile TransferCapture transferCapture;
+	private volatile MetricsPipeListener metricsPipeListener;
+	private volatile DeviceSessionEvent sessionEvent;
+	private volatile boolean transferTimedOut;
+
+	/**
+	 * Instantiates a new device session.
+	 *
+	 * @param device the device object with which the communication is instantiated
+	 * @param connectionPipe the open pipe to read the data from serial interface
+	 * @param usbControl to write the data to serial interface
+	 */
+	public DeviceSession(final UsbDevice device, final UsbPipe connectionPipe, final UsbControlIrp usbControl) {
+		this.device = device;
+		this.connectionPipe = connectionPipe;
+		this.usbControl = usbControl;
+		this.lastUsedNanos = System.nanoTime();
+	}
+
+	/**
+	 * Gets the device.
+	 *
+	 * @return the device
+	 */
+	public UsbDevice getDevice() {
+		return this.device;
+	}
+
+	/**
+	 * Gets the connection pipe.
+	 *
+	 * @return the connection pipe
+	 */
+	public UsbPipe getConnectionPipe() {
+		return this.connectionPipe;
+	}
+
+	/**
+	 * Gets the USB control.
+	 *
+	 * @return the USB control
+	 */
+	public UsbControlIrp getUsbControl() {
+		return this.usbControl;
+	}
+
+	/**
+	 * Checks if the connection pipe is still open.
+	 *
+	 * @return true, if the session can be used
+	 */
+	public boolean isOpen() {
+		return connectionPipe.isOpen();
+	}
+
+	/**
+	 * Close the USB device communication by aborting the outstanding transfers, closing the pipe and releasing the interface.
+	 * A transfer the device did not answer in time stays submitted, and the pipe cannot be closed while a transfer is submitted.
+	 * The interface is released even if the pipe could not be closed, so that the next download can claim it.
+	 * The failures are logged, the session is closed from the session pool and from the finally blocks of the downloads.
+	 */
+	public void close() {
+		if(connectionPipe.isOpen()) {
+			try {
+				connectionPipe.abortAllSubmissions();
+				connectionPipe.close();
+			} catch(UsbException | RuntimeException e) {
+				LOGGER.log(Level.WARNING, "The connection pipe could not be closed", e);
+			} finally {
+				try {
+					connectionPipe.getUsbEndpoint().getUsbInterface().release();
+				} catch(UsbException | RuntimeException e) {
+					LOGGER.log(Level.WARNING, "The interface could not be released", e);
+				}
+			}
+		}
+	}
+
+	long getLastUsedNanos() {
+		return lastUsedNanos;
+	}
+
+	void touch() {
+		lastUsedNanos = System.nanoTime();
+	}
+
+	TransferCapture getTransferCapture() {
+		return transferCapture;
+	}
+
+	void setTransferCapture(final TransferCapture transferCapture) {
+		this.transferCapture = transferCapture;
+	}
+
+	MetricsPipeListener getMetricsPipeListener() {
+		return metricsPipeListener;
+	}
+
+	void setMetricsPipeListener(final MetricsPipeListener metricsPipeListener) {
+		this.metricsPipeListener = metricsPipeListener;
+	}
+
+	DeviceSessionEvent getSessionEvent() {
+		return sessionEvent;
+	}
+
+	void setSessionEvent(final DeviceSessionEvent sessionEvent) {
+		this.sessionEvent = sessionEvent;
+	}
+
+	boolean isTransferTimedOut() {
+		return transferTimedOut;
+	}
+
+	void transferTimedOut() {
+		transferTimedOut = true;
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.usb.UsbDevice;
+import javax.usb.UsbException;
+
+/**
+ * The Class DeviceSessionPool keeps the sessions of the devices open between downloads, keyed by device.
+ * A session is used by one download at a time, a second download from the same device waits until the
+ * first one releases the session. Sessions which are idle for longer than the idle timeout are closed,
+ * which releases the interface for the other applications.
+ * The downloads wait for a busy session on a lock condition rather than a monitor, so a download running
+ * on a virtual thread does not pin its carrier thread while it waits.
+ */
+public class DeviceSessionPool implements AutoCloseable {
+
+	/**
+	 * Opens a new session when there is no reusable session in the pool.
+	 */
+	public interface SessionFactory {
+
+		/**
+		 * Claims the interface and opens the connection pipe of the device.
+		 *
+		 * @param device the device
+		 * @return the open session
+		 * @throws UsbException the USB exception
+		 */
+		DeviceSession open(UsbDevice device) throws UsbException;
+	}
+
+	private final long idleTimeoutNanos;
+	private final Map<UsbDevice, DeviceSession> idleSessions = new HashMap<UsbDevice, DeviceSession>();
+	private final Set<UsbDevice> busyDevices = new HashSet<UsbDevice>();
+	private final ScheduledExecutorService evictor;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition sessionReleased = lock.newCondition();
+
+	private boolean closed;
+
+	/**
+	 * Instantiates a new device session pool.
+	 *
+	 * @param idleTimeout the time after which an unused session is closed
+	 * @param unit the time unit of the idle timeout
+	 */
+	public DeviceSessionPool(final long idleTimeout, final TimeUnit unit) {
+		this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+		this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "device-session-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		final long evictionPeriodNanos = Math.max(idleTimeoutNanos / 2, TimeUnit.MILLISECONDS.toNanos(10));
+		evictor.scheduleWithFixedDelay(this::evictIdleSessions, evictionPeriodNanos, evictionPeriodNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Acquires the session of the device, waiting while another download is using it.
+	 * The idle session of the device is reused if it is still open, otherwise a new session is opened with the factory.
+	 *
+	 * @param device the device
+	 * @param factory the factory opening a new session
+	 * @return the session to be released with {@link #release(DeviceSession, boolean)}
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public DeviceSession acquire(final UsbDevice device, final SessionFactory factory) throws UsbException, InterruptedException {
+		DeviceSession session;
+		lock.lockInterruptibly();
+		try {
+			while(busyDevices.contains(device)) {
+				sessionReleased.await();
+			}
+			if(closed) {
+				throw new IllegalStateException("The device session pool is closed");
+			}
+			busyDevices.add(device);
+			session = idleSessions.remove(device);
+		} finally {
+			lock.unlock();
+		}
+		try {
+			if(session == null || !session.isOpen()) {
+				session = factory.open(device);
+			}
+		} catch(UsbException | RuntimeException e) {
+			markIdle(device);
+			throw e;
+		}
+		return session;
+	}
+
+	/**
+	 * Releases the session. The session is kept open for the next download only if the download completed,
+	 * a session left in an unknown state by a failed download is closed.
+	 *
+	 * @param session the session
+	 * @param reusable true if the session can be reused
+	 */
+	public void release(final DeviceSession session, final boolean reusable) {
+		boolean keep;
+		lock.lock();
+		try {
+			keep = reusable && !closed && session.isOpen();
+			if(keep) {
+				session.touch();
+				idleSessions.put(session.getDevice(), session);
+			}
+		} finally {
+			lock.unlock();
+		}
+		if(!keep) {
+			session.close();
+		}
+		markIdle(session.getDevice());
+	}
+
+	/**
+	 * Gets the number of idle sessions kept open.
+	 *
+	 * @return the number of idle sessions
+	 */
+	public int getIdleSessionCount() {
+		lock.lock();
+		try {
+			return idleSessions.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes the sessions which are idle for longer than the idle timeout.
+	 */
+	public void evictIdleSessions() {
+		final List<DeviceSession> expiredSessions = new ArrayList<DeviceSession>();
+		final long now = System.nanoTime();
+		lock.lock();
+		try {
+			final Iterator<DeviceSession> iterator = idleSessions.values().iterator();
+			while(iterator.hasNext()) {
+				final DeviceSession session = iterator.next();
+				if(now - session.getLastUsedNanos() >= idleTimeoutNanos) {
+					iterator.remove();
+					expiredSessions.add(session);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		for(final DeviceSession session : expiredSessions) {
+			session.close();
+		}
+	}
+
+	/**
+	 * Closes all the idle sessions and stops the eviction. The sessions in use are closed when they are released.
+	 */
+	@Override
+	public void close() {
+		final List<DeviceSession> sessions;
+		lock.lock();
+		try {
+			closed = true;
+			sessions = new ArrayList<DeviceSession>(idleSessions.values());
+			idleSessions.clear();
+			sessionReleased.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		evictor.shutdownNow();
+		for(final DeviceSession session : sessions) {
+			session.close();
+		}
+	}
+
+	private void markIdle(final UsbDevice device) {
+		lock.lock();
+		try {
+			busyDevices.remove(device);
+			sessionReleased.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.usb.UsbDevice;
+import javax.usb.UsbDeviceDescriptor;
+import javax.usb.UsbException;
+import javax.usb.UsbHostManager;
+import javax.usb.UsbHub;
+import javax.usb.UsbServices;
+import javax.usb.event.UsbServicesEvent;
+import javax.usb.event.UsbServicesListener;
+
+/**
+ * The Class DeviceTopologyCache indexes the devices attached to the USB host by vendor id and product id.
+ * The hub tree is walked once on the first lookup and the index is thrown away whenever a device
+ * is attached or detached, so the following lookups are map hits instead of a walk of the whole tree.
+ */
+public class DeviceTopologyCache implements UsbServicesListener {
+
+	private static DeviceTopologyCache instance;
+
+	private final UsbServices services;
+	private final Object lock = new Object();
+
+	private volatile Map<Integer, List<UsbDevice>> devices;
+	private long generation;
+
+	/**
+	 * Instantiates a new device topology cache for the given USB host and registers it for the hotplug events.
+	 *
+	 * @param services the USB services of the host
+	 */
+	public DeviceTopologyCache(final UsbServices services) {
+		this.services = services;
+		services.addUsbServicesListener(this);
+	}
+
+	/**
+	 * Gets the cache of the USB host returned by {@link UsbHostManager#getUsbServices()}.
+	 *
+	 * @return the device topology cache
+	 * @throws UsbException the USB exception
+	 * @throws SecurityException the security exception
+	 */
+	public static synchronized DeviceTopologyCache getInstance() throws SecurityException, UsbException {
+		if(instance == null) {
+			instance = new DeviceTopologyCache(UsbHostManager.getUsbServices());
+		}
+		return instance;
+	}
+
+	/**
+	 * Finds the first device attached with the vendor id and product id.
+	 *
+	 * @param vendorId the vendor id of the USB device
+	 * @param productId the product id of the USB device
+	 * @return the USB device, null if there is no such device attached
+	 * @throws UsbException the USB exception
+	 */
+	public UsbDevice getDevice(final short vendorId, final short productId) throws UsbException {
+		final List<UsbDevice> matchingDevices = getDevices(vendorId, productId);
+		return matchingDevices.isEmpty() ? null : matchingDevices.get(0);
+	}
+
+	/**
+	 * Finds all the devices attached with the vendor id and product id, in the order of the hub tree.
+	 *
+	 * @param vendorId the vendor id of the USB device
+	 * @param productId the product id of the USB device
+	 * @return the USB devices
+	 * @throws UsbException the USB exception
+	 */
+	public List<UsbDevice> getDevices(final short vendorId, final short productId) throws UsbException {
+		Map<Integer, List<UsbDevice>> index = devices;
+		if(index == null) {
+			index = buildIndex();
+		}
+		final List<UsbDevice> matchingDevices = index.get(key(vendorId, productId));
+		return matchingDevices == null ? Collections.<UsbDevice> emptyList() : matchingDevices;
+	}
+
+	/**
+	 * Throws the index away, the next lookup walks the hub tree again.
+	 */
+	public void invalidate() {
+		synchronized(lock) {
+			generation++;
+			devices = null;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.usb.event.UsbServicesListener#usbDeviceAttached(javax.usb.event.UsbServicesEvent)
+	 */
+	@Override
+	public void usbDeviceAttached(final UsbServicesEvent event) {
+		invalidate();
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.usb.event.UsbServicesListener#usbDeviceDetached(javax.usb.event.UsbServicesEvent)
+	 */
+	@Override
+	public void usbDeviceDetached(final UsbServicesEvent event) {
+		invalidate();
+	}
+
+	/**
+	 * Walks the hub tree and publishes the index unless a hotplug event arrived in the meantime.
+	 *
+	 * @return the index
+	 * @throws UsbException the USB exception
+	 */
+	private Map<Integer, List<UsbDevice>> buildIndex() throws UsbException {
+		final long startGeneration;
+		synchronized(lock) {
+			if(devices != null) {
+				return devices;
+			}
+			startGeneration = generation;
+		}
+		final Map<Integer, List<UsbDevice>> index = new HashMap<Integer, List<UsbDevice>>();
+		indexDevices(services.getRootUsbHub(), index);
+		for(final Map.Entry<Integer, List<UsbDevice>> entry : index.entrySet()) {
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+		synchronized(lock) {
+			if(startGeneration == generation) {
+				devices = index;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Index the devices attached to each hub recursively.
+	 *
+	 * @param hub the USB hub
+	 * @param index the index to be filled
+	 */
+	@SuppressWarnings("unchecked")
+	private void indexDevices(final UsbHub hub, final Map<Integer, List<UsbDevice>> index) {
+		for(final UsbDevice device : (List<UsbDevice>) hub.getAttachedUsbDevices()) {
+			final UsbDeviceDescriptor desc = device.getUsbDeviceDescriptor();
+			final Integer key = key(desc.idVendor(), desc.idProduct());
+			List<UsbDevice> matchingDevices = index.get(key);
+			if(matchingDevices == null) {
+				matchingDevices = new ArrayList<UsbDevice>(1);
+				index.put(key, matchingDevices);
+			}
+			matchingDevices.add(device);
+			if(device.isUsbHub()) {
+				indexDevices((UsbHub) device, index);
+			}
+		}
+	}
+
+	private static Integer key(final short vendorId, final short productId) {
+		return Integer.valueOf((vendorId & 0xffff) << 16 | productId & 0xffff);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Class DownloadExecutors creates the executors to run the downloads on, one thread per download.
+ * On a Java runtime with virtual threads (Java 21 or later) each download runs on its own virtual thread, so a gateway can have
+ * hundreds of downloads in flight while their reads wait for the devices. The downloads do not block inside synchronized blocks,
+ * so the virtual threads waiting for a device do not pin their carrier threads. On older runtimes each download runs on its own
+ * daemon platform thread.
+ */
+public final class DownloadExecutors {
+
+	private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findNewVirtualThreadPerTaskExecutor();
+
+	private static ExecutorService defaultExecutor;
+
+	private DownloadExecutors() {
+	}
+
+	/**
+	 * Checks if the Java runtime supports virtual threads.
+	 *
+	 * @return true, if the downloads run on virtual threads
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+	}
+
+	/**
+	 * Creates an executor which starts a new thread for each download, a virtual thread if the Java runtime supports them.
+	 * The executor should be shut down once the downloads are completed.
+	 *
+	 * @return the executor
+	 */
+	public static ExecutorService newThreadPerDownloadExecutor() {
+		if(NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null) {
+			try {
+				return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+			} catch(ReflectiveOperationException e) {
+				//Fall back to the platform threads
+			}
+		}
+		final AtomicInteger threadCounter = new AtomicInteger();
+		final ThreadFactory threadFactory = runnable -> {
+			final Thread thread = new Thread(runnable, "usb-download-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		return Executors.newCachedThreadPool(threadFactory);
+	}
+
+	/**
+	 * Gets the shared executor starting a new thread for each download, for the applications which do not manage their own executor.
+	 *
+	 * @return the shared executor
+	 */
+	public static synchronized ExecutorService getDefaultExecutor() {
+		if(defaultExecutor == null) {
+			defaultExecutor = newThreadPerDownloadExecutor();
+		}
+		return defaultExecutor;
+	}
+
+	private static Method findNewVirtualThreadPerTaskExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch(NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import com.steptron.medical.device.services.CapturedTransfer.Direction;
+
+/**
+ * The listener reporting where the time of the downloads goes, set with {@link USBService#setMetricsListener(DownloadMetricsListener)}.
+ * The methods are called on the threads running the downloads and the threads completing the transfers, so they must be thread safe
+ * and must return quickly. The device model is the one returned by {@link USBService#getDeviceModel()}.
+ */
+public interface DownloadMetricsListener {
+
+	/**
+	 * Called when a phase of a download ends.
+	 *
+	 * @param deviceModel the device model
+	 * @param phase the phase
+	 * @param elapsedNanos the nanoseconds the phase took
+	 * @param succeeded true if the phase completed, false if it failed
+	 */
+	void phaseCompleted(String deviceModel, DownloadPhase phase, long elapsedNanos, boolean succeeded);
+
+	/**
+	 * Called for each IRP transferring data, when a control-out write or an interrupt-in read of a session completes.
+	 * The failed transfers are not reported.
+	 *
+	 * @param deviceModel the device model
+	 * @param direction the direction of the transfer
+	 * @param bytes the number of bytes transferred
+	 */
+	void transferCompleted(String deviceModel, Direction direction, int bytes);
+
+	/**
+	 * Called when the device did not answer a read within its timeout.
+	 *
+	 * @param deviceModel the device model
+	 */
+	void transferTimedOut(String deviceModel);
+
+	/**
+	 * Called when a driver gives up on a part of a download and requests it again.
+	 *
+	 * @param deviceModel the device model
+	 */
+	void retried(String deviceModel);
+}
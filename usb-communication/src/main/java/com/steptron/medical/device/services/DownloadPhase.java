@@ -0,0 +1,42 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+/**
+ * The phases of a download from a device, in the order a driver goes through them.
+ */
+public enum DownloadPhase {
+
+	/** Finding the device by vendor id and product id. */
+	DEVICE_LOOKUP,
+
+	/** Claiming the interface and opening the pipe, or acquiring the pooled session. */
+	CLAIM,
+
+	/** Preparing the device to communicate. */
+	INITIALISE,
+
+	/** Asking the device for the number of readings it has stored. */
+	NUMBER_OF_READINGS,
+
+	/** Requesting and reading all the readings, the round trips of all the readings of the download. */
+	READINGS,
+
+	/** Ending the communication with the device. */
+	TERMINATE
+}
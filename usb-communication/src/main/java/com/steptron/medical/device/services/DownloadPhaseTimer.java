@@ -0,0 +1,76 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+/**
+ * The Class DownloadPhaseTimer times the consecutive phases of one download and reports them to the metrics listener.
+ * Starting a phase ends the previous one as completed, the phase running when the timer is stopped ends with the outcome of the download.
+ * A timer is used by the thread running the download only.
+ */
+public final class DownloadPhaseTimer {
+
+	/** The timer used when no metrics listener is set, which does nothing. */
+	static final DownloadPhaseTimer DISABLED = new DownloadPhaseTimer(null, null);
+
+	private final DownloadMetricsListener listener;
+	private final String deviceModel;
+
+	private DownloadPhase phase;
+	private long startNanos;
+
+	/**
+	 * Instantiates a new download phase timer.
+	 *
+	 * @param listener the metrics listener
+	 * @param deviceModel the device model
+	 */
+	DownloadPhaseTimer(final DownloadMetricsListener listener, final String deviceModel) {
+		this.listener = listener;
+		this.deviceModel = deviceModel;
+	}
+
+	/**
+	 * Ends the running phase as completed and starts the next one.
+	 *
+	 * @param nextPhase the phase started
+	 */
+	public void start(final DownloadPhase nextPhase) {
+		if(listener == null) {
+			return;
+		}
+		final long now = System.nanoTime();
+		if(phase != null) {
+			listener.phaseCompleted(deviceModel, phase, now - startNanos, true);
+		}
+		phase = nextPhase;
+		startNanos = now;
+	}
+
+	/**
+	 * Ends the running phase, if any.
+	 *
+	 * @param succeeded true if the download completed, false if the running phase failed
+	 */
+	public void stop(final boolean succeeded) {
+		if(listener == null || phase == null) {
+			return;
+		}
+		listener.phaseCompleted(deviceModel, phase, System.nanoTime() - startNanos, succeeded);
+		phase = null;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import javax.usb.UsbConst;
+import javax.usb.UsbControlIrp;
+import javax.usb.event.UsbDeviceDataEvent;
+import javax.usb.event.UsbDeviceErrorEvent;
+import javax.usb.event.UsbDeviceEvent;
+import javax.usb.event.UsbDeviceListener;
+import javax.usb.event.UsbPipeDataEvent;
+import javax.usb.event.UsbPipeErrorEvent;
+import javax.usb.event.UsbPipeListener;
+
+import com.steptron.medical.device.services.CapturedTransfer.Direction;
+
+/**
+ * Reports the interrupt-in reads completed on the pipe of a session, whichever way the driver submitted them,
+ * and the control-out writes completed on its device.
+ */
+class MetricsPipeListener implements UsbPipeListener, UsbDeviceListener {
+
+	private final DownloadMetricsListener listener;
+	private final String deviceModel;
+
+	/**
+	 * Instantiates a new metrics pipe listener.
+	 *
+	 * @param listener the metrics listener
+	 * @param deviceModel the device model
+	 */
+	MetricsPipeListener(final DownloadMetricsListener listener, final String deviceModel) {
+		this.listener = listener;
+		this.deviceModel = deviceModel;
+	}
+
+	@Override
+	public void dataEventOccurred(final UsbPipeDataEvent event) {
+		listener.transferCompleted(deviceModel, Direction.INTERRUPT_IN, event.getActualLength());
+	}
+
+	@Override
+	public void errorEventOccurred(final UsbPipeErrorEvent event) {
+		//The aborted and failed reads carry no data, the failures surface as exceptions of the download
+	}
+
+	@Override
+	public void dataEventOccurred(final UsbDeviceDataEvent event) {
+		final UsbControlIrp irp = event.getUsbControlIrp();
+		if((irp.bmRequestType() & UsbConst.REQUESTTYPE_DIRECTION_MASK) == UsbConst.REQUESTTYPE_DIRECTION_OUT) {
+			listener.transferCompleted(deviceModel, Direction.CONTROL_OUT, irp.getActualLength());
+		}
+	}
+
+	@Override
+	public void errorEventOccurred(final UsbDeviceErrorEvent event) {
+		//The failed writes transfer nothing, the device does not answer them and the reads time out
+	}
+
+	@Override
+	public void usbDeviceDetached(final UsbDeviceEvent event) {
+		//The reads of a detached device fail, the failures surface as exceptions of the download
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The Class PropertiesSyncCheckpointStore keeps the checkpoints of the devices in a properties file,
+ * as &lt;device key&gt;.readingCount and &lt;device key&gt;.lastMeasuredTime. The file is replaced atomically on every save,
+ * so a crash during a save leaves the previous checkpoints in place. The file is read and written under a lock rather
+ * than a monitor, so a sync running on a virtual thread does not pin its carrier thread during the file I/O.
+ */
+public class PropertiesSyncCheckpointStore implements SyncCheckpointStore {
+
+	private static final String READING_COUNT = ".readingCount";
+	private static final String LAST_MEASURED_TIME = ".lastMeasuredTime";
+
+	private final Path file;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Instantiates a new properties sync checkpoint store.
+	 *
+	 * @param file the properties file, created on the first save
+	 */
+	public PropertiesSyncCheckpointStore(final Path file) {
+		this.file = file;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.services.SyncCheckpointStore#load(java.lang.String)
+	 */
+	@Override
+	public SyncCheckpoint load(final String deviceKey) throws IOException {
+		final Properties properties;
+		lock.lock();
+		try {
+			properties = loadProperties();
+		} finally {
+			lock.unlock();
+		}
+		final String readingCount = properties.getProperty(deviceKey + READING_COUNT);
+		if(readingCount == null) {
+			return null;
+		}
+		final String lastMeasuredTime = properties.getProperty(deviceKey + LAST_MEASURED_TIME);
+		return new SyncCheckpoint(Integer.parseInt(readingCount), lastMeasuredTime == null ? null : Instant.parse(lastMeasuredTime));
+	}
+
+	/* (non-Javadoc)
+	 * @see com.steptron.medical.device.services.SyncCheckpointStore#save(java.lang.String, com.steptron.medical.device.services.SyncCheckpoint)
+	 */
+	@Override
+	public void save(final String deviceKey, final SyncCheckpoint checkpoint) throws IOException {
+		lock.lock();
+		try {
+			store(deviceKey, checkpoint);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void store(final String deviceKey, final SyncCheckpoint checkpoint) throws IOException {
+		final Properties properties = loadProperties();
+		properties.setProperty(deviceKey + READING_COUNT, String.valueOf(checkpoint.getReadingCount()));
+		if(checkpoint.getLastMeasuredTime() == null) {
+			properties.remove(deviceKey + LAST_MEASURED_TIME);
+		} else {
+			properties.setProperty(deviceKey + LAST_MEASURED_TIME, checkpoint.getLastMeasuredTime().toString());
+		}
+
+		final Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		final Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try(OutputStream output = Files.newOutputStream(temporaryFile)) {
+				properties.store(output, "Sync checkpoints of the medical devices");
+			}
+			Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporaryFile);
+		}
+	}
+
+	private Properties loadProperties() throws IOException {
+		final Properties properties = new Properties();
+		if(Files.exists(file)) {
+			try(InputStream input = Files.newInputStream(file)) {
+				properties.load(input);
+			}
+		}
+		return properties;
+	}
+}
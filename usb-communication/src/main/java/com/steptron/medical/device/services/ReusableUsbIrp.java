@@ -0,0 +1,98 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.usb.UsbException;
+import javax.usb.UsbPipe;
+import javax.usb.util.DefaultUsbIrp;
+
+/**
+ * The Class ReusableUsbIrp is an IRP which is submitted again for every read of a download, into the same buffer.
+ * The reading thread is parked until the transfer completes, so a read allocates nothing while the device answers in time.
+ * The buffer is overwritten by the next read, the data must be decoded before the IRP is submitted again.
+ */
+public class ReusableUsbIrp extends DefaultUsbIrp {
+
+	private volatile Thread waiter;
+
+	/**
+	 * Instantiates a new reusable USB IRP.
+	 *
+	 * @param numberOfBytes the number of bytes to be read by each transfer
+	 */
+	public ReusableUsbIrp(final int numberOfBytes) {
+		super(new byte[numberOfBytes]);
+	}
+
+	/**
+	 * Submits the IRP on the connection pipe and waits until the transfer completes.
+	 * A transfer which does not complete in time is aborted, so the buffer is not written after the read returned.
+	 *
+	 * @param connectionPipe the open pipe to read the data from serial interface
+	 * @param timeout the time the device has to answer
+	 * @param unit the time unit of the timeout
+	 * @return the buffer holding the data read
+	 * @throws UsbException the USB exception of the transfer when the device failed or was unplugged
+	 * @throws TimeoutException the device is attached but did not answer in time
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public byte[] read(final UsbPipe connectionPipe, final long timeout, final TimeUnit unit) throws UsbException, TimeoutException, InterruptedException {
+		setComplete(false);
+		setUsbException(null);
+		setActualLength(0);
+		waiter = Thread.currentThread();
+		try {
+			connectionPipe.asyncSubmit(this);
+			final long deadline = System.nanoTime() + unit.toNanos(timeout);
+			while(!isComplete()) {
+				final long remainingNanos = deadline - System.nanoTime();
+				if(remainingNanos <= 0) {
+					connectionPipe.abortAllSubmissions();
+					throw new TimeoutException("The device did not answer within " + unit.toMillis(timeout) + " ms");
+				}
+				LockSupport.parkNanos(this, remainingNanos);
+				if(Thread.interrupted()) {
+					connectionPipe.abortAllSubmissions();
+					throw new InterruptedException();
+				}
+			}
+		} finally {
+			waiter = null;
+		}
+		if(isUsbException()) {
+			throw getUsbException();
+		}
+		return getData();
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.usb.util.DefaultUsbIrp#complete()
+	 */
+	@Override
+	public void complete() {
+		super.complete();
+		final Thread thread = waiter;
+		if(thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+}
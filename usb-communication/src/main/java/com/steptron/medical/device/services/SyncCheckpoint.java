@@ -0,0 +1,68 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.time.Instant;
+
+/**
+ * The Class SyncCheckpoint is the high-water mark of the last sync of a device: the number of readings the device
+ * reported and the measured time of the last reading downloaded. The next sync downloads the readings after the checkpoint
+ * only, and downloads everything again if the reading at the checkpoint has changed because the memory was cleared or wrapped.
+ */
+public class SyncCheckpoint {
+
+	private final int readingCount;
+	private final Instant lastMeasuredTime;
+
+	/**
+	 * Instantiates a new sync checkpoint.
+	 *
+	 * @param readingCount the number of readings the device reported
+	 * @param lastMeasuredTime the measured time of the last reading downloaded, null if no reading was downloaded
+	 */
+	public SyncCheckpoint(final int readingCount, final Instant lastMeasuredTime) {
+		this.readingCount = readingCount;
+		this.lastMeasuredTime = lastMeasuredTime;
+	}
+
+	/**
+	 * Gets the number of readings the device reported.
+	 *
+	 * @return the reading count
+	 */
+	public int getReadingCount() {
+		return this.readingCount;
+	}
+
+	/**
+	 * Gets the measured time of the last reading downloaded.
+	 *
+	 * @return the last measured time, null if no reading was downloaded
+	 */
+	public Instant getLastMeasuredTime() {
+		return this.lastMeasuredTime;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SyncCheckpoint [readingCount=" + readingCount + ", lastMeasuredTime=" + lastMeasuredTime + "]";
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.io.IOException;
+
+/**
+ * Persists the {@link SyncCheckpoint} of each device between the syncs.
+ */
+public interface SyncCheckpointStore {
+
+	/**
+	 * Loads the checkpoint of the device.
+	 *
+	 * @param deviceKey the key of the device, see {@link USBService#getDeviceKey(javax.usb.UsbDevice)}
+	 * @return the checkpoint, null if the device was never synced
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	SyncCheckpoint load(String deviceKey) throws IOException;
+
+	/**
+	 * Saves the checkpoint of the device once its sync completed.
+	 *
+	 * @param deviceKey the key of the device
+	 * @param checkpoint the checkpoint
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	void save(String deviceKey, SyncCheckpoint checkpoint) throws IOException;
+}
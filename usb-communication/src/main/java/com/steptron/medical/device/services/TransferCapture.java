@@ -0,0 +1,270 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.usb.event.UsbPipeDataEvent;
+import javax.usb.event.UsbPipeErrorEvent;
+import javax.usb.event.UsbPipeListener;
+
+import com.steptron.medical.device.services.CapturedTransfer.Direction;
+
+/**
+ * The Class TransferCapture records the data crossing the wire during the downloads of a {@link USBService}:
+ * every control-out frame written with {@link USBService#writeFrameToInterface(javax.usb.UsbDevice, javax.usb.UsbControlIrp, byte[])}
+ * and every interrupt-in payload read from the connection pipe, however the driver reads it. The capture is set with
+ * {@link USBService#setTransferCapture(TransferCapture)} and read back with {@link #read(Path)}, to be replayed by the emulator.
+ * <p>
+ * The file starts with the magic number, the version and the vendor id and product id of the device, followed by one record per transfer:
+ * the direction byte, the nanoseconds elapsed since the previous record and the data length as unsigned variable-length integers, and the data.
+ * The transfers of concurrent downloads are interleaved, so a capture is meant for the downloads from one device at a time.
+ * <p>
+ * A capture must not fail a download: the first write failure stops the capture and is thrown by {@link #close()}.
+ */
+public class TransferCapture implements UsbPipeListener, Closeable {
+
+	private static final int MAGIC = 0x55534243;
+	private static final int VERSION = 1;
+
+	private final DataOutputStream output;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private long lastNanos;
+	private IOException failure;
+	private boolean closed;
+
+	/**
+	 * Instantiates a new transfer capture writing to the file, which is replaced.
+	 *
+	 * @param file the capture file
+	 * @param vendorId the vendor id of the captured device
+	 * @param productId the product id of the captured device
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public TransferCapture(final Path file, final short vendorId, final short productId) throws IOException {
+		this(Files.newOutputStream(file), vendorId, productId);
+	}
+
+	/**
+	 * Instantiates a new transfer capture writing to the stream, which is closed with the capture.
+	 *
+	 * @param output the output stream
+	 * @param vendorId the vendor id of the captured device
+	 * @param productId the product id of the captured device
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public TransferCapture(final OutputStream output, final short vendorId, final short productId) throws IOException {
+		this.output = new DataOutputStream(new BufferedOutputStream(output));
+		this.output.writeInt(MAGIC);
+		this.output.writeByte(VERSION);
+		this.output.writeShort(vendorId);
+		this.output.writeShort(productId);
+		this.lastNanos = System.nanoTime();
+	}
+
+	/**
+	 * Records a control-out frame written to the device.
+	 *
+	 * @param frame the frame
+	 */
+	public void controlOut(final byte[] frame) {
+		record(Direction.CONTROL_OUT, frame, 0, frame.length);
+	}
+
+	/**
+	 * Records an interrupt-in payload read from the device.
+	 *
+	 * @param data the array holding the payload
+	 * @param offset the offset of the payload in the array
+	 * @param length the length of the payload
+	 */
+	public void interruptIn(final byte[] data, final int offset, final int length) {
+		record(Direction.INTERRUPT_IN, data, offset, length);
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.usb.event.UsbPipeListener#dataEventOccurred(javax.usb.event.UsbPipeDataEvent)
+	 */
+	@Override
+	public void dataEventOccurred(final UsbPipeDataEvent event) {
+		final byte[] data = event.getData();
+		interruptIn(data, 0, data.length);
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.usb.event.UsbPipeListener#errorEventOccurred(javax.usb.event.UsbPipeErrorEvent)
+	 */
+	@Override
+	public void errorEventOccurred(final UsbPipeErrorEvent event) {
+		//The failed reads did not carry any data from the device
+	}
+
+	/**
+	 * Writes the buffered records to the file.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred, or an earlier write failed.
+	 */
+	public void flush() throws IOException {
+		lock.lock();
+		try {
+			if(failure == null && !closed) {
+				output.flush();
+			}
+			if(failure != null) {
+				throw failure;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			try {
+				output.close();
+			} catch(IOException e) {
+				if(failure == null) {
+					failure = e;
+				}
+			}
+			if(failure != null) {
+				throw failure;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void record(final Direction direction, final byte[] data, final int offset, final int length) {
+		final long now = System.nanoTime();
+		lock.lock();
+		try {
+			if(closed || failure != null) {
+				return;
+			}
+			try {
+				//The events of the pipe may be delivered by another thread than the one writing, the time never goes back in the file
+				final long elapsedNanos = Math.max(0, now - lastNanos);
+				lastNanos += elapsedNanos;
+				output.writeByte(direction.ordinal());
+				writeUnsigned(elapsedNanos);
+				writeUnsigned(length);
+				output.write(data, offset, length);
+			} catch(IOException e) {
+				failure = e;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void writeUnsigned(long value) throws IOException {
+		while((value & ~0x7fL) != 0) {
+			output.writeByte((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		output.writeByte((int) value);
+	}
+
+	/**
+	 * Reads a capture file.
+	 *
+	 * @param file the capture file
+	 * @return the recording
+	 * @throws IOException Signals that an I/O exception has occurred, or the file is not a capture.
+	 */
+	public static TransferRecording read(final Path file) throws IOException {
+		try(InputStream input = Files.newInputStream(file)) {
+			return read(input);
+		}
+	}
+
+	/**
+	 * Reads a capture from the stream, up to the end of the stream. A record cut short by a crash during the capture is ignored.
+	 *
+	 * @param stream the input stream
+	 * @return the recording
+	 * @throws IOException Signals that an I/O exception has occurred, or the stream is not a capture.
+	 */
+	public static TransferRecording read(final InputStream stream) throws IOException {
+		final DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+		if(input.readInt() != MAGIC) {
+			throw new IOException("Not a transfer capture");
+		}
+		final int version = input.readUnsignedByte();
+		if(version != VERSION) {
+			throw new IOException("Unsupported transfer capture version " + version);
+		}
+		final short vendorId = input.readShort();
+		final short productId = input.readShort();
+		final Direction[] directions = Direction.values();
+		final List<CapturedTransfer> transfers = new ArrayList<CapturedTransfer>();
+		long elapsedNanos = 0;
+		int direction;
+		while((direction = input.read()) != -1) {
+			if(direction >= directions.length) {
+				throw new IOException("Unknown transfer direction " + direction);
+			}
+			final byte[] data;
+			try {
+				elapsedNanos += readUnsigned(input);
+				data = new byte[(int) readUnsigned(input)];
+				input.readFully(data);
+			} catch(EOFException e) {
+				break;
+			}
+			transfers.add(new CapturedTransfer(directions[direction], elapsedNanos, data));
+		}
+		return new TransferRecording(vendorId, productId, transfers);
+	}
+
+	private static long readUnsigned(final DataInputStream input) throws IOException {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			final int nextByte = input.readUnsignedByte();
+			value |= (long) (nextByte & 0x7f) << shift;
+			if((nextByte & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed transfer capture");
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Class TransferRecording is a capture written by {@link TransferCapture} and read back with {@link TransferCapture#read(java.nio.file.Path)}.
+ */
+public class TransferRecording {
+
+	private final short vendorId;
+	private final short productId;
+	private final List<CapturedTransfer> transfers;
+
+	/**
+	 * Instantiates a new transfer recording.
+	 *
+	 * @param vendorId the vendor id of the captured device
+	 * @param productId the product id of the captured device
+	 * @param transfers the captured transfers in the order they completed
+	 */
+	public TransferRecording(final short vendorId, final short productId, final List<CapturedTransfer> transfers) {
+		this.vendorId = vendorId;
+		this.productId = productId;
+		this.transfers = Collections.unmodifiableList(transfers);
+	}
+
+	/**
+	 * Gets the vendor id of the captured device.
+	 *
+	 * @return the vendor id
+	 */
+	public short getVendorId() {
+		return this.vendorId;
+	}
+
+	/**
+	 * Gets the product id of the captured device.
+	 *
+	 * @return the product id
+	 */
+	public short getProductId() {
+		return this.productId;
+	}
+
+	/**
+	 * Gets the captured transfers in the order they completed.
+	 *
+	 * @return the transfers
+	 */
+	public List<CapturedTransfer> getTransfers() {
+		return this.transfers;
+	}
+}
@@ -17,8 +17,16 @@
  */
 package com.steptron.medical.device.services;
 
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.usb.UsbClaimException;
 import javax.usb.UsbConfiguration;
@@ -28,15 +36,16 @@ import javax.usb.UsbDeviceDescriptor;
 import javax.usb.UsbDisconnectedException;
 import javax.usb.UsbEndpoint;
 import javax.usb.UsbException;
-import javax.usb.UsbHostManager;
-import javax.usb.UsbHub;
 import javax.usb.UsbInterface;
 import javax.usb.UsbPipe;
-import javax.usb.UsbServices;
 
 import org.usb4java.javax.DeviceNotFoundException;
 
 import com.steptron.medical.device.exception.DeviceConnectionException;
+import com.steptron.medical.device.jfr.ControlOutEvent;
+import com.steptron.medical.device.jfr.DeviceSessionEvent;
+import com.steptron.medical.device.jfr.FlightRecorderEvents;
+import com.steptron.medical.device.jfr.InterruptInEvent;
 
 /**
  * This is an abstract class which provides functionality related to USB serial interfacing.
@@ -57,8 +66,102 @@ public abstract class USBService {
 	/** The Constant BYTE_ARRAY_LENGTH_128. */
 	public static final int BYTE_ARRAY_LENGTH_128 = 128;
 
+	/** The device the downloads running on the current thread are targeted at, null to use the first device found. */
+	private static final ThreadLocal<UsbDevice> TARGET_DEVICE = new ThreadLocal<UsbDevice>();
+
+	/** The session of the download running on the current thread, which is not reused once one of its reads timed out. */
+	private static final ThreadLocal<DeviceSession> CURRENT_SESSION = new ThreadLocal<DeviceSession>();
+
+	/** The session pool keeping the device sessions open between downloads, null to open a session per download. */
+	private DeviceSessionPool sessionPool;
+
+	/** The capture recording the transfers of the downloads, null when the transfers are not captured. */
+	private volatile TransferCapture transferCapture;
+
+	/** The listener of the download metrics, null when the downloads are not measured. */
+	private volatile DownloadMetricsListener metricsListener;
+
 	public abstract Collection<?> getMeasurements(String user) throws DeviceNotFoundException, DeviceConnectionException, SecurityException, UsbException, InterruptedException;
 
+	/**
+	 * Downloads the measurements of the user on the executor, so the calling thread is not tied up for the whole download.
+	 * Cancelling the future aborts the pending IRPs of the download and closes its session.
+	 *
+	 * @param user the user for which the measurements are downloaded
+	 * @param executor the executor running the download
+	 * @return the future of the measurements
+	 */
+	public CompletableFuture<? extends Collection<?>> getMeasurementsAsync(final String user, final Executor executor) {
+		return downloadAsync(() -> getMeasurements(user), executor);
+	}
+
+	/**
+	 * Downloads the measurements of the user on a thread of its own, a virtual thread if the Java runtime supports them.
+	 *
+	 * @param user the user for which the measurements are downloaded
+	 * @return the future of the measurements
+	 * @see DownloadExecutors#getDefaultExecutor()
+	 */
+	public CompletableFuture<? extends Collection<?>> getMeasurementsAsync(final String user) {
+		return getMeasurementsAsync(user, DownloadExecutors.getDefaultExecutor());
+	}
+
+	/**
+	 * Runs the download on the executor. The sessions opened by the download are aborted when the returned future is cancelled.
+	 *
+	 * @param download the blocking download
+	 * @param executor the executor running the download
+	 * @return the future of the measurements
+	 */
+	protected <T> CompletableFuture<T> downloadAsync(final Callable<T> download, final Executor executor) {
+		return AsyncDownload.start(download, executor);
+	}
+
+	/**
+	 * Runs the download on every attached device with the vendor id and product id, each device on its own task of the executor.
+	 * The downloads run concurrently if the executor has a thread per device, so the fleet download takes as long as the slowest device.
+	 * A device which fails does not stop the downloads from the other devices, its failure is returned in its {@link DeviceDownload}.
+	 *
+	 * @param vendorId the vendor id of the USB devices
+	 * @param productId the product id of the USB devices
+	 * @param download the download, targeted at each device in turn
+	 * @param executor the executor running the downloads
+	 * @return the future of the downloads, in the order of the hub tree, completed once all the downloads are completed
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
+	 */
+	protected <T> CompletableFuture<List<DeviceDownload<T>>> downloadFromAllDevices(final short vendorId, final short productId, final Callable<T> download, final Executor executor) throws SecurityException, UsbException {
+		final List<CompletableFuture<DeviceDownload<T>>> downloads = new ArrayList<CompletableFuture<DeviceDownload<T>>>();
+		for(final UsbDevice device : getUSBDevices(vendorId, productId)) {
+			downloads.add(downloadAsync(() -> downloadFrom(device, download), executor).handle((measurements, failure) -> new DeviceDownload<T>(device, measurements, failure)));
+		}
+		return CompletableFuture.allOf(downloads.toArray(new CompletableFuture<?>[downloads.size()])).thenApply(completed -> {
+			final List<DeviceDownload<T>> deviceDownloads = new ArrayList<DeviceDownload<T>>(downloads.size());
+			for(final CompletableFuture<DeviceDownload<T>> deviceDownload : downloads) {
+				deviceDownloads.add(deviceDownload.join());
+			}
+			return deviceDownloads;
+		});
+	}
+
+	/**
+	 * Runs the download targeted at the given device, {@link #getUSBDevice(short, short)} returns this device while the download runs.
+	 *
+	 * @param device the device to download from
+	 * @param download the download
+	 * @return the measurements
+	 * @throws Exception the exception of the download
+	 */
+	protected <T> T downloadFrom(final UsbDevice device, final Callable<T> download) throws Exception {
+		final UsbDevice previousDevice = TARGET_DEVICE.get();
+		TARGET_DEVICE.set(device);
+		try {
+			return download.call();
+		} finally {
+			TARGET_DEVICE.set(previousDevice);
+		}
+	}
+
 	/**
 	 * Initialise the device to start the serial communication.
 	 *
@@ -90,6 +193,58 @@ public abstract class USBService {
 	 */
 	public abstract byte[] readData(final UsbPipe connectionPipe, final int numberOfBytes) throws UsbException;
 
+	/**
+	 * Reads data from the serial interface without parking the calling thread while the device answers.
+	 * The future completes exceptionally with a {@link java.util.concurrent.TimeoutException} if the device does not
+	 * answer within the timeout, or with the {@link UsbException} of the transfer if the device failed or was unplugged.
+	 * The read is reported to the flight recorder as an {@link InterruptInEvent} when it completes.
+	 *
+	 * @param connectionPipe the USB connection object which will be used to read the data from the serial interface
+	 * @param numberOfBytes the number of bytes to be read from the serial interface
+	 * @param timeoutMillis the time in milliseconds the device has to answer
+	 * @return the future of the byte array read from the serial interface
+	 */
+	public CompletableFuture<byte[]> readDataAsync(final UsbPipe connectionPipe, final int numberOfBytes, final long timeoutMillis) {
+		final InterruptInEvent event = FlightRecorderEvents.beginInterruptIn();
+		final CompletableFuture<byte[]> transfer = UsbTransfers.read(connectionPipe, numberOfBytes, timeoutMillis, TimeUnit.MILLISECONDS);
+		if(event != null) {
+			transfer.whenComplete((data, failure) -> event.complete(connectionPipe, numberOfBytes, data, failure));
+		}
+		final DownloadMetricsListener listener = metricsListener;
+		if(listener != null) {
+			final String deviceModel = getDeviceModel();
+			transfer.whenComplete((data, failure) -> {
+				if(failure instanceof TimeoutException) {
+					listener.transferTimedOut(deviceModel);
+				}
+			});
+		}
+		return transfer;
+	}
+
+	/**
+	 * Waits for the data of a transfer started with {@link #readDataAsync(UsbPipe, int, long)}.
+	 * A failed or timed out transfer is thrown as a {@link DeviceConnectionException} caused by the failure of the transfer,
+	 * a timed out transfer also keeps the session of the download from being reused.
+	 *
+	 * @param transfer the future of the transfer
+	 * @param message the message to be shown on the UI if the transfer failed
+	 * @return the byte array read from the serial interface
+	 */
+	protected byte[] awaitData(final CompletableFuture<byte[]> transfer, final String message) {
+		try {
+			return transfer.get();
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof TimeoutException) {
+				markSessionNotReusable();
+			}
+			throw new DeviceConnectionException(message, e.getCause());
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DeviceConnectionException(message, e);
+		}
+	}
+
 	/**
 	 * Terminate device communication.
 	 *
@@ -100,6 +255,237 @@ public abstract class USBService {
 	 */
 	public abstract void terminateDeviceCommunication(final UsbDevice device, final UsbControlIrp usbControl, final UsbPipe connectionPipe) throws UsbException, InterruptedException;
 
+	/**
+	 * Sets the session pool which keeps the claimed interface and the open pipe of the device between downloads.
+	 * When no pool is set every download claims the interface and releases it when it completes.
+	 *
+	 * @param sessionPool the session pool, null to open a session per download
+	 */
+	public void setSessionPool(final DeviceSessionPool sessionPool) {
+		this.sessionPool = sessionPool;
+	}
+
+	/**
+	 * Gets the session pool.
+	 *
+	 * @return the session pool, null if a session is opened per download
+	 */
+	public DeviceSessionPool getSessionPool() {
+		return this.sessionPool;
+	}
+
+	/**
+	 * Sets the capture recording the control-out frames and the interrupt-in payloads of the downloads started from now on.
+	 *
+	 * @param transferCapture the transfer capture, null to stop capturing
+	 */
+	public void setTransferCapture(final TransferCapture transferCapture) {
+		this.transferCapture = transferCapture;
+	}
+
+	/**
+	 * Gets the transfer capture.
+	 *
+	 * @return the transfer capture, null if the transfers are not captured
+	 */
+	public TransferCapture getTransferCapture() {
+		return this.transferCapture;
+	}
+
+	/**
+	 * Sets the listener reporting the time of each phase, the transfers, the timeouts and the retries of the downloads started from now on.
+	 *
+	 * @param metricsListener the metrics listener, null to stop measuring the downloads
+	 */
+	public void setMetricsListener(final DownloadMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	/**
+	 * Gets the metrics listener.
+	 *
+	 * @return the metrics listener, null if the downloads are not measured
+	 */
+	public DownloadMetricsListener getMetricsListener() {
+		return this.metricsListener;
+	}
+
+	/**
+	 * Gets the device model the metrics of the downloads are reported for, the name of the class without the USBService suffix, e.g. BM55.
+	 *
+	 * @return the device model
+	 */
+	public String getDeviceModel() {
+		final String name = getClass().getSimpleName();
+		return name.endsWith("USBService") ? name.substring(0, name.length() - "USBService".length()) : name;
+	}
+
+	/**
+	 * Creates the timer of the phases of a download, which does nothing if no metrics listener is set.
+	 *
+	 * @return the phase timer
+	 */
+	protected DownloadPhaseTimer startPhaseTimer() {
+		final DownloadMetricsListener listener = metricsListener;
+		return listener == null ? DownloadPhaseTimer.DISABLED : new DownloadPhaseTimer(listener, getDeviceModel());
+	}
+
+	/**
+	 * Keeps the session of the download running on the current thread from being reused once it is closed.
+	 * The IRP of a read which timed out stays submitted and the device may still answer it later,
+	 * so the session is left in an unknown state even if the download carries on and completes.
+	 */
+	protected void markSessionNotReusable() {
+		final DeviceSession session = CURRENT_SESSION.get();
+		if(session != null) {
+			session.transferTimedOut();
+		}
+	}
+
+	/**
+	 * Reports to the metrics listener that a part of the download is requested again.
+	 */
+	protected void reportRetry() {
+		final DownloadMetricsListener listener = metricsListener;
+		if(listener != null) {
+			listener.retried(getDeviceModel());
+		}
+	}
+
+	/**
+	 * Reports to the metrics listener that the device did not answer a read in time.
+	 */
+	protected void reportTimeout() {
+		final DownloadMetricsListener listener = metricsListener;
+		if(listener != null) {
+			listener.transferTimedOut(getDeviceModel());
+		}
+	}
+
+	/**
+	 * Opens the session to the device with the vendor id and product id, reusing the pooled session if there is one.
+	 * The device lookup and the claim are reported to the metrics listener as the first phases of the download,
+	 * the session is reported to the flight recorder as a {@link DeviceSessionEvent} when it is closed.
+	 *
+	 * @param vendorId the vendor id of the USB device
+	 * @param productId the product id of the USB device
+	 * @return the session to be closed with {@link #closeSession(DeviceSession, boolean)}
+	 * @throws UsbException the USB exception
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public DeviceSession openSession(final short vendorId, final short productId) throws UsbException, InterruptedException {
+		final DeviceSessionEvent sessionEvent = FlightRecorderEvents.beginDeviceSession();
+		final DownloadPhaseTimer timer = startPhaseTimer();
+		final DeviceSession session;
+		boolean opened = false;
+		try {
+			timer.start(DownloadPhase.DEVICE_LOOKUP);
+			final UsbDevice device = getUSBDevice(vendorId, productId);
+			timer.start(DownloadPhase.CLAIM);
+			session = sessionPool == null ? createSession(device) : sessionPool.acquire(device, this::createSession);
+			opened = true;
+		} finally {
+			timer.stop(opened);
+			if(!opened && sessionEvent != null) {
+				sessionEvent.complete(vendorId, productId, getDeviceModel(), sessionPool != null, false);
+			}
+		}
+		session.setSessionEvent(sessionEvent);
+		CURRENT_SESSION.set(session);
+		//The session is closed if the listeners cannot be attached, otherwise it would never be returned to the pool
+		try {
+			final TransferCapture capture = transferCapture;
+			if(capture != null) {
+				session.getConnectionPipe().addUsbPipeListener(capture);
+				session.setTransferCapture(capture);
+			}
+			final DownloadMetricsListener listener = metricsListener;
+			if(listener != null) {
+				final MetricsPipeListener pipeListener = new MetricsPipeListener(listener, getDeviceModel());
+				session.getConnectionPipe().addUsbPipeListener(pipeListener);
+				session.getDevice().addUsbDeviceListener(pipeListener);
+				session.setMetricsPipeListener(pipeListener);
+			}
+			AsyncDownload.sessionOpened(session);
+		} catch(RuntimeException e) {
+			try {
+				closeSession(session, false);
+			} catch(RuntimeException closeFailure) {
+				e.addSuppressed(closeFailure);
+			}
+			throw e;
+		}
+		return session;
+	}
+
+	/**
+	 * Creates a new session by claiming the interface 0 and opening the pipe of the endpoint -127.
+	 *
+	 * @param device the device object with which the communication to be instantiated
+	 * @return the open session
+	 * @throws UsbException the USB exception
+	 */
+	public DeviceSession createSession(final UsbDevice device) throws UsbException {
+		//Get USB connection with interface number 0 and endpoint number -127
+		final UsbPipe connectionPipe = getUSBConnection(device, 0, -127);
+		final byte requestType = 33;
+		final byte request = 0x09;
+		final short value = 521;
+		final short index = 0;
+
+		//Get usbControl with the above specified parameter. This object is needed to send data to the USB device
+		final UsbControlIrp usbControl = getUSBControl(device, requestType, request, value, index);
+		try {
+			//Open the USB communication
+			connectionPipe.open();
+		} catch(UsbException | RuntimeException e) {
+			try {
+				connectionPipe.getUsbEndpoint().getUsbInterface().release();
+			} catch(UsbException | RuntimeException releaseException) {
+				//Do nothing
+			}
+			throw e;
+		}
+		return new DeviceSession(device, connectionPipe, usbControl);
+	}
+
+	/**
+	 * Closes the session, or returns it to the session pool if one is set.
+	 * A session on which a read timed out is closed even if the download completed, as a late answer of the device
+	 * would be taken for the answer to the first command of the next download.
+	 *
+	 * @param session the session
+	 * @param completed true if the download completed and the session can be reused
+	 */
+	public void closeSession(final DeviceSession session, final boolean completed) {
+		AsyncDownload.sessionClosed(session);
+		if(CURRENT_SESSION.get() == session) {
+			CURRENT_SESSION.remove();
+		}
+		final TransferCapture capture = session.getTransferCapture();
+		if(capture != null) {
+			session.getConnectionPipe().removeUsbPipeListener(capture);
+			session.setTransferCapture(null);
+		}
+		final MetricsPipeListener pipeListener = session.getMetricsPipeListener();
+		if(pipeListener != null) {
+			session.getConnectionPipe().removeUsbPipeListener(pipeListener);
+			session.getDevice().removeUsbDeviceListener(pipeListener);
+			session.setMetricsPipeListener(null);
+		}
+		final DeviceSessionEvent sessionEvent = session.getSessionEvent();
+		if(sessionEvent != null) {
+			session.setSessionEvent(null);
+			final UsbDeviceDescriptor descriptor = session.getDevice().getUsbDeviceDescriptor();
+			sessionEvent.complete(descriptor.idVendor(), descriptor.idProduct(), getDeviceModel(), sessionPool != null, completed);
+		}
+		if(sessionPool == null) {
+			session.close();
+		} else {
+			sessionPool.release(session, completed && !session.isTransferTimedOut());
+		}
+	}
+
 	/**
 	 * Creates the USB control object which will be used to write the data to the serial interface.
 	 *
@@ -151,9 +537,38 @@ public abstract class USBService {
 	 */
 	public void writeDataToInterface(final UsbDevice device, final UsbControlIrp usbControl, final byte[] data, final int bytesLength, final byte paddingByte) throws IllegalArgumentException, UsbDisconnectedException, UsbException {
 		final byte[] outBuffer = getPaddedByteArray(data, bytesLength, paddingByte);
-		usbControl.setData(outBuffer);
-		device.asyncSubmit(usbControl);
+		writeFrameToInterface(device, usbControl, outBuffer);
+	}
 
+	/**
+	 * Writes a command frame which is already padded to the length expected by the device.
+	 * The frame is not copied, so a driver can fill the same frame for each command of a download,
+	 * once the device answered the previous command. The write is reported to the flight recorder as a {@link ControlOutEvent},
+	 * and to the metrics listener of the session once the IRP completes.
+	 *
+	 * @param device the device object with which the communication is instantiated
+	 * @param usbControl to write the data to serial interface
+	 * @param frame the padded command frame
+	 * @throws IllegalArgumentException the illegal argument exception
+	 * @throws UsbDisconnectedException the USB disconnected exception
+	 * @throws UsbException the USB exception
+	 */
+	public void writeFrameToInterface(final UsbDevice device, final UsbControlIrp usbControl, final byte[] frame) throws IllegalArgumentException, UsbDisconnectedException, UsbException {
+		final TransferCapture capture = transferCapture;
+		if(capture != null) {
+			capture.controlOut(frame);
+		}
+		final ControlOutEvent event = FlightRecorderEvents.beginControlOut();
+		boolean submitted = false;
+		try {
+			usbControl.setData(frame);
+			device.asyncSubmit(usbControl);
+			submitted = true;
+		} finally {
+			if(event != null) {
+				event.complete(device, frame.length, submitted);
+			}
+		}
 	}
 
 	/**
@@ -175,8 +590,28 @@ public abstract class USBService {
 		return outputArray;
 	}
 
+	/**
+	 * Gets the key identifying the device in the sync checkpoints, the vendor id and product id followed by the serial number if the device has one.
+	 *
+	 * @param device the USB device
+	 * @return the device key
+	 */
+	public String getDeviceKey(final UsbDevice device) {
+		final UsbDeviceDescriptor descriptor = device.getUsbDeviceDescriptor();
+		String serialNumber = null;
+		try {
+			serialNumber = descriptor.iSerialNumber() == 0 ? null : device.getSerialNumberString();
+		} catch(UsbException | UnsupportedEncodingException | RuntimeException e) {
+			//The devices without a readable serial number are identified by the vendor id and product id
+		}
+		final String deviceKey = String.format("%04x:%04x", descriptor.idVendor() & 0xffff, descriptor.idProduct() & 0xffff);
+		return serialNumber == null ? deviceKey : deviceKey + ":" + serialNumber.trim();
+	}
+
 	/**
 	 * Finds the USB device if connected using vendor id and product id.
+	 * The lookup is served from the {@link DeviceTopologyCache} which is invalidated whenever a device is attached or detached.
+	 * While a download targeted at a device with {@link #downloadFrom(UsbDevice, Callable)} runs, that device is returned.
 	 *
 	 * @param vendorId the vendor id of the USB device
 	 * @param productId the product id of the USB device
@@ -185,9 +620,11 @@ public abstract class USBService {
 	 * @throws SecurityException
 	 */
 	public UsbDevice getUSBDevice(final short vendorId, final short productId) throws SecurityException, UsbException {
-		UsbServices services = UsbHostManager.getUsbServices();
-		final UsbHub rootUSBHub = services.getRootUsbHub();
-		UsbDevice device = findDevice(rootUSBHub, vendorId, productId);
+		UsbDevice device = TARGET_DEVICE.get();
+		if(device != null && device.getUsbDeviceDescriptor().idVendor() == vendorId && device.getUsbDeviceDescriptor().idProduct() == productId) {
+			return device;
+		}
+		device = DeviceTopologyCache.getInstance().getDevice(vendorId, productId);
 		if(device == null) {
 			throw new DeviceConnectionException("Device not found - is the device plugged into the USB port?");
 		}
@@ -195,27 +632,15 @@ public abstract class USBService {
 	}
 
 	/**
-	 * Find the device if connected using vendor id and product id in each Hub recursively.
+	 * Finds all the USB devices connected with the vendor id and product id, e.g. several devices of the same model plugged into a hub.
 	 *
-	 * @param hub the USB hub
-	 * @param vendorId the vendor id of the USB device
-	 * @param productId the product id of the USB device
-	 * @return the USB device
+	 * @param vendorId the vendor id of the USB devices
+	 * @param productId the product id of the USB devices
+	 * @return the USB devices in the order of the hub tree, empty if no such device is connected
+	 * @throws SecurityException the security exception
+	 * @throws UsbException the USB exception
 	 */
-	@SuppressWarnings("unchecked")
-	private UsbDevice findDevice(final UsbHub hub, final short vendorId, final short productId) {
-		for(UsbDevice device : (List<UsbDevice>) hub.getAttachedUsbDevices()) {
-			final UsbDeviceDescriptor desc = device.getUsbDeviceDescriptor();
-			if(desc.idVendor() == vendorId && desc.idProduct() == productId) {
-				return device;
-			}
-			if(device.isUsbHub()) {
-				device = findDevice((UsbHub) device, vendorId, productId);
-				if(device != null) {
-					return device;
-				}
-			}
-		}
-		return null;
+	public List<UsbDevice> getUSBDevices(final short vendorId, final short productId) throws SecurityException, UsbException {
+		return DeviceTopologyCache.getInstance().getDevices(vendorId, productId);
 	}
-}
+}
\ No newline at end of file
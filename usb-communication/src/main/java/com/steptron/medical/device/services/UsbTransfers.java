@@ -0,0 +1,90 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.usb.UsbException;
+import javax.usb.UsbPipe;
+
+/**
+ * The Class UsbTransfers submits the transfers of the connection pipes and returns their results as futures.
+ * No thread is parked while a transfer is in flight: the transfer is completed by the USB event thread and
+ * the deadlines of all the transfers are kept by one shared timer thread, so one thread can service many devices.
+ * The outcome of a transfer tells a slow device from a dead one:
+ * <ul>
+ * <li>the future completes with the data when the device answers</li>
+ * <li>the future completes exceptionally with the {@link UsbException} of the transfer when the device failed or was unplugged</li>
+ * <li>the future completes exceptionally with a {@link TimeoutException} when the device is attached but did not answer in time</li>
+ * </ul>
+ */
+public final class UsbTransfers {
+
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "usb-transfer-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private UsbTransfers() {
+	}
+
+	/**
+	 * Submits a read of the given number of bytes on the connection pipe.
+	 * A transfer which times out stays submitted, the next data sent by the device completes it and is not seen by the following reads.
+	 *
+	 * @param connectionPipe the open pipe to read the data from serial interface
+	 * @param numberOfBytes the number of bytes to be read from the serial interface
+	 * @param timeout the time the device has to answer
+	 * @param unit the time unit of the timeout
+	 * @return the future of the data read
+	 */
+	public static CompletableFuture<byte[]> read(final UsbPipe connectionPipe, final int numberOfBytes, final long timeout, final TimeUnit unit) {
+		final CompletableUsbIrp irp = new CompletableUsbIrp(new byte[numberOfBytes]);
+		final CompletableFuture<byte[]> future = irp.getFuture();
+		try {
+			connectionPipe.asyncSubmit(irp);
+		} catch(UsbException | RuntimeException e) {
+			future.completeExceptionally(e);
+			return future;
+		}
+		return withTimeout(future, timeout, unit);
+	}
+
+	/**
+	 * Completes the future exceptionally with a {@link TimeoutException} if it is not completed within the timeout.
+	 *
+	 * @param future the future of a transfer
+	 * @param timeout the timeout
+	 * @param unit the time unit of the timeout
+	 * @return the same future
+	 */
+	public static <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future, final long timeout, final TimeUnit unit) {
+		if(future.isDone()) {
+			return future;
+		}
+		final ScheduledFuture<?> timeoutTask = TIMER.schedule(() -> future.completeExceptionally(new TimeoutException("The device did not answer within " + unit.toMillis(timeout) + " ms")), timeout, unit);
+		future.whenComplete((data, throwable) -> timeoutTask.cancel(false));
+		return future;
+	}
+}
@@ -40,6 +40,18 @@ public class BytesManipulator {
 		return integerReadings;
 	}
 
+	/**
+	 * Convert the two bytes at the offset of the reading to an integer, without converting the whole reading.
+	 * e.g. reading = {0, 0, 2, 137}, offset = 2 is converted as 2*256 + 137 = 649
+	 *
+	 * @param reading the reading
+	 * @param offset the offset of the first byte
+	 * @return the converted integer value
+	 */
+	public static int convertBytesToInteger(final byte[] reading, final int offset) {
+		return convertTwoBytesToInteger(reading[offset], reading[offset + 1]);
+	}
+
 	/**
 	 * Convert two bytes to integer. In the process of doing the same
 	 * convert 2 bytes to 1 integer value.
@@ -0,0 +1,107 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.util;
+
+/**
+ * EpochTime class contains the arithmetic conversion of the date and time stored by the devices to the epoch time in UTC,
+ * without creating the java.time objects, for the decoding of the readings in bulk.
+ */
+public final class EpochTime {
+
+	/** The Constant INVALID is returned for a date or time which does not exist, it is not the epoch second of any reading. */
+	public static final long INVALID = Long.MIN_VALUE;
+
+	private static final int SECONDS_PER_DAY = 86400;
+	private static final int DAYS_PER_ERA = 146097;
+	private static final int DAYS_FROM_ERA_TO_EPOCH = 719468;
+
+	private EpochTime() {
+	}
+
+	/**
+	 * Converts the date and time in UTC to the seconds since the epoch.
+	 * The fields are not validated, a date which does not exist is converted as if the days overflowed to the next month.
+	 *
+	 * @param year the year
+	 * @param month the month, 1 to 12
+	 * @param day the day of the month
+	 * @param hour the hour
+	 * @param minute the minute
+	 * @return the epoch seconds
+	 */
+	public static long toEpochSecond(final int year, final int month, final int day, final int hour, final int minute) {
+		return toEpochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60;
+	}
+
+	/**
+	 * Converts the date and time at the offset from UTC to the seconds since the epoch, validating the fields without throwing an exception.
+	 * This is the epoch second of LocalDateTime.of(year, month, day, hour, minute).toInstant(offset) for the dates it accepts.
+	 *
+	 * @param year the year
+	 * @param month the month, 1 to 12
+	 * @param day the day of the month
+	 * @param hour the hour, 0 to 23
+	 * @param minute the minute, 0 to 59
+	 * @param offsetSeconds the offset of the date and time from UTC in seconds
+	 * @return the epoch seconds, or {@link #INVALID} if the month, the day, the hour or the minute is out of range
+	 */
+	public static long toValidEpochSecond(final int year, final int month, final int day, final int hour, final int minute, final int offsetSeconds) {
+		if(month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+			return INVALID;
+		}
+		return toEpochSecond(year, month, day, hour, minute) - offsetSeconds;
+	}
+
+	/**
+	 * Gets the number of days of the month.
+	 *
+	 * @param year the year
+	 * @param month the month, 1 to 12
+	 * @return the length of the month
+	 */
+	public static int lengthOfMonth(final int year, final int month) {
+		switch(month) {
+			case 2:
+				return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+			case 4:
+			case 6:
+			case 9:
+			case 11:
+				return 30;
+			default:
+				return 31;
+		}
+	}
+
+	/**
+	 * Converts the date to the days since the epoch, counting the years from March so that the leap day is the last day of the year.
+	 *
+	 * @param year the year
+	 * @param month the month, 1 to 12
+	 * @param day the day of the month
+	 * @return the epoch day
+	 */
+	public static long toEpochDay(final int year, final int month, final int day) {
+		final int marchYear = month <= 2 ? year - 1 : year;
+		final int era = (marchYear >= 0 ? marchYear : marchYear - 399) / 400;
+		final int yearOfEra = marchYear - era * 400;
+		final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return (long) era * DAYS_PER_ERA + dayOfEra - DAYS_FROM_ERA_TO_EPOCH;
+	}
+}
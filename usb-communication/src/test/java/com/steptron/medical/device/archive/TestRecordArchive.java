@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.archive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.steptron.medical.device.domain.BF480Measurement;
+import com.steptron.medical.device.domain.BF480MeasurementView;
+import com.steptron.medical.device.domain.BM55Measurement;
+import com.steptron.medical.device.domain.BM55MeasurementView;
+import com.steptron.medical.device.domain.MeasurementTimeline;
+import com.steptron.medical.device.emulator.BF480Emulator;
+import com.steptron.medical.device.emulator.BM55Emulator;
+
+/**
+ * Tests the archives keep the raw readings across the segment files and after they are opened again.
+ */
+public class TestRecordArchive {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	/**
+	 * Test the BM55 readings appended over several segments are read back after the archive is opened again, and are found by measured time.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testBM55ArchiveAcrossSegments() throws Exception {
+		Path directory = temporaryFolder.getRoot().toPath();
+		List<BM55Measurement> measurements = BM55Emulator.generateMeasurements(50);
+		try(BM55Archive archive = new BM55Archive(directory, 16)) {
+			for(BM55Measurement measurement : measurements.subList(0, 30)) {
+				archive.append(BM55Emulator.encode(measurement));
+			}
+		}
+		//The appends continue in the last segment of the archive opened again
+		try(BM55Archive archive = new BM55Archive(directory, 16)) {
+			assertEquals(30, archive.size());
+			for(BM55Measurement measurement : measurements.subList(30, 50)) {
+				archive.append(BM55Emulator.encode(measurement));
+			}
+		}
+
+		try(BM55Archive archive = new BM55Archive(directory, 16); Stream<Path> files = Files.list(directory)) {
+			assertEquals(4, files.count());
+			assertEquals(50, archive.size());
+			BM55MeasurementView view = new BM55MeasurementView();
+			for(int index = 0; index < measurements.size(); index++) {
+				assertArrayEquals(measurements.get(index).getAllValues(), archive.getReading(index, view).toMeasurement().getAllValues());
+			}
+			for(int index = 0; index < measurements.size(); index++) {
+				long measuredTime = measurements.get(index).getMeasuredTime().getEpochSecond();
+				assertEquals(index + 1, archive.indexOfFirstAfter(measuredTime));
+				assertEquals(index, archive.indexOfFirstAfter(measuredTime - 1));
+			}
+			assertEquals(measurements.get(49).getMeasuredTime().getEpochSecond(), archive.getLastMeasuredTime());
+
+			MeasurementTimeline<BM55Measurement> timeline = archive.loadTimeline(measurements.get(20).getMeasuredTime().getEpochSecond());
+			assertEquals(30, timeline.size());
+			assertArrayEquals(measurements.get(20).getAllValues(), timeline.get(0).getAllValues());
+			assertEquals(50, archive.loadTimeline(Long.MIN_VALUE).size());
+		}
+	}
+
+	/**
+	 * Test a reading older than the last reading of the archive is rejected, and readings measured at the same time are kept in order.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testBF480ArchiveKeepsTimeOrder() throws Exception {
+		List<BF480Measurement> measurements = BF480Emulator.generateMeasurements(3).get(0);
+		try(BF480Archive archive = new BF480Archive(temporaryFolder.getRoot().toPath(), "patient-1", 2)) {
+			archive.append(encode(measurements.get(0)));
+			archive.append(encode(measurements.get(2)));
+			archive.append(encode(measurements.get(2)));
+			try {
+				archive.append(encode(measurements.get(1)));
+				throw new AssertionError("An older reading was appended");
+			} catch(IllegalArgumentException e) {
+				//expected
+			}
+
+			assertEquals(3, archive.size());
+			assertEquals(1, archive.indexOfFirstAfter(measurements.get(1).getMeasuredTime().getEpochSecond()));
+			assertEquals(3, archive.indexOfFirstAfter(measurements.get(2).getMeasuredTime().getEpochSecond()));
+			BF480MeasurementView view = new BF480MeasurementView();
+			assertArrayEquals(measurements.get(0).getAllValues(), archive.getReading(0, view).toMeasurement().getAllValues());
+			assertArrayEquals(measurements.get(2).getAllValues(), archive.getReading(2, view).toMeasurement().getAllValues());
+		}
+	}
+
+	private static byte[] encode(final BF480Measurement measurement) {
+		int[] fields = BF480Emulator.encode(measurement);
+		byte[] reading = new byte[BF480MeasurementView.RECORD_LENGTH];
+		for(int fieldCounter = 0; fieldCounter < fields.length; fieldCounter++) {
+			reading[fieldCounter * 2] = (byte) (fields[fieldCounter] >> 8);
+			reading[fieldCounter * 2 + 1] = (byte) fields[fieldCounter];
+		}
+		return reading;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.domain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.steptron.medical.device.emulator.BF480Emulator;
+import com.steptron.medical.device.emulator.BM55Emulator;
+import com.steptron.medical.device.services.BF480MemoryDecoder;
+
+/**
+ * Tests the batch decoder skips and reports the corrupt frames, and decodes the other frames the same as the measurement constructors.
+ */
+public class TestMeasurementBatchDecoder {
+
+	private final List<String> rejections = new ArrayList<String>();
+	private final MeasurementBatchDecoder decoder = new MeasurementBatchDecoder(ZoneOffset.UTC, (frameNumber, error) -> rejections.add(frameNumber + ":" + error));
+
+	/**
+	 * Test the corrupt BM55 frames and the bytes left at the end of the batch are rejected, and the other frames decoded.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testDecodeBM55RejectsCorruptFrames() throws Exception {
+		List<byte[]> frames = new ArrayList<byte[]>();
+		for(BM55Measurement measurement : BM55Emulator.generateMeasurements(20)) {
+			frames.add(BM55Emulator.encode(measurement));
+		}
+		//31st of February and 25 o'clock
+		frames.get(3)[3] = 2;
+		frames.get(3)[4] = 31;
+		frames.get(7)[5] = 25;
+		ByteBuffer buffer = ByteBuffer.allocate(frames.size() * BM55MeasurementView.READING_LENGTH + 5);
+		for(byte[] frame : frames) {
+			buffer.put(frame);
+		}
+		buffer.rewind();
+
+		List<BM55Measurement> measurements = new ArrayList<BM55Measurement>();
+		assertEquals(18, decoder.decodeBM55(buffer, measurements::add));
+		assertEquals(Arrays.asList("3:INVALID_DATE_TIME", "7:INVALID_DATE_TIME", "20:SHORT_FRAME"), rejections);
+		assertEquals(0, buffer.position());
+
+		List<byte[]> validFrames = new ArrayList<byte[]>(frames);
+		validFrames.remove(7);
+		validFrames.remove(3);
+		for(int readingsCounter = 0; readingsCounter < validFrames.size(); readingsCounter++) {
+			assertArrayEquals(new BM55Measurement(validFrames.get(readingsCounter)).getAllValues(), measurements.get(readingsCounter).getAllValues());
+		}
+
+		//The frames as read from the device, one of them cut short
+		rejections.clear();
+		frames.set(10, Arrays.copyOf(frames.get(10), 6));
+		assertEquals(17, decoder.decodeBM55(frames, measurement -> {}));
+		assertEquals(Arrays.asList("3:INVALID_DATE_TIME", "7:INVALID_DATE_TIME", "10:SHORT_FRAME"), rejections);
+
+		assertEquals(35, decoder.getDecodedCount());
+		assertEquals(6, decoder.getRejectedCount());
+		assertEquals(4, decoder.getRejectedCount(DecodeError.INVALID_DATE_TIME));
+		assertEquals(2, decoder.getRejectedCount(DecodeError.SHORT_FRAME));
+		decoder.resetCounters();
+		assertEquals(0, decoder.getDecodedCount());
+		assertEquals(0, decoder.getRejectedCount());
+	}
+
+	/**
+	 * Test a corrupt BF480 slot is rejected and the other readings of the user are decoded as by the memory decoder,
+	 * from the memory dump and from the archived records.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testDecodeBF480RejectsCorruptFrames() throws Exception {
+		byte[][] rows = new BF480Emulator(BF480Emulator.generateMeasurements(12)).getRows();
+		List<BF480Measurement> expected = BF480MemoryDecoder.decodeUser(rows, 6);
+		expected.remove(4);
+		//The time of the slot 4 of the user 2 is 24:00
+		rows[11][8] = 24;
+		rows[11][9] = 0;
+		ByteBuffer memory = ByteBuffer.allocate(BF480MeasurementView.MEMORY_LENGTH);
+		for(byte[] row : rows) {
+			memory.put(row);
+		}
+		memory.flip();
+
+		List<BF480Measurement> measurements = new ArrayList<BF480Measurement>();
+		assertEquals(11, decoder.decodeBF480User(memory, 2, measurements::add));
+		assertEquals(Arrays.asList("4:INVALID_DATE_TIME"), rejections);
+		assertMeasurementsEqual(expected, measurements);
+
+		//The same slots as 12 byte records, with 2 bytes left at the end
+		rejections.clear();
+		BF480MeasurementView view = new BF480MeasurementView();
+		ByteBuffer records = ByteBuffer.allocate(12 * BF480MeasurementView.RECORD_LENGTH + 2);
+		for(int slot = 0; slot < 12; slot++) {
+			view.wrap(memory, BF480MeasurementView.getOffset(2, slot));
+			for(int fieldCounter = 0; fieldCounter < BF480MeasurementView.NUMBER_OF_FIELDS; fieldCounter++) {
+				records.put(memory.get(view.getOffset() + fieldCounter * BF480MeasurementView.ROW_LENGTH));
+				records.put(memory.get(view.getOffset() + fieldCounter * BF480MeasurementView.ROW_LENGTH + 1));
+			}
+		}
+		records.rewind();
+		measurements.clear();
+		assertEquals(11, decoder.decodeBF480(records, measurements::add));
+		assertEquals(Arrays.asList("4:INVALID_DATE_TIME", "12:SHORT_FRAME"), rejections);
+		assertMeasurementsEqual(expected, measurements);
+
+		//A dump cut short in the rows of the user
+		rejections.clear();
+		memory.limit(11 * BF480MeasurementView.ROW_LENGTH + 4);
+		assertEquals(2, decoder.decodeBF480User(memory, 2, measurement -> {}));
+		assertEquals(Arrays.asList("2:SHORT_FRAME"), rejections);
+	}
+
+	private static void assertMeasurementsEqual(final List<BF480Measurement> expected, final List<BF480Measurement> measurements) throws Exception {
+		assertEquals(expected.size(), measurements.size());
+		for(int readingsCounter = 0; readingsCounter < expected.size(); readingsCounter++) {
+			assertArrayEquals(expected.get(readingsCounter).getAllValues(), measurements.get(readingsCounter).getAllValues());
+		}
+	}
+}
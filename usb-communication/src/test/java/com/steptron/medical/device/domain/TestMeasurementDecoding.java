@@ -0,0 +1,79 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import org.junit.Test;
+
+import com.steptron.medical.device.emulator.BF480Emulator;
+import com.steptron.medical.device.emulator.BM55Emulator;
+
+/**
+ * Tests the measured times decoded from the readings, at the offset of the device clock and for the dates which do not exist.
+ */
+public class TestMeasurementDecoding {
+
+	private static final ZoneOffset DEVICE_OFFSET = ZoneOffset.ofHours(2);
+
+	/**
+	 * Test the BM55 measured time is taken at the offset of the device, and is null for a date which does not exist.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testBM55MeasuredTime() throws Exception {
+		LocalDateTime measuredTime = LocalDateTime.of(2016, 2, 29, 23, 59);
+		byte[] reading = BM55Emulator.encode(new BM55Measurement(130, 85, BM55User.B, 70, true, false, measuredTime.toInstant(ZoneOffset.UTC)));
+		assertEquals(measuredTime.toInstant(ZoneOffset.UTC), new BM55Measurement(reading).getMeasuredTime());
+		assertEquals(measuredTime.toInstant(DEVICE_OFFSET), new BM55Measurement(reading, DEVICE_OFFSET).getMeasuredTime());
+
+		//2016-02-31, the flags sharing the bytes of the date are still decoded
+		reading[4] = (byte) (31 | 0x80);
+		reading[3] = (byte) (2 | 0x80);
+		BM55Measurement measurement = new BM55Measurement(reading);
+		assertNull(measurement.getMeasuredTime());
+		assertEquals(BM55User.B, measurement.getUser());
+		assertEquals(130, measurement.getSystolicPressure());
+		assertTrue(measurement.isRestingIndicator());
+	}
+
+	/**
+	 * Test the BF480 measured time is taken at the offset of the device, and is null for a time which does not exist.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testBF480MeasuredTime() throws Exception {
+		LocalDateTime measuredTime = LocalDateTime.of(2000, 2, 29, 7, 5);
+		int[] reading = BF480Emulator.encode(new BF480Measurement(81.4, 22.1, 55.3, 38.2, measuredTime.toInstant(ZoneOffset.UTC)));
+		assertEquals(measuredTime.toInstant(ZoneOffset.UTC), new BF480Measurement(reading, 0).getMeasuredTime());
+		assertEquals(measuredTime.toInstant(DEVICE_OFFSET), new BF480Measurement(reading, 0, DEVICE_OFFSET).getMeasuredTime());
+
+		//25:05
+		reading[5] = 25 << 8 | 5;
+		BF480Measurement measurement = new BF480Measurement(reading, 0);
+		assertNull(measurement.getMeasuredTime());
+		assertEquals(81.4, measurement.getWeight(), 0);
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.steptron.medical.device.emulator.BM55Emulator;
+import com.steptron.medical.device.services.BF480USBService;
+import com.steptron.medical.device.services.BM55USBService;
+
+/**
+ * Tests the timeline queries return what a sort and a linear filter of the measurements return.
+ */
+public class TestMeasurementTimeline {
+
+	/**
+	 * Test the range, count, since and latest queries on shuffled measurements, several of them measured at the same time.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testQueriesMatchLinearFilter() throws Exception {
+		Random random = new Random(42);
+		List<BF480Measurement> measurements = new ArrayList<BF480Measurement>();
+		for(int readingsCounter = 0; readingsCounter < 500; readingsCounter++) {
+			//The weight tells the measurements measured at the same time apart
+			measurements.add(new BF480Measurement(readingsCounter, 0, 0, 0, Instant.ofEpochSecond(1_500_000_000L + random.nextInt(200) * 60)));
+		}
+		Collections.shuffle(measurements, random);
+		measurements.add(new BF480Measurement(-1, 0, 0, 0, null));
+
+		MeasurementTimeline<BF480Measurement> timeline = MeasurementTimeline.ofBF480(measurements);
+
+		//A stable sort of the measurements with a measured time
+		List<BF480Measurement> sorted = new ArrayList<BF480Measurement>(measurements.subList(0, 500));
+		Collections.sort(sorted);
+		assertEquals(sorted, timeline.getMeasurements());
+		for(int index = 0; index < timeline.size(); index++) {
+			assertEquals(sorted.get(index).getMeasuredTime().getEpochSecond(), timeline.getMeasuredTime(index));
+		}
+
+		for(int queryCounter = 0; queryCounter < 200; queryCounter++) {
+			long from = 1_500_000_000L - 600 + random.nextInt(13_000);
+			long to = from + random.nextInt(3_000);
+			List<BF480Measurement> expected = new ArrayList<BF480Measurement>();
+			for(BF480Measurement measurement : sorted) {
+				long measuredTime = measurement.getMeasuredTime().getEpochSecond();
+				if(measuredTime >= from && measuredTime < to) {
+					expected.add(measurement);
+				}
+			}
+			assertEquals(expected, timeline.between(from, to));
+			assertEquals(expected.size(), timeline.count(from, to));
+			assertEquals(expected, timeline.between(Instant.ofEpochSecond(from - 1, 1), Instant.ofEpochSecond(to)));
+			assertEquals(expected.size(), timeline.count(Instant.ofEpochSecond(from), Instant.ofEpochSecond(to - 1, 999_999_999)));
+			assertEquals(sorted.subList(timeline.indexOfFirstAtOrAfter(from), sorted.size()), timeline.since(from));
+		}
+		assertEquals(0, timeline.count(1_500_003_000L, 1_500_000_000L));
+		assertTrue(timeline.between(1_500_003_000L, 1_500_000_000L).isEmpty());
+
+		assertEquals(sorted.subList(490, 500), timeline.latest(10));
+		assertEquals(sorted, timeline.latest(1000));
+		assertTrue(timeline.latest(0).isEmpty());
+	}
+
+	/**
+	 * Test the measurements already in time order are kept as they are.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testOrderedMeasurementsAreKept() throws Exception {
+		List<BM55Measurement> measurements = BM55Emulator.generateMeasurements(30);
+		MeasurementTimeline<BM55Measurement> timeline = MeasurementTimeline.ofBM55(measurements);
+		assertEquals(measurements, timeline.getMeasurements());
+		assertSame(measurements.get(29), timeline.latest(1).get(0));
+		assertTrue(MeasurementTimeline.ofBM55(Collections.<BM55Measurement> emptyList()).isEmpty());
+	}
+
+	/**
+	 * Test the timelines downloaded from the devices hold the measurements of the user in time order.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testDownloadedTimelines() throws Exception {
+		MeasurementTimeline<BM55Measurement> bm55Timeline = new BM55USBService().getMeasurementTimeline("B");
+		List<BM55Measurement> bm55Measurements = new BM55USBService().getAllUsersMeasurements().get(BM55User.B);
+		assertEquals(bm55Measurements.size(), bm55Timeline.size());
+		for(int index = 1; index < bm55Timeline.size(); index++) {
+			assertTrue(bm55Timeline.getMeasuredTime(index - 1) <= bm55Timeline.getMeasuredTime(index));
+			assertEquals(BM55User.B, bm55Timeline.get(index).getUser());
+		}
+
+		@SuppressWarnings("unchecked")
+		List<BF480Measurement> bf480Measurements = (List<BF480Measurement>) new BF480USBService().getMeasurements("3");
+		MeasurementTimeline<BF480Measurement> bf480Timeline = new BF480USBService().getMeasurementTimeline("3");
+		assertEquals(bf480Measurements.size(), bf480Timeline.size());
+		for(int index = 0; index < bf480Timeline.size(); index++) {
+			assertEquals(bf480Measurements.get(index).getMeasuredTime().getEpochSecond(), bf480Timeline.getMeasuredTime(index));
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.domain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.steptron.medical.device.emulator.BF480Emulator;
+import com.steptron.medical.device.emulator.BM55Emulator;
+import com.steptron.medical.device.services.BF480MemoryDecoder;
+import com.steptron.medical.device.services.BF480USBService;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Tests the flyweight views read the same values as the measurements decoded from the same bytes.
+ */
+public class TestMeasurementViews {
+
+	/**
+	 * Test the BM55 view matches the decoded measurement for each reading of a dump, including the edge case dates.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testBM55ViewMatchesMeasurement() throws Exception {
+		List<BM55Measurement> measurements = new ArrayList<BM55Measurement>(BM55Emulator.generateMeasurements(40));
+		measurements.add(new BM55Measurement(255, 200, BM55User.B, 255, true, true, LocalDateTime.of(2016, 2, 29, 23, 59).toInstant(ZoneOffset.UTC)));
+		measurements.add(new BM55Measurement(90, 50, BM55User.A, 40, true, false, LocalDateTime.of(2127, 12, 31, 23, 59).toInstant(ZoneOffset.UTC)));
+		//The dump starts after a header, so the readings are not at the start of the buffer
+		ByteBuffer dump = ByteBuffer.allocateDirect(3 + measurements.size() * BM55MeasurementView.READING_LENGTH);
+		dump.position(3);
+		for(BM55Measurement measurement : measurements) {
+			dump.put(BM55Emulator.encode(measurement));
+		}
+
+		BM55MeasurementView view = new BM55MeasurementView();
+		for(int readingsCounter = 0; readingsCounter < measurements.size(); readingsCounter++) {
+			BM55Measurement expected = new BM55Measurement(BM55Emulator.encode(measurements.get(readingsCounter)));
+			view.wrap(dump, 3 + readingsCounter * BM55MeasurementView.READING_LENGTH);
+
+			assertEquals(expected.getSystolicPressure(), view.getSystolicPressure());
+			assertEquals(expected.getDiastolicPressure(), view.getDiastolicPressure());
+			assertEquals(expected.getPulseRate(), view.getPulseRate());
+			assertEquals(expected.getUser(), view.getUser());
+			assertEquals(expected.isRestingIndicator(), view.isRestingIndicator());
+			assertEquals(expected.isArrhythmia(), view.isArrhythmia());
+			assertEquals(expected.getMeasuredTime().getEpochSecond(), view.getMeasuredTime());
+			assertArrayEquals(expected.getAllValues(), view.toMeasurement().getAllValues());
+		}
+	}
+
+	/**
+	 * Test the BF480 view matches the measurements decoded from the rows, for each user of a partly filled memory.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testBF480ViewMatchesMeasurement() throws Exception {
+		byte[][] rawReadings = new BF480Emulator(BF480Emulator.generateMeasurements(23)).getRows();
+		ByteBuffer dump = ByteBuffer.allocate(BF480MeasurementView.MEMORY_LENGTH);
+		for(byte[] row : rawReadings) {
+			dump.put(row);
+		}
+
+		BF480MeasurementView view = new BF480MeasurementView();
+		for(int userNumber = 1; userNumber <= BF480Emulator.NUMBER_OF_USERS; userNumber++) {
+			List<BF480Measurement> expected = BF480MemoryDecoder.decodeUser(rawReadings, (userNumber - 1) * BF480USBService.NUMBER_OF_FIELDS);
+			int readingsCounter = 0;
+			while(!view.wrap(dump, BF480MeasurementView.getOffset(userNumber, readingsCounter)).isEmpty()) {
+				BF480Measurement measurement = expected.get(readingsCounter);
+				assertEquals(measurement.getWeight(), view.getWeight(), 0);
+				assertEquals(measurement.getBodyFat(), view.getBodyFat(), 0);
+				assertEquals(measurement.getWater(), view.getWater(), 0);
+				assertEquals(measurement.getMuscles(), view.getMuscles(), 0);
+				assertEquals(measurement.getMeasuredTime().getEpochSecond(), view.getMeasuredTime());
+				assertArrayEquals(measurement.getAllValues(), view.toMeasurement().getAllValues());
+				readingsCounter++;
+			}
+			assertEquals(expected.size(), readingsCounter);
+		}
+	}
+
+	/**
+	 * Test scanning a million readings through a repositioned view allocates nothing.
+	 */
+	@Test
+	public void testScanDoesNotAllocate() {
+		ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		ByteBuffer dump = ByteBuffer.allocate(120 * BM55MeasurementView.READING_LENGTH);
+		for(BM55Measurement measurement : BM55Emulator.generateMeasurements(120)) {
+			dump.put(BM55Emulator.encode(measurement));
+		}
+		BM55MeasurementView view = new BM55MeasurementView();
+		long threadId = Thread.currentThread().getId();
+		//Warm up the scan so that the allocations of the class loading are not counted
+		long checksum = scan(view, dump, 1000);
+
+		long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId);
+		checksum += scan(view, dump, 1000000);
+		allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBytes;
+
+		assertTrue(checksum != 0);
+		assertTrue("Allocated " + allocatedBytes + " bytes", allocatedBytes < 1024);
+	}
+
+	private static long scan(final BM55MeasurementView view, final ByteBuffer dump, final int numberOfReadings) {
+		long checksum = 0;
+		for(int readingsCounter = 0; readingsCounter < numberOfReadings; readingsCounter++) {
+			view.wrap(dump, readingsCounter % 120 * BM55MeasurementView.READING_LENGTH);
+			checksum += view.getSystolicPressure() + view.getDiastolicPressure() + view.getPulseRate() + view.getMeasuredTime();
+			if(view.getUser() == BM55User.B && view.isRestingIndicator() && view.isArrhythmia()) {
+				checksum++;
+			}
+		}
+		return checksum;
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.emulator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.usb.UsbDevice;
+import javax.usb.UsbHostManager;
+import javax.usb.UsbIrp;
+import javax.usb.UsbPipe;
+
+import org.junit.Test;
+
+import com.steptron.medical.device.domain.BF480Measurement;
+import com.steptron.medical.device.domain.BM55Measurement;
+import com.steptron.medical.device.domain.BM55User;
+import com.steptron.medical.device.services.BF480USBService;
+import com.steptron.medical.device.services.BM55USBService;
+import com.steptron.medical.device.services.USBService;
+
+/**
+ * Tests the drivers end to end against the emulated devices configured in the test javax.usb.properties.
+ */
+@SuppressWarnings("unchecked")
+public class TestVirtualUsbServices {
+
+	/**
+	 * Test the BM55 driver returns all the readings stored for the user, 1 to count - 1, in the order of the device memory.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testBM55MeasurementsMatchEmulatedMemory() throws Exception {
+		BM55Emulator emulator = (BM55Emulator) findEmulator(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		List<BM55Measurement> expected = new ArrayList<BM55Measurement>();
+		for(byte[] reading : emulator.getReadings()) {
+			BM55Measurement measurement = new BM55Measurement(reading);
+			if(measurement.getUser() == BM55User.B) {
+				expected.add(measurement);
+			}
+		}
+
+		List<BM55Measurement> measurements = (List<BM55Measurement>) new BM55USBService().getMeasurements("B");
+
+		assertEquals(expected.size(), measurements.size());
+		for(int readingsCounter = 0; readingsCounter < expected.size(); readingsCounter++) {
+			assertArrayEquals(expected.get(readingsCounter).getAllValues(), measurements.get(readingsCounter).getAllValues());
+		}
+	}
+
+	/**
+	 * Test the BF480 driver returns all the readings stored for the user sorted by measured time.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testBF480MeasurementsMatchEmulatedMemory() throws Exception {
+		List<BF480Measurement> expected = BF480Emulator.generateMeasurements(20).get(2);
+
+		List<BF480Measurement> measurements = (List<BF480Measurement>) new BF480USBService().getMeasurements("3");
+
+		assertEquals(expected.size(), measurements.size());
+		for(int readingsCounter = 0; readingsCounter < expected.size(); readingsCounter++) {
+			assertArrayEquals(expected.get(readingsCounter).getAllValues(), measurements.get(readingsCounter).getAllValues());
+		}
+	}
+
+	/**
+	 * Test the responses are delayed by the configured latency and are delivered in order.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testResponsesAreDelayedByLatency() throws Exception {
+		VirtualUsbServices services = new VirtualUsbServices(new Properties());
+		BM55Emulator emulator = new BM55Emulator(BM55Emulator.generateMeasurements(4));
+		emulator.setLatency(20000, 5000);
+		VirtualUsbDevice device = services.attach(emulator);
+		USBService usbService = new BM55USBService();
+
+		UsbPipe connectionPipe = usbService.getUSBConnection(device, 0, -127);
+		connectionPipe.open();
+		try {
+			long start = System.nanoTime();
+			for(int readingsCounter = 1; readingsCounter <= 4; readingsCounter++) {
+				usbService.writeDataToInterface(device, usbService.getUSBControl(device, (byte) 33, (byte) 0x09, (short) 521, (short) 0), new byte[] {(byte) 0xA3, (byte) readingsCounter}, USBService.DEFAULT_BYTE_ARRAY_LENGTH_8, USBService.PADDING_BYTE_0xF4);
+			}
+			for(int readingsCounter = 1; readingsCounter <= 4; readingsCounter++) {
+				UsbIrp irp = connectionPipe.asyncSubmit(new byte[8]);
+				irp.waitUntilComplete(1000);
+				assertTrue(irp.isComplete());
+				assertArrayEquals(emulator.getReadings().get(readingsCounter - 1), irp.getData());
+			}
+			assertTrue(System.nanoTime() - start >= 20000000L);
+		} finally {
+			connectionPipe.close();
+			connectionPipe.getUsbEndpoint().getUsbInterface().release();
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private DeviceEmulator findEmulator(final short vendorId, final short productId) throws Exception {
+		for(UsbDevice device : (List<UsbDevice>) (List) UsbHostManager.getUsbServices().getRootUsbHub().getAttachedUsbDevices()) {
+			if(device.getUsbDeviceDescriptor().idVendor() == vendorId && device.getUsbDeviceDescriptor().idProduct() == productId) {
+				return ((VirtualUsbDevice) device).getEmulator();
+			}
+		}
+		throw new AssertionError("Emulated device not attached");
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.steptron.medical.device.domain.BM55Measurement;
+import com.steptron.medical.device.domain.MeasurementBatchDecoder;
+import com.steptron.medical.device.emulator.BM55Emulator;
+import com.steptron.medical.device.services.BM55USBService;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests the flight recorder events of a download and of a batch decode.
+ */
+public class TestFlightRecorderEvents {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	/**
+	 * Test a BM55 download records a session, a control-out event per command and an interrupt-in event per answer,
+	 * with the vendor id and product id of the device.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testDownloadEvents() throws Exception {
+		List<RecordedEvent> events = record(() -> new BM55USBService().getMeasurements("A"));
+
+		List<RecordedEvent> sessions = filter(events, DeviceSessionEvent.NAME);
+		assertEquals(1, sessions.size());
+		assertEquals(BM55USBService.VENDOR_ID & 0xffff, sessions.get(0).getInt("vendorId"));
+		assertEquals(BM55USBService.PRODUCT_ID & 0xffff, sessions.get(0).getInt("productId"));
+		assertEquals("BM55", sessions.get(0).getString("deviceModel"));
+		assertTrue(sessions.get(0).getBoolean("completed"));
+
+		List<RecordedEvent> controlOuts = filter(events, ControlOutEvent.NAME);
+		List<RecordedEvent> interruptIns = filter(events, InterruptInEvent.NAME);
+		assertTrue(controlOuts.size() > 2);
+		//Every command of the BM55 is answered, the initialise and the number of readings by an async read, the readings by the reused IRP
+		assertEquals(controlOuts.size(), interruptIns.size());
+		for(RecordedEvent controlOut : controlOuts) {
+			assertEquals(BM55USBService.VENDOR_ID & 0xffff, controlOut.getInt("vendorId"));
+			assertEquals(8, controlOut.getInt("bytes"));
+			assertTrue(controlOut.getBoolean("succeeded"));
+		}
+		for(RecordedEvent interruptIn : interruptIns) {
+			assertEquals(BM55USBService.PRODUCT_ID & 0xffff, interruptIn.getInt("productId"));
+			assertEquals(8, interruptIn.getInt("bytes"));
+			assertEquals(InterruptInEvent.COMPLETED, interruptIn.getString("outcome"));
+			assertTrue(interruptIn.getThread("requestingThread") != null);
+		}
+	}
+
+	/**
+	 * Test a batch decode records the decoded and rejected frames.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testBatchDecodeEvent() throws Exception {
+		ByteBuffer frames = ByteBuffer.allocate(10 * 8 + 3);
+		for(BM55Measurement measurement : BM55Emulator.generateMeasurements(10)) {
+			frames.put(BM55Emulator.encode(measurement));
+		}
+		frames.rewind();
+		List<RecordedEvent> decodes = filter(record(() -> new MeasurementBatchDecoder().decodeBM55(frames, measurement -> {})), BatchDecodeEvent.NAME);
+
+		assertEquals(1, decodes.size());
+		assertEquals("BM55", decodes.get(0).getString("format"));
+		assertEquals(83, decodes.get(0).getLong("bytes"));
+		assertEquals(10, decodes.get(0).getInt("decoded"));
+		assertEquals(1, decodes.get(0).getLong("rejected"));
+	}
+
+	/**
+	 * Test the events are not recorded, nor allocated, without a recording.
+	 */
+	@Test
+	public void testEventsDisabledWithoutRecording() {
+		assertTrue(FlightRecorderEvents.isAvailable());
+		assertFalse(new ControlOutEvent().isEnabled());
+		assertFalse(new InterruptInEvent().isEnabled());
+		assertFalse(new DeviceSessionEvent().isEnabled());
+		assertFalse(new BatchDecodeEvent().isEnabled());
+		assertNull(FlightRecorderEvents.beginControlOut());
+		assertNull(FlightRecorderEvents.beginInterruptIn());
+		assertNull(FlightRecorderEvents.beginDeviceSession());
+		assertNull(FlightRecorderEvents.beginBatchDecode());
+	}
+
+	/**
+	 * Test a batch is decoded on a Java runtime without the flight recorder, the event classes are never loaded.
+	 *
+	 * @throws Throwable the throwable
+	 */
+	@Test
+	public void testWithoutFlightRecorder() throws Throwable {
+		ByteBuffer frames = ByteBuffer.allocate(10 * 8);
+		for(BM55Measurement measurement : BM55Emulator.generateMeasurements(10)) {
+			frames.put(BM55Emulator.encode(measurement));
+		}
+		frames.rewind();
+		URL classes = MeasurementBatchDecoder.class.getProtectionDomain().getCodeSource().getLocation();
+		try(URLClassLoader loader = new WithoutFlightRecorderClassLoader(classes)) {
+			assertFalse((boolean) MethodHandles.publicLookup().findStatic(loader.loadClass(FlightRecorderEvents.class.getName()), "isAvailable", MethodType.methodType(boolean.class)).invoke());
+
+			Class<?> decoderClass = loader.loadClass(MeasurementBatchDecoder.class.getName());
+			Consumer<Object> consumer = measurement -> {
+			};
+			Object decoded = decoderClass.getMethod("decodeBM55", ByteBuffer.class, Consumer.class).invoke(decoderClass.getDeclaredConstructor().newInstance(), frames, consumer);
+			assertEquals(10, decoded);
+		}
+	}
+
+	private List<RecordedEvent> record(final RecordedWork work) throws Exception {
+		Path file = temporaryFolder.newFile("events.jfr").toPath();
+		try(Recording recording = new Recording()) {
+			recording.enable(ControlOutEvent.NAME);
+			recording.enable(InterruptInEvent.NAME);
+			recording.enable(DeviceSessionEvent.NAME);
+			recording.enable(BatchDecodeEvent.NAME);
+			recording.start();
+			work.run();
+			recording.stop();
+			recording.dump(file);
+		}
+		return RecordingFile.readAllEvents(file);
+	}
+
+	private static List<RecordedEvent> filter(final List<RecordedEvent> events, final String name) {
+		List<RecordedEvent> filtered = new ArrayList<RecordedEvent>();
+		for(RecordedEvent event : events) {
+			if(event.getEventType().getName().equals(name)) {
+				filtered.add(event);
+			}
+		}
+		return filtered;
+	}
+
+	/**
+	 * Loads the classes of the library itself, as a Java runtime without the jdk.jfr module would.
+	 */
+	private static final class WithoutFlightRecorderClassLoader extends URLClassLoader {
+
+		WithoutFlightRecorderClassLoader(final URL classes) {
+			super(new URL[] {classes}, TestFlightRecorderEvents.class.getClassLoader());
+		}
+
+		@Override
+		protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+			synchronized(getClassLoadingLock(name)) {
+				if(name.startsWith("jdk.jfr.")) {
+					throw new ClassNotFoundException(name);
+				}
+				if(!name.startsWith("com.steptron.medical.device.")) {
+					return super.loadClass(name, resolve);
+				}
+				Class<?> loadedClass = findLoadedClass(name);
+				if(loadedClass == null) {
+					loadedClass = findClass(name);
+				}
+				if(resolve) {
+					resolveClass(loadedClass);
+				}
+				return loadedClass;
+			}
+		}
+	}
+
+	/**
+	 * The work recorded by a test.
+	 */
+	private interface RecordedWork {
+
+		void run() throws Exception;
+	}
+}
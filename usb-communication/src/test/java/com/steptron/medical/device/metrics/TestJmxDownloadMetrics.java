@@ -0,0 +1,205 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import javax.usb.UsbHostManager;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.steptron.medical.device.domain.BM55Measurement;
+import com.steptron.medical.device.emulator.BM55Emulator;
+import com.steptron.medical.device.emulator.VirtualUsbDevice;
+import com.steptron.medical.device.emulator.VirtualUsbServices;
+import com.steptron.medical.device.exception.DeviceConnectionException;
+import com.steptron.medical.device.services.BF480USBService;
+import com.steptron.medical.device.services.BM55USBService;
+import com.steptron.medical.device.services.DownloadPhase;
+
+/**
+ * Tests the metrics of the downloads from the emulated devices and their export over JMX.
+ */
+public class TestJmxDownloadMetrics {
+
+	private final MBeanServer server = MBeanServerFactory.newMBeanServer();
+	private final JmxDownloadMetrics metrics = new JmxDownloadMetrics(server);
+
+	@After
+	public void tearDown() {
+		metrics.unregister();
+	}
+
+	/**
+	 * Test a BM55 download reports each phase once and the 8-byte transfers of all the commands and answers, which are read over JMX.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testBM55DownloadMetrics() throws Exception {
+		BM55USBService bm55Service = new BM55USBService();
+		bm55Service.setMetricsListener(metrics);
+		List<BM55Measurement> measurements = (List<BM55Measurement>) bm55Service.getMeasurements("A");
+		assertTrue(measurements.size() > 0);
+
+		DownloadMetrics bm55Metrics = metrics.getMetrics("BM55");
+		for(DownloadPhase phase : DownloadPhase.values()) {
+			assertEquals(phase.name(), 1, bm55Metrics.getPhase(phase).getCount());
+			assertEquals(phase.name(), 0, bm55Metrics.getPhase(phase).getFailures());
+		}
+		assertTrue(bm55Metrics.getPhase(DownloadPhase.READINGS).getMaxMillis() > 0);
+		assertEquals(0, bm55Metrics.getTimeouts());
+		assertEquals(0, bm55Metrics.getRetries());
+		//Every command and every answer of the BM55 is 8 bytes, each command is answered
+		assertEquals(bm55Metrics.getIrpCount() * 8, bm55Metrics.getBytesOut() + bm55Metrics.getBytesIn());
+		assertEquals(bm55Metrics.getBytesOut(), bm55Metrics.getBytesIn());
+
+		ObjectName name = new ObjectName("com.steptron.medical.device:type=DownloadMetrics,model=BM55");
+		assertEquals(bm55Metrics.getIrpCount(), server.getAttribute(name, "IrpCount"));
+		TabularData phases = (TabularData) server.getAttribute(name, "Phases");
+		assertEquals(DownloadPhase.values().length, phases.size());
+		CompositeData readings = (CompositeData) phases.get(new Object[] {DownloadPhase.READINGS.name()}).get("value");
+		assertEquals(1L, readings.get("count"));
+
+		server.invoke(name, "reset", null, null);
+		assertEquals(0, bm55Metrics.getIrpCount());
+		assertEquals(0, bm55Metrics.getPhase(DownloadPhase.READINGS).getCount());
+	}
+
+	/**
+	 * Test a BF480 download, which has no number of readings and no terminate phase, reports the 64 rows of 128 bytes.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testBF480DownloadMetrics() throws Exception {
+		BF480USBService bf480Service = new BF480USBService();
+		bf480Service.setMetricsListener(metrics);
+		bf480Service.getMeasurements("1");
+
+		DownloadMetrics bf480Metrics = metrics.getMetrics("BF480");
+		assertEquals(1, bf480Metrics.getPhase(DownloadPhase.DEVICE_LOOKUP).getCount());
+		assertEquals(1, bf480Metrics.getPhase(DownloadPhase.CLAIM).getCount());
+		assertEquals(1, bf480Metrics.getPhase(DownloadPhase.INITIALISE).getCount());
+		assertEquals(0, bf480Metrics.getPhase(DownloadPhase.NUMBER_OF_READINGS).getCount());
+		assertEquals(1, bf480Metrics.getPhase(DownloadPhase.READINGS).getCount());
+		assertEquals(0, bf480Metrics.getPhase(DownloadPhase.TERMINATE).getCount());
+		assertEquals(BF480USBService.MAX_NUMBER_OF_READINGS * 128, bf480Metrics.getBytesIn());
+		assertEquals(8, bf480Metrics.getBytesOut());
+		assertEquals(1 + BF480USBService.MAX_NUMBER_OF_READINGS, bf480Metrics.getIrpCount());
+		assertTrue(server.isRegistered(JmxDownloadMetrics.getObjectName("BF480")));
+	}
+
+	/**
+	 * Test the pipelined batch discarded after a dropped request is reported as a retry, and a device which does not answer
+	 * fails the initialise phase with a timeout.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testBM55RetriesAndTimeouts() throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		BM55USBService bm55Service = new BM55USBService();
+		bm55Service.setMetricsListener(metrics);
+		VirtualUsbDevice device = (VirtualUsbDevice) bm55Service.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		services.detach(device);
+		VirtualUsbDevice droppingDevice = services.attach(new BM55Emulator(BM55Emulator.generateMeasurements(20)) {
+			private boolean dropped;
+
+			@Override
+			protected void handleCommand(final byte[] command) {
+				if(command[0] == (byte) 0xA3 && command[1] == 5 && !dropped) {
+					dropped = true;
+					return;
+				}
+				super.handleCommand(command);
+			}
+		});
+		try {
+			bm55Service.setPipelineDepth(4);
+			bm55Service.getMeasurements("A");
+		} finally {
+			services.detach(droppingDevice);
+		}
+		DownloadMetrics bm55Metrics = metrics.getMetrics("BM55");
+		assertEquals(1, bm55Metrics.getRetries());
+		assertEquals(1, bm55Metrics.getTimeouts());
+
+		VirtualUsbDevice silentDevice = services.attach(new BM55Emulator(BM55Emulator.generateMeasurements(8)) {
+			@Override
+			protected void handleCommand(final byte[] command) {
+				//The device is plugged in but does not answer
+			}
+		});
+		try {
+			bm55Metrics.reset();
+			bm55Service.getMeasurements("A");
+			fail("The download from a device which does not answer must fail");
+		} catch(DeviceConnectionException e) {
+			assertEquals(1, bm55Metrics.getPhase(DownloadPhase.INITIALISE).getFailures());
+			assertEquals(0, bm55Metrics.getPhase(DownloadPhase.NUMBER_OF_READINGS).getCount());
+			assertEquals(1, bm55Metrics.getTimeouts());
+		} finally {
+			services.detach(silentDevice);
+			services.attach(services.getVirtualRootUsbHub(), device);
+		}
+	}
+
+	/**
+	 * Test the commands the device fails on are not reported as transferred.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testBM55FailedWrites() throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		BM55USBService bm55Service = new BM55USBService();
+		bm55Service.setMetricsListener(metrics);
+		VirtualUsbDevice device = (VirtualUsbDevice) bm55Service.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		services.detach(device);
+		VirtualUsbDevice stallingDevice = services.attach(new BM55Emulator(BM55Emulator.generateMeasurements(8)) {
+			@Override
+			protected void handleCommand(final byte[] command) {
+				throw new IllegalStateException("The command " + command[0] + " is stalled");
+			}
+		});
+		try {
+			bm55Service.getMeasurements("A");
+			fail("The download from a device which fails the commands must fail");
+		} catch(DeviceConnectionException e) {
+			DownloadMetrics bm55Metrics = metrics.getMetrics("BM55");
+			assertEquals(1, bm55Metrics.getPhase(DownloadPhase.INITIALISE).getFailures());
+			assertEquals(0, bm55Metrics.getBytesOut());
+			assertEquals(0, bm55Metrics.getIrpCount());
+		} finally {
+			services.detach(stallingDevice);
+			services.attach(services.getVirtualRootUsbHub(), device);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.steptron.medical.device.domain.BF480Measurement;
+import com.steptron.medical.device.emulator.BF480Emulator;
+import com.steptron.medical.device.util.BytesManipulator;
+
+/**
+ * Tests the readings decoded from the raw rows are the readings decoded from the transposed memory.
+ */
+public class TestBF480MemoryDecoder {
+
+	/**
+	 * Test the projection of each user matches the transposed memory, for a partly filled memory.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testDecodeUserMatchesTranspose() throws Exception {
+		byte[][] rawReadings = new BF480Emulator(BF480Emulator.generateMeasurements(23)).getRows();
+		int[][] readings = new int[rawReadings.length][];
+		for(int readingsCounter = 0; readingsCounter < rawReadings.length; readingsCounter++) {
+			readings[readingsCounter] = BytesManipulator.convertBytesToIntegers(rawReadings[readingsCounter]);
+		}
+		int[][] userReadings = BytesManipulator.transpose(readings);
+
+		for(int userNumber = 1; userNumber <= BF480Emulator.NUMBER_OF_USERS; userNumber++) {
+			int readingStartByteNumber = (userNumber - 1) * BF480USBService.NUMBER_OF_FIELDS;
+			List<BF480Measurement> expected = new ArrayList<BF480Measurement>();
+			for(int readingsCounter = 0; readingsCounter < BF480USBService.MAX_NUMBER_OF_READINGS && userReadings[readingsCounter][readingStartByteNumber + 4] != 0; readingsCounter++) {
+				expected.add(new BF480Measurement(userReadings[readingsCounter], readingStartByteNumber));
+			}
+
+			List<BF480Measurement> measurements = BF480MemoryDecoder.decodeUser(rawReadings, readingStartByteNumber);
+
+			assertEquals(23, measurements.size());
+			for(int readingsCounter = 0; readingsCounter < expected.size(); readingsCounter++) {
+				assertArrayEquals(expected.get(readingsCounter).getAllValues(), measurements.get(readingsCounter).getAllValues());
+			}
+		}
+	}
+}
@@ -17,18 +17,34 @@
  */
 package com.steptron.medical.device.services;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+
+import javax.usb.UsbHostManager;
 
 import javax.usb.UsbControlIrp;
 import javax.usb.UsbDevice;
 import javax.usb.UsbException;
 import javax.usb.UsbPipe;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import com.steptron.medical.device.archive.BF480Archive;
 import com.steptron.medical.device.domain.BF480Measurement;
+import com.steptron.medical.device.domain.BF480MeasurementStore;
+import com.steptron.medical.device.domain.BF480MeasurementView;
+import com.steptron.medical.device.emulator.BF480Emulator;
+import com.steptron.medical.device.emulator.DeviceEmulator;
+import com.steptron.medical.device.emulator.VirtualUsbDevice;
+import com.steptron.medical.device.emulator.VirtualUsbServices;
 import com.steptron.medical.device.util.BytesManipulator;
 
 /**
@@ -41,6 +57,9 @@ public class TestBF480USBService {
 
 	private USBService usbService = new BF480USBService();
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	/**
 	 * Test BF480 device to get the measurements.
 	 *
@@ -55,6 +74,276 @@ public class TestBF480USBService {
 		}
 	}
 
+	/**
+	 * Test the streamed measurements are the measurements returned by getMeasurements, in the order of the device memory.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBF480Measurements_streamed() throws Exception {
+		List<BF480Measurement> expected = (List<BF480Measurement>) usbService.getMeasurements(USER_NUMBER);
+		List<BF480Measurement> measurements = new ArrayList<BF480Measurement>();
+		new BF480USBService().streamMeasurements(USER_NUMBER, measurements::add);
+		Collections.sort(measurements);
+
+		assertEquals(expected.size(), measurements.size());
+		for(int readingsCounter = 0; readingsCounter < expected.size(); readingsCounter++) {
+			assertArrayEquals(expected.get(readingsCounter).getAllValues(), measurements.get(readingsCounter).getAllValues());
+		}
+	}
+
+	/**
+	 * Test the measurements of all the users are read with a single dump and match the measurements of each user.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBF480Measurements_all_users() throws Exception {
+		BF480USBService bf480Service = new BF480USBService();
+		DeviceEmulator emulator = ((VirtualUsbDevice) bf480Service.getUSBDevice(BF480USBService.VENDOR_ID, BF480USBService.PRODUCT_ID)).getEmulator();
+		long commandCount = emulator.getCommandCount();
+		Map<Integer, List<BF480Measurement>> allUsersMeasurements = bf480Service.getAllUsersMeasurements();
+		assertEquals(commandCount + 1, emulator.getCommandCount());
+
+		assertEquals(BF480USBService.NUMBER_OF_USERS, allUsersMeasurements.size());
+		for(int userNumber = 1; userNumber <= BF480USBService.NUMBER_OF_USERS; userNumber++) {
+			List<BF480Measurement> expected = (List<BF480Measurement>) usbService.getMeasurements(String.valueOf(userNumber));
+			List<BF480Measurement> measurements = allUsersMeasurements.get(userNumber);
+			assertEquals(expected.size(), measurements.size());
+			for(int readingsCounter = 0; readingsCounter < expected.size(); readingsCounter++) {
+				assertArrayEquals(expected.get(readingsCounter).getAllValues(), measurements.get(readingsCounter).getAllValues());
+			}
+		}
+	}
+
+	/**
+	 * Test the readings appended to the columnar store are the measurements of all the users.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBF480Measurements_columnar_store() throws Exception {
+		BF480USBService bf480Service = new BF480USBService();
+		Map<Integer, List<BF480Measurement>> allUsersMeasurements = bf480Service.getAllUsersMeasurements();
+
+		BF480MeasurementStore store = new BF480MeasurementStore(4);
+		int numberOfReadings = bf480Service.readMeasurementsInto(store);
+
+		assertEquals(store.size(), numberOfReadings);
+		for(int userNumber = 1; userNumber <= BF480USBService.NUMBER_OF_USERS; userNumber++) {
+			List<BF480Measurement> storedMeasurements = new ArrayList<BF480Measurement>();
+			for(int index = 0; index < store.size(); index++) {
+				if(store.getUserNumber(index) == userNumber) {
+					storedMeasurements.add(store.getMeasurement(index));
+				}
+			}
+			//The store keeps the order of the device memory
+			Collections.sort(storedMeasurements);
+			assertMeasurementsEqual(allUsersMeasurements.get(userNumber), storedMeasurements);
+		}
+	}
+
+	/**
+	 * Test the readings of a user are archived in the order they were measured, and archived once.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testArchiveBF480Measurements() throws Exception {
+		BF480USBService bf480Service = new BF480USBService();
+		List<BF480Measurement> expected = (List<BF480Measurement>) usbService.getMeasurements(USER_NUMBER);
+		try(BF480Archive archive = new BF480Archive(temporaryFolder.getRoot().toPath(), "user-" + USER_NUMBER, 16)) {
+			assertEquals(expected.size(), bf480Service.archiveMeasurements(Integer.parseInt(USER_NUMBER), archive));
+			assertEquals(0, bf480Service.archiveMeasurements(Integer.parseInt(USER_NUMBER), archive));
+
+			List<BF480Measurement> archived = new ArrayList<BF480Measurement>();
+			BF480MeasurementView view = new BF480MeasurementView();
+			for(long index = 0; index < archive.size(); index++) {
+				archived.add(archive.getReading(index, view).toMeasurement());
+			}
+			assertMeasurementsEqual(expected, archived);
+		}
+	}
+
+	/**
+	 * Test the archive takes the reading measured in the same minute as its last reading, and hands back the readings measured before it
+	 * and the reading with a corrupt date.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testArchiveBF480Measurements_unarchived_readings() throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		VirtualUsbDevice device = (VirtualUsbDevice) usbService.getUSBDevice(BF480USBService.VENDOR_ID, BF480USBService.PRODUCT_ID);
+		List<List<BF480Measurement>> storedMeasurements = BF480Emulator.generateMeasurements(5);
+		BF480Emulator emulator = new BF480Emulator(storedMeasurements) {
+			@Override
+			protected synchronized void handleCommand(final byte[] command) {
+				//The month of the reading in the slot 2 of the user 1 is corrupted to 15
+				if(command[0] == (byte) 0x10) {
+					byte[][] rows = getRows();
+					int date = (rows[4][4] & 0xff) << 8 | rows[4][5] & 0xff;
+					date = date & ~(0xf << 5) | 15 << 5;
+					rows[4][4] = (byte) (date >> 8);
+					rows[4][5] = (byte) date;
+					for(byte[] row : rows) {
+						respond(row);
+					}
+				}
+			}
+		};
+		services.detach(device);
+		VirtualUsbDevice corruptDevice = services.attach(emulator);
+		try(BF480Archive archive = new BF480Archive(temporaryFolder.getRoot().toPath(), "user-1", 16)) {
+			BF480USBService bf480Service = new BF480USBService();
+			List<BF480Measurement> unarchived = new ArrayList<BF480Measurement>();
+			List<BF480Measurement> expected = new ArrayList<BF480Measurement>(storedMeasurements.get(0));
+			BF480Measurement corrupt = expected.remove(2);
+
+			assertEquals(4, bf480Service.archiveMeasurements(1, archive, unarchived::add));
+			assertEquals(1, unarchived.size());
+			assertNull(unarchived.get(0).getMeasuredTime());
+			assertEquals(corrupt.getWeight(), unarchived.get(0).getWeight(), 0.0);
+
+			BF480Measurement sameMinute = new BF480Measurement(70.0, 20.0, 55.0, 40.0, expected.get(3).getMeasuredTime());
+			BF480Measurement earlier = new BF480Measurement(71.0, 21.0, 56.0, 41.0, expected.get(0).getMeasuredTime().plusSeconds(3600));
+			emulator.addMeasurement(1, sameMinute);
+			emulator.addMeasurement(1, earlier);
+			unarchived.clear();
+			assertEquals(1, bf480Service.archiveMeasurements(1, archive, unarchived::add));
+			assertEquals(2, unarchived.size());
+			assertNull(unarchived.get(0).getMeasuredTime());
+			assertMeasurementsEqual(Collections.singletonList(earlier), unarchived.subList(1, 2));
+
+			unarchived.clear();
+			assertEquals(0, bf480Service.archiveMeasurements(1, archive, unarchived::add));
+			assertEquals(2, unarchived.size());
+
+			expected.add(sameMinute);
+			List<BF480Measurement> archived = new ArrayList<BF480Measurement>();
+			BF480MeasurementView view = new BF480MeasurementView();
+			for(long index = 0; index < archive.size(); index++) {
+				archived.add(archive.getReading(index, view).toMeasurement());
+			}
+			assertMeasurementsEqual(expected, archived);
+		} finally {
+			services.detach(corruptDevice);
+			services.attach(services.getVirtualRootUsbHub(), device);
+		}
+	}
+
+	/**
+	 * Test the sync returns the measurements taken since the last sync of each user only.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBF480Measurements_incremental_sync() throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		VirtualUsbDevice device = (VirtualUsbDevice) usbService.getUSBDevice(BF480USBService.VENDOR_ID, BF480USBService.PRODUCT_ID);
+		List<List<BF480Measurement>> generatedMeasurements = BF480Emulator.generateMeasurements(10);
+		List<List<BF480Measurement>> storedMeasurements = new ArrayList<List<BF480Measurement>>();
+		for(List<BF480Measurement> userMeasurements : generatedMeasurements) {
+			storedMeasurements.add(userMeasurements.subList(0, 5));
+		}
+		BF480Emulator emulator = new BF480Emulator(storedMeasurements);
+		services.detach(device);
+		VirtualUsbDevice syncedDevice = services.attach(emulator);
+		try {
+			BF480USBService bf480Service = new BF480USBService();
+			SyncCheckpointStore store = new PropertiesSyncCheckpointStore(temporaryFolder.getRoot().toPath().resolve("checkpoints.properties"));
+
+			Map<Integer, List<BF480Measurement>> synced = bf480Service.syncMeasurements(store);
+			for(int userNumber = 1; userNumber <= BF480USBService.NUMBER_OF_USERS; userNumber++) {
+				assertMeasurementsEqual(storedMeasurements.get(userNumber - 1), synced.get(userNumber));
+			}
+
+			emulator.addMeasurement(3, generatedMeasurements.get(2).get(5));
+			emulator.addMeasurement(3, generatedMeasurements.get(2).get(6));
+			emulator.addMeasurement(7, generatedMeasurements.get(6).get(5));
+			synced = bf480Service.syncMeasurements(store);
+			for(int userNumber = 1; userNumber <= BF480USBService.NUMBER_OF_USERS; userNumber++) {
+				if(userNumber == 3) {
+					assertMeasurementsEqual(generatedMeasurements.get(2).subList(5, 7), synced.get(userNumber));
+				} else if(userNumber == 7) {
+					assertMeasurementsEqual(generatedMeasurements.get(6).subList(5, 6), synced.get(userNumber));
+				} else {
+					assertEquals(0, synced.get(userNumber).size());
+				}
+			}
+
+			for(List<BF480Measurement> userMeasurements : bf480Service.syncMeasurements(store).values()) {
+				assertEquals(0, userMeasurements.size());
+			}
+		} finally {
+			services.detach(syncedDevice);
+			services.attach(services.getVirtualRootUsbHub(), device);
+		}
+	}
+
+	/**
+	 * Test the readings whose date does not exist are rejected to the sink and left out of the sorted measurements,
+	 * instead of failing the sort.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBF480Measurements_corrupt_date() throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		VirtualUsbDevice device = (VirtualUsbDevice) usbService.getUSBDevice(BF480USBService.VENDOR_ID, BF480USBService.PRODUCT_ID);
+		List<List<BF480Measurement>> storedMeasurements = BF480Emulator.generateMeasurements(5);
+		services.detach(device);
+		VirtualUsbDevice corruptDevice = services.attach(new BF480Emulator(storedMeasurements) {
+			@Override
+			protected synchronized void handleCommand(final byte[] command) {
+				//The month of the reading in the slot 2 of the user 1 is corrupted to 15
+				if(command[0] == (byte) 0x10) {
+					byte[][] rows = getRows();
+					int date = (rows[4][4] & 0xff) << 8 | rows[4][5] & 0xff;
+					date = date & ~(0xf << 5) | 15 << 5;
+					rows[4][4] = (byte) (date >> 8);
+					rows[4][5] = (byte) date;
+					for(byte[] row : rows) {
+						respond(row);
+					}
+				}
+			}
+		});
+		try {
+			List<String> rejections = new ArrayList<String>();
+			BF480USBService bf480Service = new BF480USBService();
+			bf480Service.setDecodeErrorSink((frameNumber, error) -> rejections.add(frameNumber + ":" + error));
+			List<BF480Measurement> expected = new ArrayList<BF480Measurement>(storedMeasurements.get(0));
+			expected.remove(2);
+
+			assertMeasurementsEqual(expected, (List<BF480Measurement>) bf480Service.getMeasurements(USER_NUMBER));
+			assertEquals(Collections.singletonList("2:INVALID_DATE_TIME"), rejections);
+
+			rejections.clear();
+			Map<Integer, List<BF480Measurement>> measurements = bf480Service.getAllUsersMeasurements();
+			assertMeasurementsEqual(expected, measurements.get(1));
+			for(int userNumber = 2; userNumber <= BF480USBService.NUMBER_OF_USERS; userNumber++) {
+				assertMeasurementsEqual(storedMeasurements.get(userNumber - 1), measurements.get(userNumber));
+			}
+			assertEquals(Collections.singletonList("2:INVALID_DATE_TIME"), rejections);
+
+			rejections.clear();
+			SyncCheckpointStore store = new PropertiesSyncCheckpointStore(temporaryFolder.getRoot().toPath().resolve("checkpoints.properties"));
+			assertMeasurementsEqual(expected, bf480Service.syncMeasurements(store).get(1));
+			assertEquals(Collections.singletonList("2:INVALID_DATE_TIME"), rejections);
+		} finally {
+			services.detach(corruptDevice);
+			services.attach(services.getVirtualRootUsbHub(), device);
+		}
+	}
+
+	private void assertMeasurementsEqual(final List<BF480Measurement> expected, final List<BF480Measurement> measurements) throws Exception {
+		assertEquals(expected.size(), measurements.size());
+		for(int readingsCounter = 0; readingsCounter < expected.size(); readingsCounter++) {
+			assertArrayEquals(expected.get(readingsCounter).getAllValues(), measurements.get(readingsCounter).getAllValues());
+		}
+	}
+
 	//@Test
 	public void testGetBF480Measurements_individual_method_calls() throws Exception {
 		int readingStartByteNumber = (Integer.valueOf(USER_NUMBER) - 1) * 6;
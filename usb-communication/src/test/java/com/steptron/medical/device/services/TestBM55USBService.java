@@ -17,18 +17,53 @@
  */
 package com.steptron.medical.device.services;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.usb.UsbControlIrp;
 import javax.usb.UsbDevice;
 import javax.usb.UsbException;
+import javax.usb.UsbHostManager;
+import javax.usb.UsbInterface;
 import javax.usb.UsbPipe;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import com.steptron.medical.device.archive.BM55Archive;
 import com.steptron.medical.device.domain.BM55Measurement;
+import com.steptron.medical.device.domain.BM55MeasurementStore;
+import com.steptron.medical.device.domain.BM55MeasurementView;
 import com.steptron.medical.device.domain.BM55User;
+import com.steptron.medical.device.emulator.BM55Emulator;
+import com.steptron.medical.device.emulator.VirtualUsbDevice;
+import com.steptron.medical.device.emulator.VirtualUsbServices;
+import com.steptron.medical.device.exception.DeviceConnectionException;
+import com.sun.management.ThreadMXBean;
 
 /**
  * Tests the BM55 device interfaces and collects the measurements it has stored.
@@ -37,8 +72,17 @@ import com.steptron.medical.device.domain.BM55User;
 public class TestBM55USBService {
 
 	private static final String USER = "A";
+
+	/**
+	 * The bytes a reading may allocate, about 340 bytes are measured: the measurement, its measured time and its slot in the list,
+	 * and the emulated device answering, which copies the command and the answer and schedules the answer on the pipe completion thread.
+	 */
+	private static final long MAX_BYTES_PER_READING = 384;
 	private USBService usbService = new BM55USBService();
 
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	/**
 	 * Test BM55 device to get the measurements.
 	 *
@@ -53,6 +97,573 @@ public class TestBM55USBService {
 		}
 	}
 
+	/**
+	 * Test the pipelined download returns the same measurements as the lock-step download.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBM55Measurements_pipelined() throws Exception {
+		List<BM55Measurement> expected = (List<BM55Measurement>) usbService.getMeasurements(USER);
+		BM55USBService pipelinedService = new BM55USBService();
+		pipelinedService.setPipelineDepth(8);
+		assertMeasurementsEqual(expected, (List<BM55Measurement>) pipelinedService.getMeasurements(USER));
+	}
+
+	/**
+	 * Test the pipelined download falls back to lock-step when the device drops a request.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBM55Measurements_pipelined_falls_back_to_lock_step() throws Exception {
+		List<BM55Measurement> expected = (List<BM55Measurement>) usbService.getMeasurements(USER);
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		VirtualUsbDevice device = (VirtualUsbDevice) usbService.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		BM55Emulator emulator = (BM55Emulator) device.getEmulator();
+		List<BM55Measurement> storedMeasurements = new ArrayList<BM55Measurement>();
+		for(byte[] reading : emulator.getReadings()) {
+			storedMeasurements.add(new BM55Measurement(reading));
+		}
+		services.detach(device);
+		VirtualUsbDevice droppingDevice = services.attach(new BM55Emulator(storedMeasurements) {
+			private boolean dropped;
+
+			@Override
+			protected void handleCommand(final byte[] command) {
+				if(command[0] == (byte) 0xA3 && command[1] == 5 && !dropped) {
+					dropped = true;
+					return;
+				}
+				super.handleCommand(command);
+			}
+		});
+		try {
+			BM55USBService pipelinedService = new BM55USBService();
+			pipelinedService.setPipelineDepth(4);
+			assertMeasurementsEqual(expected, (List<BM55Measurement>) pipelinedService.getMeasurements(USER));
+		} finally {
+			services.detach(droppingDevice);
+			services.attach(services.getVirtualRootUsbHub(), device);
+		}
+	}
+
+	/**
+	 * Test the bytes allocated by the download do not depend on the reading beyond the measurement decoded from it.
+	 * The allocation of a download of 20 readings is subtracted from the one of 120 readings, which leaves the cost of 100 readings.
+	 * The bytes allocated by the thread completing the reads are included.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBM55Measurements_allocation_per_reading() throws Exception {
+		ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		List<BM55Measurement> generatedMeasurements = BM55Emulator.generateMeasurements(120);
+
+		long smallDownloadBytes = getDownloadAllocatedBytes(threadBean, generatedMeasurements.subList(0, 20));
+		long largeDownloadBytes = getDownloadAllocatedBytes(threadBean, generatedMeasurements);
+		long bytesPerReading = (largeDownloadBytes - smallDownloadBytes) / 100;
+
+		assertTrue("Allocated " + bytesPerReading + " bytes per reading", bytesPerReading <= MAX_BYTES_PER_READING);
+	}
+
+	/**
+	 * Gets the fewest bytes allocated for the download of the measurements out of several downloads, which leaves out the one-off
+	 * allocations of the first downloads. The emulated device answers after a latency, so the reads are completed by the thread of
+	 * the pipe and not by the calling thread: the bytes allocated by the calling thread, the pipe completion thread and the transfer
+	 * timer thread are added up.
+	 */
+	private long getDownloadAllocatedBytes(final ThreadMXBean threadBean, final List<BM55Measurement> storedMeasurements) throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		VirtualUsbDevice device = (VirtualUsbDevice) usbService.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		services.detach(device);
+		BM55Emulator emulator = new BM55Emulator(storedMeasurements);
+		emulator.setLatency(20, 0);
+		VirtualUsbDevice emulatedDevice = services.attach(emulator);
+		try {
+			BM55USBService bm55Service = new BM55USBService();
+			//The first download starts the pipe completion and transfer timer threads
+			bm55Service.getAllUsersMeasurements();
+			long[] threadIds = getThreadIds(Thread.currentThread().getName(), "virtual-usb-scheduler", "usb-transfer-timer");
+			long fewestBytes = Long.MAX_VALUE;
+			for(int download = 0; download < 50; download++) {
+				long allocatedBytes = sum(threadBean.getThreadAllocatedBytes(threadIds));
+				bm55Service.getAllUsersMeasurements();
+				fewestBytes = Math.min(fewestBytes, sum(threadBean.getThreadAllocatedBytes(threadIds)) - allocatedBytes);
+			}
+			return fewestBytes;
+		} finally {
+			services.detach(emulatedDevice);
+			services.attach(services.getVirtualRootUsbHub(), device);
+		}
+	}
+
+	private static long[] getThreadIds(final String... threadNames) {
+		List<String> names = Arrays.asList(threadNames);
+		List<Long> threadIds = new ArrayList<Long>();
+		for(Thread thread : Thread.getAllStackTraces().keySet()) {
+			if(names.contains(thread.getName())) {
+				threadIds.add(thread.getId());
+			}
+		}
+		long[] ids = new long[threadIds.size()];
+		for(int threadCounter = 0; threadCounter < ids.length; threadCounter++) {
+			ids[threadCounter] = threadIds.get(threadCounter);
+		}
+		return ids;
+	}
+
+	private static long sum(final long[] values) {
+		long sum = 0;
+		for(long value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	/**
+	 * Test the measurements of both users are read with a single download and match the measurements of each user.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBM55Measurements_all_users() throws Exception {
+		BM55USBService bm55Service = new BM55USBService();
+		VirtualUsbDevice device = (VirtualUsbDevice) bm55Service.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		long commandCount = device.getEmulator().getCommandCount();
+		List<BM55Measurement> expectedA = (List<BM55Measurement>) bm55Service.getMeasurements(BM55User.A.name());
+		long downloadCommandCount = device.getEmulator().getCommandCount() - commandCount;
+		List<BM55Measurement> expectedB = (List<BM55Measurement>) bm55Service.getMeasurements(BM55User.B.name());
+
+		commandCount = device.getEmulator().getCommandCount();
+		Map<BM55User, List<BM55Measurement>> allUsersMeasurements = bm55Service.getAllUsersMeasurements();
+		assertEquals(downloadCommandCount, device.getEmulator().getCommandCount() - commandCount);
+
+		assertMeasurementsEqual(expectedA, allUsersMeasurements.get(BM55User.A));
+		assertMeasurementsEqual(expectedB, allUsersMeasurements.get(BM55User.B));
+	}
+
+	/**
+	 * Test the readings appended to the columnar store are the measurements of both users, with the lock-step and the pipelined download.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBM55Measurements_columnar_store() throws Exception {
+		BM55USBService bm55Service = new BM55USBService();
+		Map<BM55User, List<BM55Measurement>> allUsersMeasurements = bm55Service.getAllUsersMeasurements();
+
+		for(int pipelineDepth : new int[] {1, 8}) {
+			bm55Service.setPipelineDepth(pipelineDepth);
+			//A small initial capacity so that the columns grow during the download
+			BM55MeasurementStore store = new BM55MeasurementStore(4);
+			int numberOfReadings = bm55Service.readMeasurementsInto(store);
+
+			assertEquals(store.size(), numberOfReadings);
+			Map<BM55User, List<BM55Measurement>> storedMeasurements = new EnumMap<BM55User, List<BM55Measurement>>(BM55User.class);
+			for(BM55User user : BM55User.values()) {
+				storedMeasurements.put(user, new ArrayList<BM55Measurement>());
+			}
+			for(int index = 0; index < store.size(); index++) {
+				storedMeasurements.get(store.getUser(index)).add(store.getMeasurement(index));
+			}
+			for(BM55User user : BM55User.values()) {
+				assertMeasurementsEqual(allUsersMeasurements.get(user), storedMeasurements.get(user));
+			}
+		}
+	}
+
+	/**
+	 * Test the sync downloads the readings after the checkpoint only, and everything again once the memory was cleared or rewritten.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBM55Measurements_delta_sync() throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		VirtualUsbDevice device = (VirtualUsbDevice) usbService.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		List<BM55Measurement> generatedMeasurements = BM55Emulator.generateMeasurements(30);
+		BM55Emulator emulator = new BM55Emulator(generatedMeasurements.subList(0, 10));
+		services.detach(device);
+		VirtualUsbDevice syncedDevice = services.attach(emulator);
+		try {
+			BM55USBService bm55Service = new BM55USBService();
+			SyncCheckpointStore store = new PropertiesSyncCheckpointStore(temporaryFolder.getRoot().toPath().resolve("checkpoints.properties"));
+
+			//All the 10 stored readings, the last one included
+			List<BM55Measurement> synced = flatten(bm55Service.syncMeasurements(store));
+			assertMeasurementsEqual(generatedMeasurements.subList(0, 10), sortByMeasuredTime(synced));
+
+			//3 new measurements, the device is asked for the reading at the checkpoint and the readings after it only
+			for(BM55Measurement measurement : generatedMeasurements.subList(10, 13)) {
+				emulator.addMeasurement(measurement);
+			}
+			long commandCount = emulator.getCommandCount();
+			List<BM55Measurement> newlySynced = flatten(new BM55USBService().syncMeasurements(store));
+			assertEquals(7, emulator.getCommandCount() - commandCount);
+			assertMeasurementsEqual(generatedMeasurements.subList(10, 13), sortByMeasuredTime(newlySynced));
+			assertMeasurementsEqual(generatedMeasurements.subList(0, 13), sortByMeasuredTime(flatten(bm55Service.getAllUsersMeasurements())));
+
+			//Nothing new
+			assertEquals(0, flatten(bm55Service.syncMeasurements(store)).size());
+
+			//Cleared memory with fewer readings than at the checkpoint
+			emulator.clearMemory();
+			for(BM55Measurement measurement : generatedMeasurements.subList(13, 18)) {
+				emulator.addMeasurement(measurement);
+			}
+			assertMeasurementsEqual(generatedMeasurements.subList(13, 18), sortByMeasuredTime(flatten(bm55Service.syncMeasurements(store))));
+
+			//Rewritten memory with the same number of readings as at the checkpoint
+			emulator.clearMemory();
+			for(BM55Measurement measurement : generatedMeasurements.subList(20, 25)) {
+				emulator.addMeasurement(measurement);
+			}
+			assertMeasurementsEqual(generatedMeasurements.subList(20, 25), sortByMeasuredTime(flatten(bm55Service.syncMeasurements(store))));
+		} finally {
+			services.detach(syncedDevice);
+			services.attach(services.getVirtualRootUsbHub(), device);
+		}
+	}
+
+	/**
+	 * Test the readings are archived once, in the order they were measured, and the archive only grows with the new readings.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testArchiveBM55Measurements() throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		VirtualUsbDevice device = (VirtualUsbDevice) usbService.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		List<BM55Measurement> generatedMeasurements = BM55Emulator.generateMeasurements(25);
+		BM55Emulator emulator = new BM55Emulator(generatedMeasurements.subList(0, 20));
+		services.detach(device);
+		VirtualUsbDevice archivedDevice = services.attach(emulator);
+		try(BM55Archive archive = new BM55Archive(temporaryFolder.newFolder("bm55").toPath(), 8)) {
+			BM55USBService bm55Service = new BM55USBService();
+			List<BM55Measurement> expected = sortByMeasuredTime(flatten(bm55Service.getAllUsersMeasurements()));
+
+			assertEquals(expected.size(), bm55Service.archiveMeasurements(archive));
+			assertEquals(0, bm55Service.archiveMeasurements(archive));
+
+			for(BM55Measurement measurement : generatedMeasurements.subList(20, 25)) {
+				emulator.addMeasurement(measurement);
+			}
+			expected = sortByMeasuredTime(flatten(bm55Service.getAllUsersMeasurements()));
+			assertEquals(5, bm55Service.archiveMeasurements(archive));
+
+			List<BM55Measurement> archived = new ArrayList<BM55Measurement>();
+			BM55MeasurementView view = new BM55MeasurementView();
+			for(long index = 0; index < archive.size(); index++) {
+				archived.add(archive.getReading(index, view).toMeasurement());
+			}
+			assertMeasurementsEqual(expected, archived);
+		} finally {
+			services.detach(archivedDevice);
+			services.attach(services.getVirtualRootUsbHub(), device);
+		}
+	}
+
+	/**
+	 * Test archiving the readings of a device whose clock was set back: the new readings are appended in the order they were
+	 * measured, and the readings measured before the last archived reading or with a date which does not exist are handed to the consumer
+	 * instead of being dropped.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testArchiveBM55Measurements_clock_set_back() throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		VirtualUsbDevice device = (VirtualUsbDevice) usbService.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		List<BM55Measurement> generatedMeasurements = BM55Emulator.generateMeasurements(30);
+		BM55Emulator emulator = new BM55Emulator(generatedMeasurements.subList(10, 20)) {
+			@Override
+			protected void handleCommand(final byte[] command) {
+				//The month of the reading 14 is corrupted to 13
+				if(command[0] == (byte) 0xA3 && command[1] == 14 && getReadings().size() >= 14) {
+					byte[] reading = getReadings().get(13).clone();
+					reading[3] = (byte) (reading[3] & 0x80 | 13);
+					respond(reading);
+				} else {
+					super.handleCommand(command);
+				}
+			}
+		};
+		services.detach(device);
+		VirtualUsbDevice archivedDevice = services.attach(emulator);
+		try(BM55Archive archive = new BM55Archive(temporaryFolder.newFolder("bm55").toPath(), 8)) {
+			BM55USBService bm55Service = new BM55USBService();
+			List<BM55Measurement> unarchived = new ArrayList<BM55Measurement>();
+			assertEquals(10, bm55Service.archiveMeasurements(archive, unarchived::add));
+			assertTrue(unarchived.isEmpty());
+
+			emulator.addMeasurement(generatedMeasurements.get(25));
+			emulator.addMeasurement(generatedMeasurements.get(3));
+			emulator.addMeasurement(generatedMeasurements.get(22));
+			emulator.addMeasurement(generatedMeasurements.get(27));
+			assertEquals(2, bm55Service.archiveMeasurements(archive, unarchived::add));
+			assertEquals(2, unarchived.size());
+			assertMeasurementsEqual(generatedMeasurements.subList(3, 4), unarchived.subList(0, 1));
+			assertNull(unarchived.get(1).getMeasuredTime());
+
+			List<BM55Measurement> expected = new ArrayList<BM55Measurement>(generatedMeasurements.subList(10, 20));
+			expected.add(generatedMeasurements.get(22));
+			expected.add(generatedMeasurements.get(25));
+			List<BM55Measurement> archived = new ArrayList<BM55Measurement>();
+			BM55MeasurementView view = new BM55MeasurementView();
+			for(long index = 0; index < archive.size(); index++) {
+				archived.add(archive.getReading(index, view).toMeasurement());
+			}
+			assertMeasurementsEqual(expected, archived);
+
+			unarchived.clear();
+			assertEquals(0, bm55Service.archiveMeasurements(archive, unarchived::add));
+			assertEquals(2, unarchived.size());
+		} finally {
+			services.detach(archivedDevice);
+			services.attach(services.getVirtualRootUsbHub(), device);
+		}
+	}
+
+	/**
+	 * Test a pooled session is not reused after the device did not answer the terminate command, so that its late answer
+	 * is not taken for the answer to the next download.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBM55Measurements_pooled_session_after_terminate_timeout() throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		VirtualUsbDevice device = (VirtualUsbDevice) usbService.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		List<BM55Measurement> storedMeasurements = BM55Emulator.generateMeasurements(10);
+		services.detach(device);
+		VirtualUsbDevice silentTerminateDevice = services.attach(new BM55Emulator(storedMeasurements) {
+			@Override
+			protected void handleCommand(final byte[] command) {
+				//The device does not acknowledge the terminate command
+				if(command[0] != (byte) 0xF7) {
+					super.handleCommand(command);
+				}
+			}
+		});
+		try(DeviceSessionPool sessionPool = new DeviceSessionPool(1, TimeUnit.HOURS)) {
+			BM55USBService bm55Service = new BM55USBService();
+			bm55Service.setSessionPool(sessionPool);
+			for(int download = 0; download < 3; download++) {
+				assertMeasurementsEqual(storedMeasurements, sortByMeasuredTime(flatten(bm55Service.getAllUsersMeasurements())));
+			}
+		} finally {
+			services.detach(silentTerminateDevice);
+			services.attach(services.getVirtualRootUsbHub(), device);
+		}
+	}
+
+	/**
+	 * Test the session is closed and its interface released after the device did not answer a read, as the pipe of the device
+	 * cannot be closed while the timed out read is still submitted.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testCloseSession_after_read_timeout() throws Exception {
+		BM55USBService bm55Service = new BM55USBService();
+		DeviceSession session = bm55Service.openSession(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		UsbInterface usbInterface = session.getConnectionPipe().getUsbEndpoint().getUsbInterface();
+		try {
+			//No command was written, so the device does not answer the read
+			bm55Service.readDataAsync(session.getConnectionPipe(), 8, 50).get();
+			fail("The device answered");
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		} finally {
+			bm55Service.closeSession(session, false);
+		}
+		assertFalse(session.isOpen());
+		assertFalse(usbInterface.isClaimed());
+		assertFalse(flatten(bm55Service.getAllUsersMeasurements()).isEmpty());
+	}
+
+	/**
+	 * Test a pooled session is returned to the pool when a listener cannot be attached to it, so that the next download
+	 * from the device does not wait for it forever.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBM55Measurements_pooled_session_after_listener_failure() throws Exception {
+		BM55USBService failingService = new BM55USBService() {
+			@Override
+			public DeviceSession createSession(final UsbDevice device) throws UsbException {
+				DeviceSession session = super.createSession(device);
+				UsbPipe connectionPipe = session.getConnectionPipe();
+				UsbPipe failingPipe = (UsbPipe) Proxy.newProxyInstance(UsbPipe.class.getClassLoader(), new Class<?>[] {UsbPipe.class}, (proxy, method, arguments) -> {
+					if(method.getName().equals("addUsbPipeListener")) {
+						throw new IllegalStateException("The listener cannot be attached");
+					}
+					try {
+						return method.invoke(connectionPipe, arguments);
+					} catch(InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+				return new DeviceSession(device, failingPipe, session.getUsbControl());
+			}
+		};
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try(DeviceSessionPool sessionPool = new DeviceSessionPool(1, TimeUnit.HOURS)) {
+			failingService.setSessionPool(sessionPool);
+			failingService.setTransferCapture(new TransferCapture(new ByteArrayOutputStream(), BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID));
+			try {
+				failingService.getAllUsersMeasurements();
+				fail("The listener was attached");
+			} catch(IllegalStateException e) {
+				assertEquals("The listener cannot be attached", e.getMessage());
+			}
+			assertEquals(0, sessionPool.getIdleSessionCount());
+
+			BM55USBService bm55Service = new BM55USBService();
+			bm55Service.setSessionPool(sessionPool);
+			assertFalse(executor.submit(bm55Service::getAllUsersMeasurements).get(10, TimeUnit.SECONDS).isEmpty());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static List<BM55Measurement> flatten(final Map<BM55User, List<BM55Measurement>> measurements) {
+		List<BM55Measurement> allMeasurements = new ArrayList<BM55Measurement>();
+		for(List<BM55Measurement> userMeasurements : measurements.values()) {
+			allMeasurements.addAll(userMeasurements);
+		}
+		return allMeasurements;
+	}
+
+	private static List<BM55Measurement> sortByMeasuredTime(final List<BM55Measurement> measurements) {
+		List<BM55Measurement> sortedMeasurements = new ArrayList<BM55Measurement>(measurements);
+		sortedMeasurements.sort((first, second) -> first.getMeasuredTime().compareTo(second.getMeasuredTime()));
+		return sortedMeasurements;
+	}
+
+	/**
+	 * Test the measurements are downloaded from every attached BM55 and a device which does not answer fails on its own.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBM55Measurements_from_all_devices() throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		VirtualUsbDevice device = (VirtualUsbDevice) usbService.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		BM55Emulator secondEmulator = new BM55Emulator(BM55Emulator.generateMeasurements(8));
+		VirtualUsbDevice secondDevice = services.attach(secondEmulator);
+		VirtualUsbDevice silentDevice = services.attach(new BM55Emulator(BM55Emulator.generateMeasurements(8)) {
+			@Override
+			protected void handleCommand(final byte[] command) {
+				//The device is plugged in but does not answer
+			}
+		});
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			BM55USBService bm55Service = new BM55USBService();
+			assertEquals(3, bm55Service.getUSBDevices(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID).size());
+			List<BM55Measurement> expected = (List<BM55Measurement>) usbService.getMeasurements(USER);
+
+			List<DeviceDownload<List<BM55Measurement>>> downloads = bm55Service.getMeasurementsFromAllDevices(USER, executor).get(10, TimeUnit.SECONDS);
+
+			assertEquals(3, downloads.size());
+			assertSame(device, downloads.get(0).getDevice());
+			assertMeasurementsEqual(expected, downloads.get(0).getMeasurements());
+			assertSame(secondDevice, downloads.get(1).getDevice());
+			assertEquals(4, downloads.get(1).getMeasurements().size());
+			assertSame(silentDevice, downloads.get(2).getDevice());
+			assertFalse(downloads.get(2).isSuccessful());
+			assertTrue(downloads.get(2).getFailure() instanceof DeviceConnectionException);
+		} finally {
+			executor.shutdownNow();
+			services.detach(silentDevice);
+			services.detach(secondDevice);
+		}
+	}
+
+	/**
+	 * Test the asynchronous download returns the same measurements as the blocking download.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBM55Measurements_async() throws Exception {
+		List<BM55Measurement> expected = (List<BM55Measurement>) usbService.getMeasurements(USER);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			assertMeasurementsEqual(expected, new BM55USBService().getMeasurementsAsync(USER, executor).get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Test the downloads started without an executor run concurrently, each on a thread of its own.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBM55Measurements_thread_per_download() throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		List<VirtualUsbDevice> fleet = new ArrayList<VirtualUsbDevice>();
+		try {
+			for(int i = 0; i < 31; i++) {
+				fleet.add(services.attach(new BM55Emulator(BM55Emulator.generateMeasurements(8))));
+			}
+			BM55USBService bm55Service = new BM55USBService();
+			List<DeviceDownload<List<BM55Measurement>>> downloads = bm55Service.getMeasurementsFromAllDevices(USER).get(10, TimeUnit.SECONDS);
+
+			assertEquals(32, downloads.size());
+			for(DeviceDownload<List<BM55Measurement>> download : downloads) {
+				assertTrue(download.isSuccessful());
+			}
+			assertMeasurementsEqual((List<BM55Measurement>) usbService.getMeasurements(USER), bm55Service.getMeasurementsAsync(USER).get(10, TimeUnit.SECONDS));
+		} finally {
+			for(VirtualUsbDevice device : fleet) {
+				services.detach(device);
+			}
+		}
+	}
+
+	/**
+	 * Test cancelling the asynchronous download frees the executor thread and releases the interface without waiting for the device.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testGetBM55Measurements_async_cancel() throws Exception {
+		VirtualUsbDevice device = (VirtualUsbDevice) usbService.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		UsbInterface iface = device.getActiveUsbConfiguration().getUsbInterface((byte) 0);
+		long commandCount = device.getEmulator().getCommandCount();
+		//60 readings of 50 ms each, the download takes 3 seconds if it is not cancelled
+		device.getEmulator().setLatency(50000, 0);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CompletableFuture<List<BM55Measurement>> download = new BM55USBService().getMeasurementsAsync(USER, executor);
+			while(device.getEmulator().getCommandCount() < commandCount + 4) {
+				Thread.sleep(5);
+			}
+			assertTrue(download.cancel(true));
+
+			executor.submit(() -> null).get(1, TimeUnit.SECONDS);
+			assertFalse(iface.isClaimed());
+		} finally {
+			device.getEmulator().setLatency(0, 0);
+			executor.shutdownNow();
+		}
+	}
+
+	private void assertMeasurementsEqual(final List<BM55Measurement> expected, final List<BM55Measurement> measurements) throws Exception {
+		assertEquals(expected.size(), measurements.size());
+		for(int readingsCounter = 0; readingsCounter < expected.size(); readingsCounter++) {
+			assertArrayEquals(expected.get(readingsCounter).getAllValues(), measurements.get(readingsCounter).getAllValues());
+		}
+	}
+
 	//@Test
 	public void testGetBM55Measurements_individual_method_calls() throws Exception {
 		BM55User readingsUser = BM55User.valueOf(USER);
@@ -0,0 +1,84 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the device sessions are kept open between downloads and closed once idle.
+ */
+public class TestDeviceSessionPool {
+
+	/**
+	 * Test consecutive downloads reuse the session and the idle session is evicted.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testSessionIsReusedAndEvicted() throws Exception {
+		USBService usbService = new BM55USBService();
+		try(DeviceSessionPool sessionPool = new DeviceSessionPool(1, TimeUnit.HOURS)) {
+			usbService.setSessionPool(sessionPool);
+
+			int numberOfReadings = usbService.getMeasurements("A").size();
+			DeviceSession session = usbService.openSession(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+			usbService.closeSession(session, true);
+			assertEquals(numberOfReadings, usbService.getMeasurements("A").size());
+			DeviceSession reusedSession = usbService.openSession(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+			assertSame(session, reusedSession);
+			usbService.closeSession(reusedSession, true);
+
+			assertEquals(1, sessionPool.getIdleSessionCount());
+			assertTrue(session.getConnectionPipe().getUsbEndpoint().getUsbInterface().isClaimed());
+		}
+		try(DeviceSessionPool sessionPool = new DeviceSessionPool(0, TimeUnit.MILLISECONDS)) {
+			usbService.setSessionPool(sessionPool);
+			DeviceSession session = usbService.openSession(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+			usbService.closeSession(session, true);
+			sessionPool.evictIdleSessions();
+
+			assertEquals(0, sessionPool.getIdleSessionCount());
+			assertFalse(session.getConnectionPipe().getUsbEndpoint().getUsbInterface().isClaimed());
+		}
+	}
+
+	/**
+	 * Test a session left by a failed download is closed instead of being reused.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testFailedSessionIsNotReused() throws Exception {
+		USBService usbService = new BF480USBService();
+		try(DeviceSessionPool sessionPool = new DeviceSessionPool(1, TimeUnit.HOURS)) {
+			usbService.setSessionPool(sessionPool);
+			DeviceSession session = usbService.openSession(BF480USBService.VENDOR_ID, BF480USBService.PRODUCT_ID);
+			usbService.closeSession(session, false);
+
+			assertEquals(0, sessionPool.getIdleSessionCount());
+			assertFalse(session.isOpen());
+		}
+	}
+}
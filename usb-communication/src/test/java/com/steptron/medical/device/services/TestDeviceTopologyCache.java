@@ -0,0 +1,68 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.steptron.medical.device.emulator.BF480Emulator;
+import com.steptron.medical.device.emulator.BM55Emulator;
+import com.steptron.medical.device.emulator.VirtualUsbDevice;
+import com.steptron.medical.device.emulator.VirtualUsbHub;
+import com.steptron.medical.device.emulator.VirtualUsbServices;
+
+/**
+ * Tests the device topology cache follows the devices attached and detached behind multi-level hubs.
+ */
+public class TestDeviceTopologyCache {
+
+	/**
+	 * Test devices behind nested hubs are found and the cache is invalidated on attach and detach.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testCacheFollowsHotplugEvents() throws Exception {
+		VirtualUsbServices services = new VirtualUsbServices(new Properties());
+		DeviceTopologyCache cache = new DeviceTopologyCache(services);
+		VirtualUsbHub hub = new VirtualUsbHub();
+		VirtualUsbHub nestedHub = new VirtualUsbHub();
+		services.attach(services.getVirtualRootUsbHub(), hub);
+		services.attach(hub, nestedHub);
+
+		assertNull(cache.getDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID));
+
+		VirtualUsbDevice bm55 = new VirtualUsbDevice(new BM55Emulator(BM55Emulator.generateMeasurements(2)));
+		services.attach(nestedHub, bm55);
+		VirtualUsbDevice bf480 = services.attach(new BF480Emulator(BF480Emulator.generateMeasurements(2)));
+
+		assertSame(bm55, cache.getDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID));
+		assertSame(bf480, cache.getDevice(BF480USBService.VENDOR_ID, BF480USBService.PRODUCT_ID));
+		assertEquals(2, cache.getDevices(VirtualUsbHub.VENDOR_ID, VirtualUsbHub.PRODUCT_ID).size());
+
+		services.detach(hub);
+
+		assertNull(cache.getDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID));
+		assertSame(bf480, cache.getDevice(BF480USBService.VENDOR_ID, BF480USBService.PRODUCT_ID));
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.usb.UsbHostManager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.steptron.medical.device.domain.BF480Measurement;
+import com.steptron.medical.device.domain.BM55Measurement;
+import com.steptron.medical.device.domain.BM55User;
+import com.steptron.medical.device.emulator.DeviceEmulator;
+import com.steptron.medical.device.emulator.ReplayEmulator;
+import com.steptron.medical.device.emulator.VirtualUsbDevice;
+import com.steptron.medical.device.emulator.VirtualUsbServices;
+import com.steptron.medical.device.services.CapturedTransfer.Direction;
+
+/**
+ * Tests the transfers captured during a download are replayed to the same measurements.
+ */
+public class TestTransferCapture {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	/**
+	 * Test a captured BM55 download holds every command and every response, and is replayed at maximum speed to the same measurements.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testCaptureAndReplayBM55() throws Exception {
+		BM55USBService bm55Service = new BM55USBService();
+		VirtualUsbDevice device = (VirtualUsbDevice) bm55Service.getUSBDevice(BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID);
+		DeviceEmulator emulator = device.getEmulator();
+		Path captureFile = temporaryFolder.getRoot().toPath().resolve("bm55.capture");
+
+		long commandCount = emulator.getCommandCount();
+		long responseCount = emulator.getResponseCount();
+		Map<BM55User, List<BM55Measurement>> expected;
+		try(TransferCapture capture = new TransferCapture(captureFile, BM55USBService.VENDOR_ID, BM55USBService.PRODUCT_ID)) {
+			bm55Service.setTransferCapture(capture);
+			expected = bm55Service.getAllUsersMeasurements();
+			bm55Service.setTransferCapture(null);
+		}
+
+		TransferRecording recording = TransferCapture.read(captureFile);
+		assertEquals(BM55USBService.VENDOR_ID, recording.getVendorId());
+		assertEquals(BM55USBService.PRODUCT_ID, recording.getProductId());
+		assertEquals((byte) 0xAA, recording.getTransfers().get(0).getData()[0]);
+		assertEquals(emulator.getCommandCount() - commandCount, count(recording, Direction.CONTROL_OUT));
+		assertEquals(emulator.getResponseCount() - responseCount, count(recording, Direction.INTERRUPT_IN));
+
+		//A record cut short by a crash during the capture is dropped
+		byte[] captured = Files.readAllBytes(captureFile);
+		TransferRecording truncated = TransferCapture.read(new ByteArrayInputStream(Arrays.copyOf(captured, captured.length - 3)));
+		assertEquals(recording.getTransfers().size() - 1, truncated.getTransfers().size());
+
+		ReplayEmulator replayEmulator = new ReplayEmulator(recording, false);
+		Map<BM55User, List<BM55Measurement>> replayed = replay(device, replayEmulator, () -> new BM55USBService().getAllUsersMeasurements());
+		for(BM55User user : BM55User.values()) {
+			List<BM55Measurement> expectedMeasurements = expected.get(user);
+			assertEquals(expectedMeasurements.size(), replayed.get(user).size());
+			for(int readingsCounter = 0; readingsCounter < expectedMeasurements.size(); readingsCounter++) {
+				assertArrayEquals(expectedMeasurements.get(readingsCounter).getAllValues(), replayed.get(user).get(readingsCounter).getAllValues());
+			}
+		}
+		assertEquals(0, replayEmulator.getMismatchCount());
+		assertTrue(replayEmulator.isComplete());
+	}
+
+	/**
+	 * Test a captured BF480 download is replayed at the recorded speed to the same measurements.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testCaptureAndReplayBF480() throws Exception {
+		BF480USBService bf480Service = new BF480USBService();
+		VirtualUsbDevice device = (VirtualUsbDevice) bf480Service.getUSBDevice(BF480USBService.VENDOR_ID, BF480USBService.PRODUCT_ID);
+		Path captureFile = temporaryFolder.getRoot().toPath().resolve("bf480.capture");
+
+		List<BF480Measurement> expected;
+		try(TransferCapture capture = new TransferCapture(captureFile, BF480USBService.VENDOR_ID, BF480USBService.PRODUCT_ID)) {
+			bf480Service.setTransferCapture(capture);
+			expected = bf480Service.getAllUsersMeasurements().get(1);
+			bf480Service.setTransferCapture(null);
+		}
+
+		TransferRecording recording = TransferCapture.read(captureFile);
+		long elapsedNanos = 0;
+		for(CapturedTransfer transfer : recording.getTransfers()) {
+			assertTrue(transfer.getElapsedNanos() >= elapsedNanos);
+			elapsedNanos = transfer.getElapsedNanos();
+		}
+
+		ReplayEmulator replayEmulator = new ReplayEmulator(recording, true);
+		List<BF480Measurement> replayed = replay(device, replayEmulator, () -> new BF480USBService().getAllUsersMeasurements().get(1));
+		assertEquals(expected.size(), replayed.size());
+		for(int readingsCounter = 0; readingsCounter < expected.size(); readingsCounter++) {
+			assertArrayEquals(expected.get(readingsCounter).getAllValues(), replayed.get(readingsCounter).getAllValues());
+		}
+		assertEquals(0, replayEmulator.getMismatchCount());
+		assertTrue(replayEmulator.isComplete());
+	}
+
+	private static <T> T replay(final VirtualUsbDevice device, final ReplayEmulator replayEmulator, final Download<T> download) throws Exception {
+		VirtualUsbServices services = (VirtualUsbServices) UsbHostManager.getUsbServices();
+		services.detach(device);
+		VirtualUsbDevice replayDevice = services.attach(replayEmulator);
+		try {
+			return download.call();
+		} finally {
+			services.detach(replayDevice);
+			services.attach(services.getVirtualRootUsbHub(), device);
+		}
+	}
+
+	private static long count(final TransferRecording recording, final Direction direction) {
+		return recording.getTransfers().stream().filter(transfer -> transfer.getDirection() == direction).count();
+	}
+
+	private interface Download<T> {
+		T call() throws Exception;
+	}
+}
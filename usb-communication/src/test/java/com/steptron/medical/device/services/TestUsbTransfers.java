@@ -0,0 +1,80 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.usb.UsbException;
+import javax.usb.UsbPipe;
+
+import org.junit.Test;
+
+import com.steptron.medical.device.emulator.BM55Emulator;
+import com.steptron.medical.device.emulator.VirtualUsbDevice;
+import com.steptron.medical.device.emulator.VirtualUsbServices;
+
+/**
+ * Tests the transfers complete their futures with the data, a timeout for a silent device and the USB exception for an unplugged one.
+ */
+public class TestUsbTransfers {
+
+	/**
+	 * Test the future completes with the response, times out when the device is silent and fails at once when the device is unplugged.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testReadCompletesTimesOutAndFails() throws Exception {
+		VirtualUsbServices services = new VirtualUsbServices(new Properties());
+		BM55Emulator emulator = new BM55Emulator(BM55Emulator.generateMeasurements(4));
+		VirtualUsbDevice device = services.attach(emulator);
+		USBService usbService = new BM55USBService();
+		UsbPipe connectionPipe = usbService.getUSBConnection(device, 0, -127);
+		connectionPipe.open();
+		CompletableFuture<byte[]> transfer = UsbTransfers.read(connectionPipe, 8, 1, TimeUnit.SECONDS);
+		usbService.writeDataToInterface(device, usbService.getUSBControl(device, (byte) 33, (byte) 0x09, (short) 521, (short) 0), new byte[] {(byte) 0xA3, 2}, USBService.DEFAULT_BYTE_ARRAY_LENGTH_8, USBService.PADDING_BYTE_0xF4);
+		assertArrayEquals(emulator.getReadings().get(1), transfer.get());
+
+		//Nothing was requested, the device is attached but does not answer
+		assertFailure(UsbTransfers.read(connectionPipe, 8, 20, TimeUnit.MILLISECONDS), TimeoutException.class);
+		connectionPipe.abortAllSubmissions();
+
+		CompletableFuture<byte[]> pendingTransfer = UsbTransfers.read(connectionPipe, 8, 1, TimeUnit.HOURS);
+		long start = System.nanoTime();
+		services.detach(device);
+		assertFailure(pendingTransfer, UsbException.class);
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+	}
+
+	private static void assertFailure(final CompletableFuture<byte[]> transfer, final Class<? extends Exception> expectedCause) throws InterruptedException {
+		try {
+			transfer.get();
+			fail("The transfer should have failed with " + expectedCause.getSimpleName());
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause().toString(), expectedCause.isInstance(e.getCause()));
+		}
+	}
+}
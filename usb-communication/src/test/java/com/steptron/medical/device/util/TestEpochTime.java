@@ -0,0 +1,69 @@
+/*
+ *
+ * Copyright (C) 2016 Krishna Kuntala
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.steptron.medical.device.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import org.junit.Test;
+
+/**
+ * Tests the arithmetic conversion agrees with java.time.
+ */
+public class TestEpochTime {
+
+	/**
+	 * Test every day of the years the devices can store is converted to the epoch second of java.time, at several offsets.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testToValidEpochSecondMatchesJavaTime() throws Exception {
+		ZoneOffset[] zoneOffsets = {ZoneOffset.UTC, ZoneOffset.ofHours(1), ZoneOffset.ofHoursMinutes(-9, -30)};
+		for(LocalDate date = LocalDate.of(1920, 1, 1); date.getYear() < 2128; date = date.plusDays(1)) {
+			int hour = date.getDayOfYear() % 24;
+			int minute = date.getDayOfMonth() * 59 / 31;
+			for(ZoneOffset zoneOffset : zoneOffsets) {
+				assertEquals(date.atTime(hour, minute).toEpochSecond(zoneOffset),
+						EpochTime.toValidEpochSecond(date.getYear(), date.getMonthValue(), date.getDayOfMonth(), hour, minute, zoneOffset.getTotalSeconds()));
+			}
+		}
+	}
+
+	/**
+	 * Test the dates and times which do not exist are rejected without an exception.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	public void testToValidEpochSecondRejectsInvalidFields() throws Exception {
+		assertEquals(EpochTime.INVALID, EpochTime.toValidEpochSecond(2016, 0, 1, 0, 0, 0));
+		assertEquals(EpochTime.INVALID, EpochTime.toValidEpochSecond(2016, 13, 1, 0, 0, 0));
+		assertEquals(EpochTime.INVALID, EpochTime.toValidEpochSecond(2016, 1, 0, 0, 0, 0));
+		assertEquals(EpochTime.INVALID, EpochTime.toValidEpochSecond(2016, 4, 31, 0, 0, 0));
+		assertEquals(EpochTime.INVALID, EpochTime.toValidEpochSecond(2015, 2, 29, 0, 0, 0));
+		assertEquals(EpochTime.INVALID, EpochTime.toValidEpochSecond(1900, 2, 29, 0, 0, 0));
+		assertEquals(EpochTime.INVALID, EpochTime.toValidEpochSecond(2016, 1, 1, 24, 0, 0));
+		assertEquals(EpochTime.INVALID, EpochTime.toValidEpochSecond(2016, 1, 1, -1, 0, 0));
+		assertEquals(EpochTime.INVALID, EpochTime.toValidEpochSecond(2016, 1, 1, 0, 60, 0));
+		assertEquals(LocalDateTime.of(2000, 2, 29, 23, 59).toEpochSecond(ZoneOffset.UTC), EpochTime.toValidEpochSecond(2000, 2, 29, 23, 59, 0));
+	}
+}